@@ -0,0 +1,34 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The byte per pixel version of HSVThresholdTable's threshold, which only ParticleLabeler needs.
+ * It was taken out of the robot code when RunLengthLabeler replaced ParticleLabeler, and is only kept here so the two can be compared.
+ * It's in the robot's package so it can use the same lookup table.
+ */
+public final class ByteThreshold
+{
+	private ByteThreshold()
+	{
+	}
+
+	/**
+	 * Performs the threshold on an image stored in a ByteBuffer using NIVision's RGB pixel layout
+	 * (4 bytes per pixel, in the order blue, green, red, alpha).
+	 * @param table The threshold to use.
+	 * @param bgraPixels The image to threshold.
+	 * @param offset The index in the buffer of the first pixel's blue byte.
+	 * @param binaryPixels Where the result is put. Pixels that pass are set to PIXEL_ON, the rest to PIXEL_OFF.
+	 * @param numOfPixels How many pixels to threshold.
+	 */
+	public static void threshold(HSVThresholdTable table, ByteBuffer bgraPixels, int offset, byte[] binaryPixels, int numOfPixels)
+	{
+		long[] passTable = table.getPassTable();
+		for (int i = 0, index = offset; i < numOfPixels; i++, index += 4)
+		{
+			int rgb = ((bgraPixels.get(index + 2) & 0xFF) << 16) | ((bgraPixels.get(index + 1) & 0xFF) << 8) | (bgraPixels.get(index) & 0xFF);
+			binaryPixels[i] = ((passTable[rgb >>> 6] & (1L << rgb)) != 0) ? HSVThresholdTable.PIXEL_ON : HSVThresholdTable.PIXEL_OFF;
+		}
+	}
+}
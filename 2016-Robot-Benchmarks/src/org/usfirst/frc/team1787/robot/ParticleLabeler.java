@@ -0,0 +1,440 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class finds and measures the particles in a binary image in plain Java, without NIVision.
+ * It is meant to do the same thing as imaqParticleFilter4 with the options VisionMethods uses
+ * (connectivity8, fill holes, and a filter on area by image area) followed by measuring every particle.
+ *
+ * Particles are found with a two-pass connected-component labeling algorithm. The first pass gives every pixel
+ * a provisional label and records which labels touch each other using a union-find (disjoint set) structure.
+ * The area, bounding box, and first moments (sum of X and sum of Y) are added up for each provisional label
+ * during that same pass, so the second step only has to combine the totals of labels that turned out to be the same particle.
+ *
+ * Every buffer is created in the constructor, so labeling and measuring a frame never creates any new objects.
+ *
+ * The labeler can be limited to a rectangular window of the image. Pixels outside the window are treated as background,
+ * and the edge of the window is treated like the edge of the image. Particle coordinates are always in full image coordinates.
+ */
+public class ParticleLabeler
+{
+	/** The width of the images this labeler works on. */
+	private final int width;
+	/** The height of the images this labeler works on. */
+	private final int height;
+	/** The most provisional labels a single image could need. A new label only starts at the beginning of a run of pixels, so there are at most (width + 1) / 2 per row. */
+	private final int maxLabels;
+
+	/** The provisional label of every pixel. 0 means the pixel hasn't been labeled. */
+	private final int[] labels;
+	/** The union-find parent of every provisional label. A label that is its own parent is the root of its set. */
+	private final int[] parent;
+	/** The number of provisional labels used in the current image. */
+	private int numOfLabels;
+
+	// Window (right and bottom are exclusive)
+	private int windowLeft;
+	private int windowTop;
+	private int windowRight;
+	private int windowBottom;
+
+	// Per-label totals
+	private final int[] labelArea;
+	private final int[] labelMinX;
+	private final int[] labelMaxX;
+	private final int[] labelMinY;
+	private final int[] labelMaxY;
+	private final long[] labelSumX;
+	private final long[] labelSumY;
+	/** The number of pixel edges in each label that touch the background or the edge of the image. Used as an estimate of the perimeter. */
+	private final int[] labelPerimeter;
+	/** Used during hole filling to mark background labels that touch the edge of the image (and therefore aren't holes). */
+	private final boolean[] labelTouchesBorder;
+	/** The final particle ID each provisional label belongs to. -1 means the particle was removed by the filter. */
+	private final int[] particleIDOfLabel;
+
+	// Filter Options
+	/** A boolean indicating if holes in particles should be filled in before measuring. */
+	private boolean fillHoles = true;
+	/** The smallest area a particle can have, as a percentage of the image area, without being removed by the filter. */
+	private double minAreaPercentage = 0.1;
+	/** The largest area a particle can have, as a percentage of the image area, without being removed by the filter. */
+	private double maxAreaPercentage = 100.0;
+
+	/**
+	 * Constructor for the ParticleLabeler class.
+	 * @param imageWidth The width of the images that will be labeled.
+	 * @param imageHeight The height of the images that will be labeled.
+	 */
+	public ParticleLabeler(int imageWidth, int imageHeight)
+	{
+		width = imageWidth;
+		height = imageHeight;
+		maxLabels = ((width + 1) / 2) * height + 1; // + 1 because label 0 is never used.
+
+		labels = new int[width * height];
+		parent = new int[maxLabels];
+		labelArea = new int[maxLabels];
+		labelMinX = new int[maxLabels];
+		labelMaxX = new int[maxLabels];
+		labelMinY = new int[maxLabels];
+		labelMaxY = new int[maxLabels];
+		labelSumX = new long[maxLabels];
+		labelSumY = new long[maxLabels];
+		labelPerimeter = new int[maxLabels];
+		labelTouchesBorder = new boolean[maxLabels];
+		particleIDOfLabel = new int[maxLabels];
+	}
+
+	/**
+	 * Sets the options used by filterAndMeasureParticles.
+	 * @param fill If holes in particles should be filled in.
+	 * @param minPercentage The smallest area a particle can have, as a percentage of the image area.
+	 * @param maxPercentage The largest area a particle can have, as a percentage of the image area.
+	 */
+	public void setFilterOptions(boolean fill, double minPercentage, double maxPercentage)
+	{
+		fillHoles = fill;
+		minAreaPercentage = minPercentage;
+		maxAreaPercentage = maxPercentage;
+	}
+
+	/**
+	 * Fills holes in particles, removes particles whose area is outside the filter's bounds,
+	 * and measures the remaining particles. The binary image is changed to match the result, just like imaqParticleFilter4.
+	 * @param binaryPixels The binary image, one byte per pixel. Any non-zero pixel is part of a particle.
+	 * @param results Where the measurements of the remaining particles are put.
+	 * @return The number of particles remaining.
+	 */
+	public int filterAndMeasureParticles(byte[] binaryPixels, ParticleMeasurements results)
+	{
+		return filterAndMeasureParticles(binaryPixels, results, 0, 0, width, height);
+	}
+
+	/**
+	 * Does the same thing as filterAndMeasureParticles(binaryPixels, results), but only looks at the given window of the image.
+	 * The area filter is still based on the area of the whole image.
+	 * @param binaryPixels The binary image, one byte per pixel. Any non-zero pixel is part of a particle.
+	 * @param results Where the measurements of the remaining particles are put.
+	 * @param left The leftmost X coordinate of the window.
+	 * @param top The topmost Y coordinate of the window.
+	 * @param windowWidth The width of the window.
+	 * @param windowHeight The height of the window.
+	 * @return The number of particles remaining in the window.
+	 */
+	public int filterAndMeasureParticles(byte[] binaryPixels, ParticleMeasurements results, int left, int top, int windowWidth, int windowHeight)
+	{
+		setWindow(left, top, windowWidth, windowHeight);
+		if (fillHoles)
+			fillHoles(binaryPixels);
+		labelParticles(binaryPixels);
+		return combineLabels(binaryPixels, results, minAreaPercentage, maxAreaPercentage);
+	}
+
+	/**
+	 * Measures every particle in the binary image without filtering or changing it, just like imaqCountParticles and imaqMeasureParticle.
+	 * @param binaryPixels The binary image, one byte per pixel. Any non-zero pixel is part of a particle.
+	 * @param results Where the measurements of the particles are put.
+	 * @return The number of particles.
+	 */
+	public int measureParticles(byte[] binaryPixels, ParticleMeasurements results)
+	{
+		return measureParticles(binaryPixels, results, 0, 0, width, height);
+	}
+
+	/**
+	 * Does the same thing as measureParticles(binaryPixels, results), but only looks at the given window of the image.
+	 * @param binaryPixels The binary image, one byte per pixel. Any non-zero pixel is part of a particle.
+	 * @param results Where the measurements of the particles are put.
+	 * @param left The leftmost X coordinate of the window.
+	 * @param top The topmost Y coordinate of the window.
+	 * @param windowWidth The width of the window.
+	 * @param windowHeight The height of the window.
+	 * @return The number of particles in the window.
+	 */
+	public int measureParticles(byte[] binaryPixels, ParticleMeasurements results, int left, int top, int windowWidth, int windowHeight)
+	{
+		setWindow(left, top, windowWidth, windowHeight);
+		labelParticles(binaryPixels);
+		return combineLabels(binaryPixels, results, 0, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Sets the window that will be labeled, clipped to the edges of the image.
+	 */
+	private void setWindow(int left, int top, int windowWidth, int windowHeight)
+	{
+		windowLeft = Math.max(0, left);
+		windowTop = Math.max(0, top);
+		windowRight = Math.min(width, left + windowWidth);
+		windowBottom = Math.min(height, top + windowHeight);
+	}
+
+	/**
+	 * Finds the root label of the set the given label belongs to,
+	 * and points every label along the way directly at the root so the next search is faster.
+	 * @param label The label to look up.
+	 * @return The root label.
+	 */
+	private int find(int label)
+	{
+		int root = label;
+		while (parent[root] != root)
+			root = parent[root];
+
+		while (parent[label] != root)
+		{
+			int next = parent[label];
+			parent[label] = root;
+			label = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Records that two labels belong to the same particle. The smaller label always becomes the root.
+	 */
+	private void union(int labelA, int labelB)
+	{
+		int rootA = find(labelA);
+		int rootB = find(labelB);
+		if (rootA < rootB)
+			parent[rootB] = rootA;
+		else if (rootB < rootA)
+			parent[rootA] = rootB;
+	}
+
+	/**
+	 * Creates a new provisional label.
+	 * @return The new label.
+	 */
+	private int newLabel()
+	{
+		int label = ++numOfLabels;
+		parent[label] = label;
+		labelArea[label] = 0;
+		labelMinX[label] = Integer.MAX_VALUE;
+		labelMaxX[label] = -1;
+		labelMinY[label] = Integer.MAX_VALUE;
+		labelMaxY[label] = -1;
+		labelSumX[label] = 0;
+		labelSumY[label] = 0;
+		labelPerimeter[label] = 0;
+		labelTouchesBorder[label] = false;
+		return label;
+	}
+
+	/**
+	 * Fills in every hole in every particle. A hole is a group of background pixels that doesn't touch the edge of the image.
+	 * The background is labeled using connectivity4, since that is the opposite of the connectivity8 used for particles.
+	 * @param binaryPixels The binary image. Holes are set to HSVThresholdTable.PIXEL_ON.
+	 */
+	private void fillHoles(byte[] binaryPixels)
+	{
+		numOfLabels = 0;
+		for (int y = windowTop; y < windowBottom; y++)
+		{
+			int rowStart = y * width;
+			for (int x = windowLeft; x < windowRight; x++)
+			{
+				int i = rowStart + x;
+				if (binaryPixels[i] != 0)
+				{
+					labels[i] = 0;
+					continue;
+				}
+
+				int west = (x > windowLeft) ? labels[i - 1] : 0;
+				int north = (y > windowTop) ? labels[i - width] : 0;
+				int label;
+				if (west != 0)
+				{
+					label = west;
+					if (north != 0 && north != west)
+						union(west, north);
+				}
+				else if (north != 0)
+					label = north;
+				else
+					label = newLabel();
+
+				labels[i] = label;
+				if (x == windowLeft || y == windowTop || x == windowRight - 1 || y == windowBottom - 1)
+					labelTouchesBorder[label] = true;
+			}
+		}
+
+		// Pass the border flag on to the root of each set.
+		for (int label = 1; label <= numOfLabels; label++)
+		{
+			if (labelTouchesBorder[label])
+				labelTouchesBorder[find(label)] = true;
+		}
+
+		for (int y = windowTop; y < windowBottom; y++)
+		{
+			int rowStart = y * width;
+			for (int i = rowStart + windowLeft; i < rowStart + windowRight; i++)
+			{
+				if (labels[i] != 0 && !labelTouchesBorder[find(labels[i])])
+					binaryPixels[i] = HSVThresholdTable.PIXEL_ON;
+			}
+		}
+	}
+
+	/**
+	 * The first pass. Gives every particle pixel a provisional label using connectivity8,
+	 * and adds the pixel to its label's area, bounding box, moments, and perimeter.
+	 * @param binaryPixels The binary image.
+	 */
+	private void labelParticles(byte[] binaryPixels)
+	{
+		numOfLabels = 0;
+		for (int y = windowTop; y < windowBottom; y++)
+		{
+			int rowStart = y * width;
+			for (int x = windowLeft; x < windowRight; x++)
+			{
+				int i = rowStart + x;
+				if (binaryPixels[i] == 0)
+				{
+					labels[i] = 0;
+					continue;
+				}
+
+				/* Only the 4 neighbors that have already been labeled need to be checked (west, north-west, north, north-east).
+				 * If north is part of a particle, the other three (if they're part of a particle) must have already been joined with it.
+				 * West and north-west are always already joined with each other.
+				 */
+				int label;
+				int north = (y > windowTop) ? labels[i - width] : 0;
+				if (north != 0)
+					label = north;
+				else
+				{
+					int west = (x > windowLeft) ? labels[i - 1] : 0;
+					int northWest = (x > windowLeft && y > windowTop) ? labels[i - width - 1] : 0;
+					int northEast = (x < windowRight - 1 && y > windowTop) ? labels[i - width + 1] : 0;
+					int left = (west != 0) ? west : northWest;
+
+					if (left != 0)
+					{
+						label = left;
+						if (northEast != 0)
+							union(left, northEast);
+					}
+					else if (northEast != 0)
+						label = northEast;
+					else
+						label = newLabel();
+				}
+				labels[i] = label;
+
+				labelArea[label]++;
+				labelSumX[label] += x;
+				labelSumY[label] += y;
+				if (x < labelMinX[label])
+					labelMinX[label] = x;
+				if (x > labelMaxX[label])
+					labelMaxX[label] = x;
+				if (y < labelMinY[label])
+					labelMinY[label] = y;
+				if (y > labelMaxY[label])
+					labelMaxY[label] = y;
+
+				int exposedEdges = 0;
+				if (x == windowLeft || binaryPixels[i - 1] == 0)
+					exposedEdges++;
+				if (x == windowRight - 1 || binaryPixels[i + 1] == 0)
+					exposedEdges++;
+				if (y == windowTop || binaryPixels[i - width] == 0)
+					exposedEdges++;
+				if (y == windowBottom - 1 || binaryPixels[i + width] == 0)
+					exposedEdges++;
+				labelPerimeter[label] += exposedEdges;
+			}
+		}
+	}
+
+	/**
+	 * The second step. Adds the totals of every provisional label into the root of its set,
+	 * applies the area filter, and writes the measurements of each remaining particle.
+	 * If any particles are removed by the filter, their pixels are cleared from the binary image.
+	 * @param binaryPixels The binary image.
+	 * @param results Where the measurements are put.
+	 * @param minPercentage The smallest area a particle can have, as a percentage of the image area.
+	 * @param maxPercentage The largest area a particle can have, as a percentage of the image area.
+	 * @return The number of particles that passed the filter.
+	 */
+	private int combineLabels(byte[] binaryPixels, ParticleMeasurements results, double minPercentage, double maxPercentage)
+	{
+		for (int label = 1; label <= numOfLabels; label++)
+		{
+			int root = find(label);
+			if (root == label)
+				continue;
+
+			labelArea[root] += labelArea[label];
+			labelSumX[root] += labelSumX[label];
+			labelSumY[root] += labelSumY[label];
+			labelPerimeter[root] += labelPerimeter[label];
+			labelMinX[root] = Math.min(labelMinX[root], labelMinX[label]);
+			labelMaxX[root] = Math.max(labelMaxX[root], labelMaxX[label]);
+			labelMinY[root] = Math.min(labelMinY[root], labelMinY[label]);
+			labelMaxY[root] = Math.max(labelMaxY[root], labelMaxY[label]);
+		}
+
+		// Roots always come before the other labels in their set, so each label's root already has its particle ID when the label is reached.
+		double imageArea = (double) width * height;
+		int numOfParticles = 0;
+		boolean particlesWereRemoved = false;
+		for (int label = 1; label <= numOfLabels; label++)
+		{
+			int root = find(label);
+			if (root == label)
+			{
+				double areaPercentage = 100.0 * labelArea[label] / imageArea;
+				if (minPercentage <= areaPercentage && areaPercentage <= maxPercentage)
+					particleIDOfLabel[label] = numOfParticles++;
+				else
+				{
+					particleIDOfLabel[label] = -1;
+					particlesWereRemoved = true;
+				}
+			}
+			else
+				particleIDOfLabel[label] = particleIDOfLabel[root];
+		}
+
+		results.reset(numOfParticles);
+		for (int label = 1; label <= numOfLabels; label++)
+		{
+			int particleID = particleIDOfLabel[label];
+			if (particleID < 0 || find(label) != label)
+				continue;
+
+			results.area[particleID] = labelArea[label];
+			results.centerOfMassX[particleID] = (double) labelSumX[label] / labelArea[label];
+			results.centerOfMassY[particleID] = (double) labelSumY[label] / labelArea[label];
+			results.boundingRectLeft[particleID] = labelMinX[label];
+			results.boundingRectTop[particleID] = labelMinY[label];
+			results.boundingRectWidth[particleID] = labelMaxX[label] - labelMinX[label] + 1;
+			results.boundingRectHeight[particleID] = labelMaxY[label] - labelMinY[label] + 1;
+			results.calculateShapeRatios(particleID, labelPerimeter[label]);
+		}
+
+		if (particlesWereRemoved)
+		{
+			for (int y = windowTop; y < windowBottom; y++)
+			{
+				int rowStart = y * width;
+				for (int i = rowStart + windowLeft; i < rowStart + windowRight; i++)
+				{
+					if (labels[i] != 0 && particleIDOfLabel[labels[i]] < 0)
+						binaryPixels[i] = HSVThresholdTable.PIXEL_OFF;
+				}
+			}
+		}
+
+		return numOfParticles;
+	}
+}
@@ -0,0 +1,184 @@
+package org.usfirst.frc.team1787.robot.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.usfirst.frc.team1787.robot.FrameReplaySource;
+
+/**
+ * The camera frames the benchmarks run on. Every benchmark moves to the next frame each call,
+ * so the numbers are an average over the whole set instead of one lucky (or unlucky) frame.
+ *
+ * By default, a set of synthetic frames is made: a dark, noisy background with a goal-shaped U that moves
+ * across the image, a large goal-colored reflection in every third frame, and some goal-colored specks that the small particle filter should remove.
+ * To use frames recorded on the robot instead, pass the recording's path as the frames parameter: -p frames=/path/to/vision-frames.bin
+ */
+@State(Scope.Thread)
+public class FrameSet
+{
+	/** The width of every frame. */
+	public static final int WIDTH = 320;
+	/** The height of every frame. */
+	public static final int HEIGHT = 240;
+	/** The number of bytes used to store each pixel (blue, green, red, alpha). */
+	public static final int BYTES_PER_PIXEL = 4;
+	/** The number of synthetic frames to make. */
+	private static final int NUM_OF_SYNTHETIC_FRAMES = 60;
+	/** The width of the goal in the synthetic frames. */
+	private static final int GOAL_WIDTH = 40;
+	/** The height of the goal in the synthetic frames. */
+	private static final int GOAL_HEIGHT = 28;
+	/** The width of the tape around the goal in the synthetic frames. */
+	private static final int GOAL_TAPE_WIDTH = 4;
+	/** The number of goal-colored specks added to each synthetic frame. */
+	private static final int SPECKS_PER_FRAME = 40;
+
+	/** Either "synthetic", or the path of a recording made with VisionMethods.startRecording(). */
+	@Param({"synthetic"})
+	public String frames;
+
+	/** The buffer holding every frame. */
+	private ByteBuffer pixels;
+	/** The index in pixels where each frame starts. */
+	private int[] frameOffsets;
+	/** The capture time of each frame. */
+	private double[] captureTimes;
+	/** The index of the current frame. */
+	private int currentFrame = 0;
+
+	@Setup
+	public void loadFrames() throws IOException
+	{
+		if ("synthetic".equals(frames))
+			makeSyntheticFrames();
+		else
+			loadRecordedFrames(frames);
+	}
+
+	/**
+	 * Moves to the next frame, going back to the first one after the last.
+	 */
+	public void nextFrame()
+	{
+		currentFrame++;
+		if (currentFrame == frameOffsets.length)
+			currentFrame = 0;
+	}
+
+	public ByteBuffer getPixels()
+	{
+		return pixels;
+	}
+
+	public int getPixelOffset()
+	{
+		return frameOffsets[currentFrame];
+	}
+
+	public double getCaptureTime()
+	{
+		return captureTimes[currentFrame];
+	}
+
+	public int getNumOfFrames()
+	{
+		return frameOffsets.length;
+	}
+
+	/**
+	 * Reads every frame out of a recording. The recording stays memory-mapped, so nothing is copied.
+	 */
+	private void loadRecordedFrames(String path) throws IOException
+	{
+		FrameReplaySource recording = new FrameReplaySource(path);
+		if (recording.getWidth() != WIDTH || recording.getHeight() != HEIGHT)
+			throw new IOException(path + " has " + recording.getWidth() + "x" + recording.getHeight() + " frames. The benchmarks need " + WIDTH + "x" + HEIGHT + ".");
+		if (recording.getNumOfFrames() == 0)
+			throw new IOException(path + " has no frames.");
+
+		pixels = recording.getPixels();
+		frameOffsets = new int[recording.getNumOfFrames()];
+		captureTimes = new double[frameOffsets.length];
+		for (int i = 0; recording.nextFrame(); i++)
+		{
+			frameOffsets[i] = recording.getPixelOffset();
+			captureTimes[i] = recording.getCaptureTime();
+		}
+	}
+
+	/**
+	 * Makes the synthetic frames. The same seed is always used, so every run sees the same frames.
+	 */
+	private void makeSyntheticFrames()
+	{
+		int frameSize = WIDTH * HEIGHT * BYTES_PER_PIXEL;
+		pixels = ByteBuffer.allocateDirect(frameSize * NUM_OF_SYNTHETIC_FRAMES);
+		frameOffsets = new int[NUM_OF_SYNTHETIC_FRAMES];
+		captureTimes = new double[NUM_OF_SYNTHETIC_FRAMES];
+		Random random = new Random(1787);
+
+		for (int frame = 0; frame < NUM_OF_SYNTHETIC_FRAMES; frame++)
+		{
+			int offset = frame * frameSize;
+			frameOffsets[frame] = offset;
+			captureTimes[frame] = frame / 30.0;
+
+			// Dark gray background with some noise, which fails the threshold.
+			for (int i = 0; i < WIDTH * HEIGHT; i++)
+			{
+				int gray = 20 + random.nextInt(40);
+				setPixel(offset, i, gray, gray, gray);
+			}
+
+			// The goal: a 40x28 U made of 4 pixel wide tape (which passes both goal tests), moving across the image.
+			int goalLeft = 20 + (frame * 3) % (WIDTH - 80);
+			int goalTop = 40 + (frame * 2) % (HEIGHT - 80);
+			for (int y = goalTop; y < goalTop + GOAL_HEIGHT; y++)
+			{
+				for (int x = goalLeft; x < goalLeft + GOAL_WIDTH; x++)
+				{
+					boolean onTape = y >= goalTop + GOAL_HEIGHT - GOAL_TAPE_WIDTH || x < goalLeft + GOAL_TAPE_WIDTH || x >= goalLeft + GOAL_WIDTH - GOAL_TAPE_WIDTH;
+					if (onTape)
+						setGoalColoredPixel(offset, y * WIDTH + x, random);
+				}
+			}
+
+			// A reflection that is bigger than the goal, but the wrong shape.
+			if (frame % 3 == 0)
+			{
+				for (int y = 150; y < 200; y++)
+				{
+					for (int x = 200; x < 300; x++)
+						setGoalColoredPixel(offset, y * WIDTH + x, random);
+				}
+			}
+
+			// Specks of noise that pass the threshold but are too small to be a particle.
+			for (int i = 0; i < SPECKS_PER_FRAME; i++)
+				setGoalColoredPixel(offset, random.nextInt(WIDTH * HEIGHT), random);
+		}
+	}
+
+	/**
+	 * Sets a pixel to a color that passes VisionMethods' default HSV threshold (hue around 135, full saturation, medium value).
+	 */
+	private void setGoalColoredPixel(int frameOffset, int pixel, Random random)
+	{
+		int blue = 100 + random.nextInt(60);
+		setPixel(frameOffset, pixel, 0, blue * 5 / 6, blue); // About 190 degrees, which is 135 on NIVision's 0 - 255 hue scale.
+	}
+
+	private void setPixel(int frameOffset, int pixel, int red, int green, int blue)
+	{
+		int index = frameOffset + pixel * BYTES_PER_PIXEL;
+		pixels.put(index, (byte) blue);
+		pixels.put(index + 1, (byte) green);
+		pixels.put(index + 2, (byte) red);
+		pixels.put(index + 3, (byte) 0);
+	}
+}
@@ -0,0 +1,79 @@
+package org.usfirst.frc.team1787.robot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.usfirst.frc.team1787.robot.VisionMethods;
+
+import com.ni.vision.NIVision;
+import com.ni.vision.NIVision.Image;
+
+/**
+ * Benchmarks for drawing the bounding box and crosshairs on the image sent to the dashboard.
+ * The drawing is done by NIVision, so these only run on the roborio. Anywhere else the setup fails
+ * because the NIVision library can't be loaded. Run just these with: java -jar ... OverlayBenchmarks
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OverlayBenchmarks
+{
+	/** A VisionMethods object that has found a goal, so there's something to draw. */
+	private VisionMethods vision;
+	/** The image that is drawn on. */
+	private Image binaryImg;
+
+	@Setup
+	public void setUp(FrameSet frames)
+	{
+		vision = new VisionMethods();
+		for (int i = 0; i < frames.getNumOfFrames(); i++)
+		{
+			vision.performHSVFilter(frames.getPixels(), frames.getPixelOffset(), frames.getCaptureTime());
+			vision.removeSmallParticles();
+			if (vision.getNumOfParticles() > 0)
+			{
+				vision.findLargestParticle();
+				if (vision.performAspectRatioTest())
+					break;
+			}
+			frames.nextFrame();
+		}
+		if (!vision.particleIsValid(vision.getCurrentParticle()))
+			throw new IllegalStateException("No goal was found in any of the frames, so there's nothing to draw.");
+
+		binaryImg = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_U8, 0);
+		NIVision.imaqSetImageSize(binaryImg, FrameSet.WIDTH, FrameSet.HEIGHT);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		binaryImg.free();
+	}
+
+	@Benchmark
+	public void drawBoundingBox()
+	{
+		vision.updateAndDrawCurrentParticleBoundingBox(binaryImg);
+	}
+
+	@Benchmark
+	public void drawCrosshairs()
+	{
+		vision.updateAndDrawCrosshairsOnCurrentParticle(binaryImg);
+	}
+}
@@ -0,0 +1,310 @@
+package org.usfirst.frc.team1787.robot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.usfirst.frc.team1787.robot.BitPackedImage;
+import org.usfirst.frc.team1787.robot.ByteThreshold;
+import org.usfirst.frc.team1787.robot.HSVThresholdTable;
+import org.usfirst.frc.team1787.robot.ParticleLabeler;
+import org.usfirst.frc.team1787.robot.ParticleMeasurements;
+import org.usfirst.frc.team1787.robot.RunLengthLabeler;
+import org.usfirst.frc.team1787.robot.VisionMethods;
+
+/**
+ * Benchmarks for each stage of finding the goal in a frame, in the order VisionProcessor runs them:
+ * HSV threshold, small particle removal, and findBestCandidate (which scores every particle with both goal tests).
+ * removeSmallParticles uses RunLengthLabeler, like VisionMethods does. The pixel by pixel ParticleLabeler,
+ * findLargestParticle, and the single-particle area and aspect ratio tests are also benchmarked, for comparison.
+ * There is also a benchmark for the whole chain, which should be close to the sum of the stages,
+ * and one for the whole chain with pyramid search on.
+ *
+ * These use the java processing path (the one VisionReplay uses), since NIVision can only run on the roborio.
+ * The overlay drawing is benchmarked separately in OverlayBenchmarks for the same reason.
+ *
+ * Run with "-prof gc" to get the allocation rate of each stage. Every stage should show (close to) 0 bytes per op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisionStageBenchmarks
+{
+	/** The number of frames that are fully processed ahead of time for the benchmarks of the stages after the particle filter. */
+	private static final int NUM_OF_PROCESSED_FRAMES = 16;
+
+	/**
+	 * A VisionMethods object for each benchmark thread, used by the threshold and whole chain benchmarks.
+	 */
+	@State(Scope.Thread)
+	public static class Pipeline
+	{
+		VisionMethods vision;
+
+		@Setup
+		public void setUp()
+		{
+			vision = new VisionMethods();
+		}
+	}
+
+	/**
+	 * A VisionMethods object with pyramid search on, for each benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class PyramidPipeline
+	{
+		@Param({"2", "4"})
+		public int pyramidFactor;
+
+		VisionMethods vision;
+
+		@Setup
+		public void setUp()
+		{
+			vision = new VisionMethods();
+			vision.setPyramidSearchFactor(pyramidFactor);
+		}
+	}
+
+	/**
+	 * The thresholded (but not yet filtered) version of every frame, both a byte per pixel and bit packed,
+	 * so the particle filters can be benchmarked on their own.
+	 */
+	@State(Scope.Thread)
+	public static class ThresholdedFrames
+	{
+		byte[][] thresholded;
+		byte[] workingCopy = new byte[FrameSet.WIDTH * FrameSet.HEIGHT];
+		BitPackedImage[] thresholdedBits;
+		BitPackedImage workingBits = new BitPackedImage(FrameSet.WIDTH, FrameSet.HEIGHT);
+		ParticleLabeler labeler = new ParticleLabeler(FrameSet.WIDTH, FrameSet.HEIGHT);
+		RunLengthLabeler runLengthLabeler = new RunLengthLabeler(FrameSet.WIDTH, FrameSet.HEIGHT);
+		ParticleMeasurements measurements = new ParticleMeasurements(32);
+		int currentFrame = 0;
+
+		@Setup
+		public void setUp(FrameSet frames)
+		{
+			// Use the same threshold and filter settings as VisionMethods.
+			HSVThresholdTable table = new HSVThresholdTable(125, 145, 245, 255, 30, 175);
+			labeler.setFilterOptions(true, 0.1, 100.0);
+			runLengthLabeler.setFilterOptions(true, 0.1, 100.0);
+
+			thresholded = new byte[frames.getNumOfFrames()][];
+			thresholdedBits = new BitPackedImage[frames.getNumOfFrames()];
+			for (int i = 0; i < thresholded.length; i++)
+			{
+				thresholded[i] = new byte[FrameSet.WIDTH * FrameSet.HEIGHT];
+				ByteThreshold.threshold(table, frames.getPixels(), frames.getPixelOffset(), thresholded[i], thresholded[i].length);
+				thresholdedBits[i] = new BitPackedImage(FrameSet.WIDTH, FrameSet.HEIGHT);
+				table.threshold(frames.getPixels(), frames.getPixelOffset(), 0, 0, FrameSet.WIDTH, FrameSet.HEIGHT, thresholdedBits[i]);
+				frames.nextFrame();
+			}
+		}
+
+		/**
+		 * Puts the next frame's thresholded pixels into workingCopy, since the filter changes the pixels it works on.
+		 */
+		byte[] nextFrame()
+		{
+			currentFrame++;
+			if (currentFrame == thresholded.length)
+				currentFrame = 0;
+			System.arraycopy(thresholded[currentFrame], 0, workingCopy, 0, workingCopy.length);
+			return workingCopy;
+		}
+
+		/**
+		 * Puts the next frame's bit packed pixels into workingBits.
+		 */
+		BitPackedImage nextBitFrame()
+		{
+			currentFrame++;
+			if (currentFrame == thresholdedBits.length)
+				currentFrame = 0;
+			long[] words = workingBits.getWords();
+			System.arraycopy(thresholdedBits[currentFrame].getWords(), 0, words, 0, words.length);
+			return workingBits;
+		}
+	}
+
+	/**
+	 * A threshold table and bit packed image, for benchmarking the bit packed threshold and the morphology on their own.
+	 */
+	@State(Scope.Thread)
+	public static class BitImage
+	{
+		HSVThresholdTable table = new HSVThresholdTable(125, 145, 245, 255, 30, 175);
+		BitPackedImage image = new BitPackedImage(FrameSet.WIDTH, FrameSet.HEIGHT);
+	}
+
+	/**
+	 * VisionMethods objects that have already thresholded and filtered a frame each, for the stages that only read the measurements.
+	 */
+	@State(Scope.Thread)
+	public static class FilteredFrames
+	{
+		VisionMethods[] processed;
+		int current = 0;
+
+		@Setup
+		public void setUp(FrameSet frames)
+		{
+			int count = Math.min(NUM_OF_PROCESSED_FRAMES, frames.getNumOfFrames());
+			int step = frames.getNumOfFrames() / count;
+			processed = new VisionMethods[count];
+			for (int i = 0; i < count; i++)
+			{
+				processed[i] = new VisionMethods();
+				processed[i].performHSVFilter(frames.getPixels(), frames.getPixelOffset(), frames.getCaptureTime());
+				processed[i].removeSmallParticles();
+				if (processed[i].getNumOfParticles() > 0)
+					processed[i].findLargestParticle();
+				for (int j = 0; j < step; j++)
+					frames.nextFrame();
+			}
+		}
+
+		VisionMethods next()
+		{
+			current++;
+			if (current == processed.length)
+				current = 0;
+			return processed[current];
+		}
+	}
+
+	@Benchmark
+	public void hsvThreshold(FrameSet frames, Pipeline pipeline)
+	{
+		frames.nextFrame();
+		pipeline.vision.performHSVFilter(frames.getPixels(), frames.getPixelOffset(), frames.getCaptureTime());
+	}
+
+	@Benchmark
+	public long[] hsvThresholdToBits(FrameSet frames, BitImage bits)
+	{
+		frames.nextFrame();
+		bits.table.threshold(frames.getPixels(), frames.getPixelOffset(), 0, 0, FrameSet.WIDTH, FrameSet.HEIGHT, bits.image);
+		return bits.image.getWords();
+	}
+
+	/**
+	 * Thresholding into a bit packed image, then an opening. Subtract hsvThresholdToBits to get the cost of the opening alone.
+	 */
+	@Benchmark
+	public long[] hsvThresholdToBitsAndOpen(FrameSet frames, BitImage bits)
+	{
+		frames.nextFrame();
+		bits.table.threshold(frames.getPixels(), frames.getPixelOffset(), 0, 0, FrameSet.WIDTH, FrameSet.HEIGHT, bits.image);
+		bits.image.open();
+		return bits.image.getWords();
+	}
+
+	/**
+	 * The cost of copying a byte per pixel binary image, which is included in removeSmallParticlesPixelByPixel.
+	 */
+	@Benchmark
+	public byte[] copyBinaryImageBaseline(ThresholdedFrames binary)
+	{
+		return binary.nextFrame();
+	}
+
+	@Benchmark
+	public int removeSmallParticles(ThresholdedFrames binary)
+	{
+		return binary.runLengthLabeler.filterAndMeasureParticles(binary.nextBitFrame(), binary.measurements, 0, 0, FrameSet.WIDTH, FrameSet.HEIGHT);
+	}
+
+	/**
+	 * The cost of copying a bit packed image, which is included in removeSmallParticles.
+	 */
+	@Benchmark
+	public BitPackedImage copyBitImageBaseline(ThresholdedFrames binary)
+	{
+		return binary.nextBitFrame();
+	}
+
+	/**
+	 * The pixel by pixel labeler that removeSmallParticles used before RunLengthLabeler. Subtract copyBinaryImageBaseline to get the cost of the filter alone.
+	 */
+	@Benchmark
+	public int removeSmallParticlesPixelByPixel(ThresholdedFrames binary)
+	{
+		return binary.labeler.filterAndMeasureParticles(binary.nextFrame(), binary.measurements);
+	}
+
+	@Benchmark
+	public int findLargestParticle(FilteredFrames filtered)
+	{
+		VisionMethods vision = filtered.next();
+		if (vision.getNumOfParticles() == 0)
+			return -1;
+		vision.findLargestParticle();
+		return vision.getLargestParticle();
+	}
+
+	@Benchmark
+	public boolean findBestCandidate(FilteredFrames filtered)
+	{
+		return filtered.next().findBestCandidate();
+	}
+
+	@Benchmark
+	public boolean performAreaTest(FilteredFrames filtered)
+	{
+		VisionMethods vision = filtered.next();
+		return vision.getNumOfParticles() > 0 && vision.performAreaTest();
+	}
+
+	@Benchmark
+	public boolean performAspectRatioTest(FilteredFrames filtered)
+	{
+		VisionMethods vision = filtered.next();
+		return vision.getNumOfParticles() > 0 && vision.performAspectRatioTest();
+	}
+
+	/**
+	 * Everything VisionProcessor does with a frame except grabbing it from the camera and sending it to the dashboard.
+	 */
+	@Benchmark
+	public boolean wholeChain(FrameSet frames, Pipeline pipeline)
+	{
+		return processFrame(frames, pipeline.vision);
+	}
+
+	/**
+	 * The whole chain, with the coarse search on a shrunk copy of each frame before the full size threshold.
+	 * Tracking mode is off, so every frame is searched from scratch.
+	 */
+	@Benchmark
+	public boolean wholeChainPyramid(FrameSet frames, PyramidPipeline pipeline)
+	{
+		return processFrame(frames, pipeline.vision);
+	}
+
+	private static boolean processFrame(FrameSet frames, VisionMethods vision)
+	{
+		frames.nextFrame();
+		vision.performHSVFilter(frames.getPixels(), frames.getPixelOffset(), frames.getCaptureTime());
+		vision.removeSmallParticles();
+
+		boolean goalFound = false;
+		if (vision.getNumOfParticles() > 0)
+			goalFound = vision.findBestCandidate();
+		vision.updateTrackingWindow(goalFound);
+		return goalFound;
+	}
+}
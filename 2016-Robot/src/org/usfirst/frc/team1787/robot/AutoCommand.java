@@ -0,0 +1,35 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * One action the robot performs during auto, like driving a distance or deploying the wedge.
+ * Commands are put together with the groups in AutoCommands to make a whole auto routine.
+ *
+ * A command is run like this:
+ * 1) start() is called once, right before the first update().
+ * 2) update() is called periodically until it returns true.
+ * 3) end(false) is called once, right after update() returns true.
+ * If the command is cut short (by a race or deadline group, or by auto ending), end(true) is called instead, and update() isn't called again.
+ * A command can be run again after it ends, so start() should reset anything it keeps track of.
+ *
+ * Commands that run at the same time (in a parallel, race, or deadline group) shouldn't use the same mechanism,
+ * since they'd fight over it. Driving and turning use the drive base, and only one of them should run at a time.
+ */
+public interface AutoCommand
+{
+	/**
+	 * Gets ready to run. Called once before the first update().
+	 */
+	void start();
+	
+	/**
+	 * Does this command's work for one loop.
+	 * @return True if the command has finished.
+	 */
+	boolean update();
+	
+	/**
+	 * Cleans up after the command, like stopping the motors it used.
+	 * @param interrupted True if the command was cut short, false if it finished on its own.
+	 */
+	void end(boolean interrupted);
+}
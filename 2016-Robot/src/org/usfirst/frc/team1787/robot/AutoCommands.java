@@ -0,0 +1,229 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * The groups used to put AutoCommands together, and other commands that don't need any of the robot's mechanisms.
+ * Each method makes a new command object, so routines should be built once (in autonomousInit), not every loop.
+ *
+ * 1) sequence(): runs commands one after another.
+ * 2) parallel(): runs commands at the same time, and finishes when all of them have finished.
+ * 3) race(): runs commands at the same time, and finishes when any of them finishes. The others are cut short.
+ * 4) deadline(): runs commands at the same time, and finishes when the first one (the deadline) finishes. The others are cut short if they're still going.
+ *
+ * The old step counters in AutoMethods could only do one thing at a time, so the wedge had to finish deploying before the robot started driving.
+ * With groups, things that don't use the same mechanism (like the arm and the drive base) can overlap.
+ */
+public final class AutoCommands
+{
+	private AutoCommands()
+	{
+	}
+	
+	/**
+	 * Makes a command that runs commands one after another. When one finishes, the next one starts and is updated in the same loop.
+	 * @param commands The commands, in order.
+	 * @return The command.
+	 */
+	public static AutoCommand sequence(AutoCommand... commands)
+	{
+		return new Sequence(commands);
+	}
+	
+	/**
+	 * Makes a command that runs commands at the same time, and finishes when all of them have finished.
+	 * @param commands The commands.
+	 * @return The command.
+	 */
+	public static AutoCommand parallel(AutoCommand... commands)
+	{
+		return new Parallel(commands, Parallel.END_WHEN_ALL_FINISH);
+	}
+	
+	/**
+	 * Makes a command that runs commands at the same time, and finishes when any of them finishes. The others are cut short.
+	 * @param commands The commands.
+	 * @return The command.
+	 */
+	public static AutoCommand race(AutoCommand... commands)
+	{
+		return new Parallel(commands, Parallel.END_WHEN_ANY_FINISHES);
+	}
+	
+	/**
+	 * Makes a command that runs commands at the same time, and finishes when the deadline command finishes.
+	 * The other commands are cut short if they haven't finished by then.
+	 * @param deadline The command that decides when the group finishes.
+	 * @param others The commands that run alongside it.
+	 * @return The command.
+	 */
+	public static AutoCommand deadline(AutoCommand deadline, AutoCommand... others)
+	{
+		AutoCommand[] commands = new AutoCommand[others.length + 1];
+		commands[0] = deadline;
+		System.arraycopy(others, 0, commands, 1, others.length);
+		return new Parallel(commands, Parallel.END_WHEN_FIRST_FINISHES);
+	}
+	
+	/**
+	 * Makes a command that waits for a given amount of time. The rest of the robot keeps running while it waits.
+	 * @param seconds How long to wait, in seconds.
+	 * @return The command.
+	 */
+	public static AutoCommand waitSeconds(double seconds)
+	{
+		return new Wait(seconds);
+	}
+	
+	/**
+	 * Makes a command that finishes right away. Used in place of a part of a routine that there's nothing to do for.
+	 * @return The command.
+	 */
+	public static AutoCommand doNothing()
+	{
+		return new Wait(0);
+	}
+	
+	/**
+	 * Makes a command that never finishes. Used to stop a routine at a part we can't do yet, so nothing after it runs.
+	 * @return The command.
+	 */
+	public static AutoCommand stopHere()
+	{
+		return new Wait(Double.POSITIVE_INFINITY);
+	}
+	
+	private static final class Sequence implements AutoCommand
+	{
+		private final AutoCommand[] commands;
+		/** The index of the command that is running. Equal to the number of commands once they've all finished. */
+		private int current;
+		
+		Sequence(AutoCommand[] commands)
+		{
+			this.commands = commands;
+		}
+		
+		public void start()
+		{
+			current = 0;
+			if (commands.length > 0)
+				commands[0].start();
+		}
+		
+		public boolean update()
+		{
+			while (current < commands.length)
+			{
+				if (!commands[current].update())
+					return false;
+				commands[current].end(false);
+				current++;
+				if (current < commands.length)
+					commands[current].start();
+			}
+			return true;
+		}
+		
+		public void end(boolean interrupted)
+		{
+			if (interrupted && current < commands.length)
+				commands[current].end(true);
+		}
+	}
+	
+	private static final class Parallel implements AutoCommand
+	{
+		/** The group finishes when every command has finished. */
+		static final int END_WHEN_ALL_FINISH = 0;
+		/** The group finishes when any command finishes. */
+		static final int END_WHEN_ANY_FINISHES = 1;
+		/** The group finishes when the first command finishes. */
+		static final int END_WHEN_FIRST_FINISHES = 2;
+		
+		private final AutoCommand[] commands;
+		/** When the group finishes. One of the END_ constants. */
+		private final int endCondition;
+		/** A boolean for each command indicating if it is still running. */
+		private final boolean[] running;
+		
+		Parallel(AutoCommand[] commands, int endCondition)
+		{
+			this.commands = commands;
+			this.endCondition = endCondition;
+			running = new boolean[commands.length];
+		}
+		
+		public void start()
+		{
+			for (int i = 0; i < commands.length; i++)
+			{
+				commands[i].start();
+				running[i] = true;
+			}
+		}
+		
+		public boolean update()
+		{
+			boolean anyFinished = false;
+			boolean allFinished = true;
+			for (int i = 0; i < commands.length; i++)
+			{
+				if (!running[i])
+					continue;
+				if (commands[i].update())
+				{
+					commands[i].end(false);
+					running[i] = false;
+					anyFinished = true;
+				}
+				else
+					allFinished = false;
+			}
+			
+			if (endCondition == END_WHEN_ALL_FINISH)
+				return allFinished;
+			else if (endCondition == END_WHEN_ANY_FINISHES)
+				return anyFinished || allFinished;
+			else
+				return commands.length == 0 || !running[0];
+		}
+		
+		public void end(boolean interrupted)
+		{
+			// Anything still running when the group ends is cut short, even if the group itself finished normally.
+			for (int i = 0; i < commands.length; i++)
+			{
+				if (running[i])
+				{
+					commands[i].end(true);
+					running[i] = false;
+				}
+			}
+		}
+	}
+	
+	private static final class Wait implements AutoCommand
+	{
+		private final double seconds;
+		private final WaitStep wait = new WaitStep();
+		
+		Wait(double seconds)
+		{
+			this.seconds = seconds;
+		}
+		
+		public void start()
+		{
+			wait.start(seconds);
+		}
+		
+		public boolean update()
+		{
+			return wait.isDone();
+		}
+		
+		public void end(boolean interrupted)
+		{
+			wait.cancel();
+		}
+	}
+}
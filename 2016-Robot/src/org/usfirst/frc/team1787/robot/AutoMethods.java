@@ -6,6 +6,7 @@ import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 /**
  * This class is a collection of the various autonomous routines we may use.
  * This class allows us to keep all autonomous code in one place and simplifies the autonomousPeriodic() method in Robot.
+ * Each routine is built out of AutoCommands when auto starts, so actions that use different mechanisms can run at the same time.
  * @author David Miron
  * @author Simon Wieder
  */
@@ -46,12 +47,10 @@ public class AutoMethods
 	private static final double AUTO_ROTATE_SPEED = 0.25;
 	/** Tested value to turn while moving to move in a straight line */
 	private static final double CURVE_CORRECTION_VALUE = 0.007225;
-	/** A counter variable that keeps track of the step being performed in runAuto() */
-	private int mainStep = 1;
-	/** A counter variable that keeps track of the step being performed in a given "conquer defense" method */
-	private int conquerDefenseStep = 1;
-	/** A counter variable that keeps track of the step being performed in the "move to goal" method */
-	private int moveToGoalStep = 1;
+	/** The auto routine built by startAuto(). */
+	private AutoCommand routine;
+	/** A boolean indicating if the auto routine has been started and hasn't finished or been stopped yet. */
+	private boolean routineRunning = false;
 	
 	// Values used in the gyro PID loop
 	PIDOutputCalc gyroController;
@@ -63,14 +62,21 @@ public class AutoMethods
 	private static final double GYRO_KD = 0.03;
 	
 	// Variables for spinning wheels
-	/** Timer for timing how long the wheels spin. */
-	Timer pickupWheelsSpinTimer = new Timer();
 	/** Time to spin pickupWheels to pick up a boulder. */
 	public static final int PICKUP_TIME = 7;
 	/** Time to spin pickupWheels to eject a boulder. */
 	public static final int EJECT_TIME = 7;
 	
-	Timer waitTimer = new Timer();
+	/** How long, in seconds, to wait after a turn before resetting the gyro. */
+	private static final double TURN_SETTLE_TIME = 0.5;
+	
+	// Log events
+	/** Logged when autoConquerDefense is given a defense that doesn't exist. */
+	private static final int LOG_INVALID_DEFENSE = EventLog.registerEvent("Invalid Defense ID: %.0f");
+	/** Logged when autoMoveToGoal is given a starting position that doesn't exist. */
+	private static final int LOG_INVALID_POSITION = EventLog.registerEvent("Invalid Starting Position: %.0f");
+	/** Logged when autoSpinPickupWheels is given a speed other than the PickupArm constants. */
+	private static final int LOG_INVALID_WHEEL_SPEED = EventLog.registerEvent("Invalid autoSpinPickupWheels speed (%.2f). Please use PickupArm.WHEELS_EJECT, PickupArm.WHEELS_PICKUP, or PickupArm.WHEELS_STATIONARY");
 	// Methods:
 	
 	
@@ -89,322 +95,374 @@ public class AutoMethods
 		gyroController = new PIDOutputCalc(GYRO_KP, GYRO_KI, GYRO_KD);
 	}
 	
-	public void runAuto(int startingPosition, int defenseInStartingPosition, boolean tryToScore)
+	/**
+	 * Builds the auto routine for the options chosen on the SmartDashboard, and starts it. Any routine that was already running is stopped.
+	 * @param startingPosition Where the robot starts on the field (1-5), or 0 to do nothing during auto.
+	 * @param defenseInStartingPosition The defense in front of the robot. One of the defense constants in this class.
+	 * @param tryToScore If the robot should go to the low goal and shoot after conquering the defense.
+	 */
+	public void startAuto(int startingPosition, int defenseInStartingPosition, boolean tryToScore)
 	{
-		if (mainStep == 1)
-		{
-			if (autoConquerDefense(defenseInStartingPosition))
-				mainStep++;
-		}
-		else if (mainStep == 2 && tryToScore)
+		stopAuto();
+		if (startingPosition == 0) // A startingPosition of 0 indicates the driver chose "No Autonomous" from the smart dashboard
+			routine = AutoCommands.doNothing();
+		else if (tryToScore)
+			routine = AutoCommands.sequence(
+					conquerDefense(defenseInStartingPosition),
+					moveToGoal(startingPosition),
+					shootLowGoal());
+		else
+			routine = conquerDefense(defenseInStartingPosition);
+		routine.start();
+		routineRunning = true;
+	}
+	
+	/**
+	 * Runs the auto routine started by startAuto(). Call this periodically during auto.
+	 */
+	public void runAuto()
+	{
+		if (routineRunning && routine.update())
 		{
-			if (autoMoveToGoal(startingPosition))
-				mainStep++;
+			routine.end(false);
+			routineRunning = false;
 		}
-		else if (mainStep == 3 && tryToScore)
+	}
+	
+	/**
+	 * Stops the auto routine if it's still running, and stops whatever it was doing.
+	 */
+	public void stopAuto()
+	{
+		if (routineRunning)
 		{
-			if (autoShootLowGoal())
-				mainStep++;
+			routine.end(true);
+			routineRunning = false;
 		}
 	}
 	
 	/**
-	 * This method calls the specific "autoConquer" method for the given defense.
+	 * Builds the command that conquers the given defense.
 	 * @param defense The value that specifies which defense to conquer.
-	 * @return If the given defense has been conquered.
+	 * @return The command. For defenses we can't conquer on our own, it never finishes, so nothing after it runs.
 	 */
-	public boolean autoConquerDefense(int defense)
+	public AutoCommand conquerDefense(int defense)
 	{
 		if (defense == LOW_BAR)
-			return autoConquerLowBar();
+			return conquerLowBar();
 		else if (defense == PORTCULLIS)
-			return autoConquerPortcullis();
+			return conquerPortcullis();
 		else if (defense == CHEVAL_DE_FRISE)
-			return autoConquerChevalDeFrise();
+			return conquerChevalDeFrise();
 		else if (defense == RAMPARTS)
-			return autoConquerRamparts();
+			return driveDistance(16, AUTO_MOVE_SPEED); // Move over the ramparts and get to the alignment line
 		else if (defense == MOAT)
-			return autoConquerMoat();
+			return driveDistance(16, AUTO_MOVE_SPEED); // Move over the moat and get to the alignment line
 		else if (defense == DRAWBRIDGE)
-			return autoConquerDrawbridge();
+			return AutoCommands.stopHere(); // We can't conquer the drawbridge on our own in auto.
 		else if (defense == SALLY_PORT)
-			return autoConquerSallyPort();
+			return AutoCommands.stopHere(); // We can't conquer the sally port on our own in auto.
 		else if (defense == ROCK_WALL)
-			return autoConquerRockWall();
+			return driveDistance(16, AUTO_MOVE_SPEED); // Move over the rock wall and get to the alignment line
 		else if (defense == ROUGH_TERRAIN)
-			return autoConquerRoughTerrain();
+			return driveDistance(16, AUTO_MOVE_SPEED); // Move over the rough terrain and get to the alignment line
 		else
 		{
-			System.out.println("Invalid Defense ID");
-			return false;
+			EventLog.log(LOG_INVALID_DEFENSE, defense);
+			return AutoCommands.stopHere();
 		}
 	}
 	
 	/*
-	 * Each of these autoConquer methods should get the
+	 * Each of these conquer methods should get the
 	 * front of the bumper lined up with the outside edge of the alignment line.
 	 */
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Low Bar and end up at the alignment line.
+	 * Builds the command that conquers the Low Bar and ends up at the alignment line.
 	 * To work properly, the robot must be correctly aligned with the Low Bar.
-	 * @return If the robot has finished conquering the Low Bar and has made it to the alignment line.
+	 * @return The command.
 	 */
-	public boolean autoConquerLowBar()
+	public AutoCommand conquerLowBar()
 	{
-		if (conquerDefenseStep == 1) // Move the arm to the pickup position so we can fit under the low bar with a boulder
-		{
-			if (autoMoveArm(PickupArm.REG_PICKUP))
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 2) // Move under the low bar and get to the alignment line
-		{
-			if (autoDriveDistance(11.565, AUTO_MOVE_SPEED))
-			{
-				conquerDefenseStep++;
-				return true;
-			}
-		}
-		return false;
+		// Move the arm to the pickup position so we can fit under the low bar with a boulder.
+		// The arm gets there long before the robot reaches the low bar, so it's done while driving.
+		return AutoCommands.parallel(
+				moveArm(PickupArm.REG_PICKUP),
+				driveDistance(11.565, AUTO_MOVE_SPEED)); // Move under the low bar and get to the alignment line
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Portcullis and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Portcullis.
-	 * @return If the robot has finished conquering the Portcullis and has made it to the alignment line.
+	 * Builds the command that conquers the Portcullis and ends up at the alignment line.
+	 * To work properly, the robot must be correctly aligned with the Portcullis (starting with the wedge facing it).
+	 * @return The command.
 	 */
-	public boolean autoConquerPortcullis()
+	public AutoCommand conquerPortcullis()
 	{
-		if (conquerDefenseStep == 1) // Deploy the wedge (starts with wedge facing portcullis)
-		{
-			if (autoMoveWedge(Wedge.DEPLOY))
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 2) // Move under the portcullis
-		{
-			if (autoDriveDistance(-6, AUTO_MOVE_SPEED)) // A negative distance is used because the wedge is in the back, so we're technically driving backwards
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 3)
-		{
-			if (autoMoveWedge(Wedge.RETRACT)) // Retract the wedge
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 4)
-		{
-			if (autoTurnDegrees(180)) // Turn around so the pickup arm is in the front
-			{
-				conquerDefenseStep++;
-				return true;
-			}
-		}
-		return false;
+		return AutoCommands.sequence(
+				AutoCommands.parallel( // Deploy the wedge while approaching, and move under the portcullis
+						moveWedge(Wedge.DEPLOY),
+						driveDistance(-6, AUTO_MOVE_SPEED)), // A negative distance is used because the wedge is in the back, so we're technically driving backwards
+				AutoCommands.parallel( // Retract the wedge while turning around so the pickup arm is in the front
+						moveWedge(Wedge.RETRACT),
+						turnDegrees(180)));
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Cheval-De-Frise and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Cheval-De-Frise.
-	 * @return If the robot has finished conquering the Cheval-De-Frise and has made it to the alignment line.
+	 * Builds the command that conquers the Cheval-De-Frise and ends up at the alignment line.
+	 * To work properly, the robot must be correctly aligned with the Cheval-De-Frise (starting with the wedge facing it).
+	 * @return The command.
 	 */
-	public boolean autoConquerChevalDeFrise()
+	public AutoCommand conquerChevalDeFrise()
 	{
-		if (conquerDefenseStep == 1) // Approach the cheval-de-frise (starts with wedge facing cheval-de-frise)
-		{
-			if (autoDriveDistance(-5, AUTO_MOVE_SPEED)) // A negative distance is used because the wedge is in the back, so we're technically driving backwards
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 2) // Deploy the wedge to push one of the cheval-de-frise boards down
-		{
-			if (autoMoveWedge(Wedge.DEPLOY))
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 3) // Drive over the cheval-de-frise
-		{
-			if (autoDriveDistance(-4, AUTO_MOVE_SPEED))
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 4) // Retract the wedge
-		{
-			if (autoMoveWedge(Wedge.RETRACT))
-				conquerDefenseStep++;
-		}
-		else if (conquerDefenseStep == 5) // Turn around so the pickup arm is in the front
-		{
-			if (autoTurnDegrees(180))
-			{
-				conquerDefenseStep++;
-				return true;
-			}
-		}
-		return false;
+		return AutoCommands.sequence(
+				driveDistance(-5, AUTO_MOVE_SPEED), // Approach the cheval-de-frise. A negative distance is used because the wedge is in the back.
+				moveWedge(Wedge.DEPLOY), // Push one of the cheval-de-frise boards down
+				driveDistance(-4, AUTO_MOVE_SPEED), // Drive over the cheval-de-frise
+				AutoCommands.parallel( // Retract the wedge while turning around so the pickup arm is in the front
+						moveWedge(Wedge.RETRACT),
+						turnDegrees(180)));
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Ramparts and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Ramparts.
-	 * @return If the robot has finished conquering the ramparts and has made it to the alignment line.
+	 * Builds the command that gets the robot to the low goal from the alignment line.
+	 * @param startingPosition Where the robot started on the field. Possible values are 1-5 inclusive, 
+	 * with 1 indicating the robot started at the left-most defense, and 5 indicating the robot started at the right-most defense.
+	 * @return The command. For positions that haven't been done yet, it never finishes, so the robot doesn't shoot from the wrong place.
 	 */
-	public boolean autoConquerRamparts()
+	public AutoCommand moveToGoal(int startingPosition)
 	{
-		return autoDriveDistance(16, AUTO_MOVE_SPEED); // Move over the ramparts and get to the alignment line
+		if (startingPosition == 1)
+			return moveToGoalPos1();
+		else if (startingPosition >= 2 && startingPosition <= 5)
+			return AutoCommands.stopHere(); // Positions 2-5 haven't been implemented yet.
+		else
+		{
+			EventLog.log(LOG_INVALID_POSITION, startingPosition);
+			return AutoCommands.stopHere();
+		}
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Moat and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Moat.
-	 * @return If the robot has finished conquering the moat and has made it to the alignment line.
+	 * Builds the command that gets to the low goal 
+	 * from the segment of the alignment line that is aligned with the left-most defense.
+	 * @return The command.
 	 */
-	public boolean autoConquerMoat()
+	public AutoCommand moveToGoalPos1()
 	{
-		return autoDriveDistance(16, AUTO_MOVE_SPEED); // Move over the moat and get to the alignment line
+		return AutoCommands.sequence(
+				turnDegrees(10), // Turn right a bit so we can move away from the wall
+				driveDistance(7, AUTO_MOVE_SPEED), // Move away from the wall
+				turnDegrees(25), // Turn a little more to align with the ramp that leads up to the low goal
+				driveDistance(7, AUTO_MOVE_SPEED)); // Move up to the low goal
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Drawbridge and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Drawbridge.
-	 * @return false. We can't conquer the drawbridge on our own in auto.
+	 * Builds the command that shoots a boulder into the low goal.
+	 * To work properly, the robot must be correctly aligned with the tower.
+	 * @return The command.
 	 */
-	public boolean autoConquerDrawbridge()
+	public AutoCommand shootLowGoal()
 	{
-		return false;
+		return spinPickupWheels(PickupArm.WHEELS_EJECT);
 	}
 	
+	// Commands for each mechanism. Each one calls one of the autoX methods below every loop.
+	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Sally Port and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Sally Port.
-	 * @return false. We can't conquer the sally port on our own in auto.
+	 * Makes a command that drives a given distance at a given speed. Uses the drive base.
+	 * @param distance How far, in feet, the robot should travel. Use positive values to move forward, and negative values to move backward.
+	 * @param absValSpeed How fast the robot will drive as a percentage of its top speed.
+	 * @return The command.
 	 */
-	public boolean autoConquerSallyPort()
+	public AutoCommand driveDistance(double distance, double absValSpeed)
 	{
-		return false;
+		return new DriveDistance(distance, absValSpeed);
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Rock Wall and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Rock Wall.
-	 * @return If the robot has finished conquering the moat and has made it to the alignment line.
+	 * Makes a command that turns a given amount of degrees in place. Uses the drive base.
+	 * @param degrees How many degrees to turn. Use positive values to turn right, and negative values to turn left.
+	 * @return The command.
 	 */
-	public boolean autoConquerRockWall()
+	public AutoCommand turnDegrees(double degrees)
 	{
-		return autoDriveDistance(16, AUTO_MOVE_SPEED); // Move over the rock wall and get to the alignment line
+		return new TurnDegrees(degrees);
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to conquer the Rough Terrain and end up at the alignment line.
-	 * To work properly, the robot must be correctly aligned with the Rough Terrain.
-	 * @return If the robot has finished conquering the rough terrain and has made it to the alignment line.
+	 * Makes a command that moves the arm to a given region. Uses the arm.
+	 * @param region The region to move the arm to. It is recommended to use the constants in the PickupArm class for this value.
+	 * @return The command.
 	 */
-	public boolean autoConquerRoughTerrain()
+	public AutoCommand moveArm(int region)
 	{
-		return autoDriveDistance(16, AUTO_MOVE_SPEED); // Move over the rough terrain and get to the alignment line
+		return new MoveArm(region);
 	}
 	
 	/**
-	 * This method calls the specific "moveToGoal" method for the given starting position.
-	 * @param startingPosition Where the robot started on the field. Possible values are 1-5 inclusive, 
-	 * with 1 indicating the robot started at the left-most defense, and 5 indicating the robot started at the right-most defense.
-	 * @return If the robot has finished moving to the low goal.
+	 * Makes a command that deploys or retracts the wedge. Uses the wedge.
+	 * @param desiredDirection Direction to move the wedge (Wedge.DEPLOY or Wedge.RETRACT).
+	 * @return The command.
 	 */
-	public boolean autoMoveToGoal(int startingPosition)
+	public AutoCommand moveWedge(int desiredDirection)
 	{
-		if (startingPosition == 1)
-			return moveToGoalPos1();
-		else if (startingPosition == 2)
-			return moveToGoalPos2();
-		else if (startingPosition == 3)
-			return moveToGoalPos3();
-		else if (startingPosition == 4)
-			return moveToGoalPos4();
-		else if (startingPosition == 5)
-			return moveToGoalPos5();
-		else
-		{
-			System.out.println("Invalid Starting Position");
-			return false;
-		}
+		return new MoveWedge(desiredDirection);
 	}
 	
 	/**
-	 * This method makes the robot perform a series of steps to get to the low goal 
-	 * from the segment of the alignment line that is aligned with the left-most defense.
-	 * @return If the robot has finished moving to the low goal.
+	 * Makes a command that spins the pickup wheels for the time that goes with the speed. Uses the pickup wheels.
+	 * @param speed How fast the pickup wheels spin (PickupArm.WHEELS_PICKUP or PickupArm.WHEELS_EJECT).
+	 * @return The command.
 	 */
-	public boolean moveToGoalPos1()
+	public AutoCommand spinPickupWheels(double speed)
 	{
-		if (moveToGoalStep == 1) // Turn right a bit so we can move away from the wall
+		return new SpinPickupWheels(speed);
+	}
+	
+	private class DriveDistance implements AutoCommand
+	{
+		private final double distance;
+		private final double speed;
+		
+		DriveDistance(double distance, double speed)
 		{
-			if (autoTurnDegrees(10))
-				moveToGoalStep++;
+			this.distance = distance;
+			this.speed = speed;
 		}
-		else if (moveToGoalStep == 2) // Move away from the wall
+		
+		public void start()
 		{
-			if (autoDriveDistance(7, AUTO_MOVE_SPEED))
-				moveToGoalStep++;
 		}
-		else if (moveToGoalStep == 3) // Turn a little more to align with the ramp that leads up to the low goal
+		
+		public boolean update()
 		{
-			if (autoTurnDegrees(25))
-				moveToGoalStep++;
+			return autoDriveDistance(distance, speed);
 		}
-		else if (moveToGoalStep == 4) // Move up to the low goal
+		
+		public void end(boolean interrupted)
 		{
-			if (autoDriveDistance(7, AUTO_MOVE_SPEED))
+			if (interrupted)
 			{
-				moveToGoalStep++;
-				return true;
+				driveControl.stop();
+				driveControl.resetEncodersAndGyro(); // So the next drive or turn starts from 0, like it does when this finishes.
 			}
 		}
-		return false;
-	}
-	
-	/**
-	 * This method makes the robot perform a series of steps to get to the low goal 
-	 * from the segment of the alignment line that is aligned with the defense that is 2nd from the left.
-	 * @return false. This method hasn't been implemented yet.
-	 */
-	public boolean moveToGoalPos2()
-	{
-		return false;
 	}
 	
-	/**
-	 * This method makes the robot perform a series of steps to get to the low goal 
-	 * from the segment of the alignment line that is aligned with the defense that is 3rd from the left.
-	 * @return false. This method hasn't been implemented yet.
-	 */
-	public boolean moveToGoalPos3()
+	private class TurnDegrees implements AutoCommand
 	{
-		return false;
+		private final double degrees;
+		/** The wait used to let the robot stop moving after the turn. Each command has its own, so two turns never share one. */
+		private final WaitStep settleWait = new WaitStep();
+		
+		TurnDegrees(double degrees)
+		{
+			this.degrees = degrees;
+		}
+		
+		public void start()
+		{
+			settleWait.cancel();
+		}
+		
+		public boolean update()
+		{
+			return autoTurnDegrees(degrees, settleWait);
+		}
+		
+		public void end(boolean interrupted)
+		{
+			if (interrupted)
+			{
+				settleWait.cancel();
+				driveControl.stop();
+				driveControl.resetEncodersAndGyro();
+			}
+		}
 	}
 	
-	/**
-	 * This method makes the robot perform a series of steps to get to the low goal 
-	 * from the segment of the alignment line that is aligned with the defense that is 4th from the left.
-	 * @return false. This method hasn't been implemented yet.
-	 */
-	public boolean moveToGoalPos4()
+	private class MoveArm implements AutoCommand
 	{
-		return false;
+		private final int region;
+		
+		MoveArm(int region)
+		{
+			this.region = region;
+		}
+		
+		public void start()
+		{
+		}
+		
+		public boolean update()
+		{
+			return autoMoveArm(region);
+		}
+		
+		public void end(boolean interrupted)
+		{
+			if (interrupted)
+				arm.stopArm();
+		}
 	}
 	
-	/**
-	 * This method makes the robot perform a series of steps to get to the low goal 
-	 * from the segment of the alignment line that is aligned with the defense that is 5th from the left.
-	 * @return false. This method hasn't been implemented yet.
-	 */
-	public boolean moveToGoalPos5()
+	private class MoveWedge implements AutoCommand
 	{
-		return false;
+		private final int direction;
+		
+		MoveWedge(int direction)
+		{
+			this.direction = direction;
+		}
+		
+		public void start()
+		{
+		}
+		
+		public boolean update()
+		{
+			return autoMoveWedge(direction);
+		}
+		
+		public void end(boolean interrupted)
+		{
+			if (interrupted)
+				wedge.stop();
+		}
 	}
 	
-	/**
-	 * This method makes the robot perform a series of steps to shoot a boulder into the low goal.
-	 * To work properly, the robot must be correctly aligned with the tower.
-	 * @return If the robot has finished shooting a boulder into the low goal.
-	 */
-	public boolean autoShootLowGoal()
+	private class SpinPickupWheels implements AutoCommand
 	{
-		return autoSpinPickupWheels(PickupArm.WHEELS_EJECT);
+		private final double speed;
+		/** Times how long the wheels have spun. Each command has its own, so two spins never share one. */
+		private final Timer spinTimer = new Timer();
+		
+		SpinPickupWheels(double speed)
+		{
+			this.speed = speed;
+		}
+		
+		public void start()
+		{
+			spinTimer.stop();
+			spinTimer.reset();
+		}
+		
+		public boolean update()
+		{
+			return autoSpinPickupWheels(speed, spinTimer);
+		}
+		
+		public void end(boolean interrupted)
+		{
+			if (interrupted)
+			{
+				arm.stopPickupWheels();
+				spinTimer.stop();
+				spinTimer.reset();
+			}
+		}
 	}
 	
 	/**
@@ -434,11 +492,12 @@ public class AutoMethods
 	/**
 	 * This method, when called periodically, makes the robot turn a given amount of degrees in place.
 	 * @param degrees How many degrees to turn. Use positive values to turn right, and negative values to turn left.
+	 * @param settleWait The wait used to let the robot stop moving after the turn, before the gyro is reset. Use the same one every call for a turn.
 	 * return If the robot has finished turning the given amount of degrees.
 	 */
-	public boolean autoTurnDegrees(double degrees)
+	public boolean autoTurnDegrees(double degrees, WaitStep settleWait)
 	{
-		if (!driveControl.hasTurnedDegrees(degrees))
+		if (!settleWait.isRunning() && !driveControl.hasTurnedDegrees(degrees))
 		{
 			if (degrees > 0)
 				driveControl.arcadeDriveCustomValues(0, AUTO_ROTATE_SPEED);
@@ -449,7 +508,8 @@ public class AutoMethods
 		else
 		{
 			driveControl.stop();
-			waitTimer.delay(0.5);
+			if (!settleWait.waitFor(TURN_SETTLE_TIME)) // Let the robot stop moving, so the gyro is reset at rest.
+				return false;
 			driveControl.resetEncodersAndGyro();
 			return true;
 		}
@@ -494,28 +554,30 @@ public class AutoMethods
 	 * @param speed How fast the pickup-wheels spin.
 	 * A positive value will spin them forwards (to pick up the ball).
 	 * A negative value will spin them backwards (to eject the ball).
+	 * @param spinTimer Times how long the wheels have spun. Use the same one every call for a spin.
+	 * @return If the wheels have finished spinning.
 	 */
-	public boolean autoSpinPickupWheels(double speed)
+	public boolean autoSpinPickupWheels(double speed, Timer spinTimer)
 	{
-		if (pickupWheelsSpinTimer.get() == 0)
-			pickupWheelsSpinTimer.start();
+		if (spinTimer.get() == 0)
+			spinTimer.start();
 		
 		arm.spinPickupWheels(speed);
 		
-		if (speed == PickupArm.WHEELS_EJECT && pickupWheelsSpinTimer.get() >= EJECT_TIME   ||
-			speed == PickupArm.WHEELS_PICKUP && pickupWheelsSpinTimer.get() >= PICKUP_TIME ||
+		if (speed == PickupArm.WHEELS_EJECT && spinTimer.get() >= EJECT_TIME   ||
+			speed == PickupArm.WHEELS_PICKUP && spinTimer.get() >= PICKUP_TIME ||
 			speed == PickupArm.WHEELS_STATIONARY)
 		{
 			arm.stopPickupWheels();
-			pickupWheelsSpinTimer.stop();
-			pickupWheelsSpinTimer.reset();
+			spinTimer.stop();
+			spinTimer.reset();
 			return true;
 		}
-		else if (speed != PickupArm.WHEELS_EJECT  || 
-				 speed != PickupArm.WHEELS_PICKUP || 
+		else if (speed != PickupArm.WHEELS_EJECT  && 
+				 speed != PickupArm.WHEELS_PICKUP && 
 				 speed != PickupArm.WHEELS_STATIONARY)
 		{
-			System.out.println("Invalid autoSpinPickupWheels speed. Please use PickupArm.WHEELS_EJECT, PickupArm.WHEELS_PICKUP, or PickupArm.WHEELS_STATIONARY");
+			EventLog.log(LOG_INVALID_WHEEL_SPEED, speed);
 		}
 		return false;
 	}
@@ -536,16 +598,6 @@ public class AutoMethods
 		return (wedge.getDirection() == Wedge.STATIONARY);
 	}
 	
-	/**
-	 * Resets all steps to 1.
-	 */
-	public void resetStepCounts()
-	{
-		mainStep = 1;
-		conquerDefenseStep = 1;
-		moveToGoalStep = 1;
-	}
-	
 	/**
 	 * Adds all of the possible position options to a given sendable chooser.
 	 * @param positionChooser Should only be the positionChooser.
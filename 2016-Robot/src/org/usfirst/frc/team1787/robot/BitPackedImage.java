@@ -0,0 +1,295 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.util.Arrays;
+
+/**
+ * This class stores a binary image using one bit per pixel, packed 64 pixels to a long.
+ * A 320x240 image is only 1200 longs (9.6 KB), instead of 76,800 bytes as an IMAGE_U8.
+ *
+ * Each row starts on a new long. Pixel x of a row is bit (x % 64) of long (x / 64) in that row,
+ * so the leftmost pixel of each long is its lowest bit. Bits past the right edge of the image are always 0.
+ *
+ * Since a whole long is 64 pixels, a lot of operations can work on 64 pixels at once:
+ * counting the pixels that are on is just Long.bitCount, and erosion and dilation are a few shifts, ANDs, and ORs per long.
+ */
+public class BitPackedImage
+{
+	/** The number of pixels stored in each long. */
+	public static final int PIXELS_PER_WORD = 64;
+
+	/** The width of the image. */
+	private final int width;
+	/** The height of the image. */
+	private final int height;
+	/** The number of longs used for each row. */
+	private final int wordsPerRow;
+	/** The bits that are allowed to be set in the last long of each row (the ones that are inside the image). */
+	private final long lastWordMask;
+
+	/** The pixels of the image. */
+	private final long[] words;
+	/** Used to hold the result of the horizontal step of erosion and dilation. */
+	private final long[] scratch;
+
+	/**
+	 * Constructor for the BitPackedImage class. Every pixel starts off.
+	 * @param imageWidth The width of the image.
+	 * @param imageHeight The height of the image.
+	 */
+	public BitPackedImage(int imageWidth, int imageHeight)
+	{
+		width = imageWidth;
+		height = imageHeight;
+		wordsPerRow = (width + PIXELS_PER_WORD - 1) / PIXELS_PER_WORD;
+		int bitsInLastWord = width - (wordsPerRow - 1) * PIXELS_PER_WORD;
+		lastWordMask = (bitsInLastWord == PIXELS_PER_WORD) ? -1L : (1L << bitsInLastWord) - 1;
+		words = new long[wordsPerRow * height];
+		scratch = new long[words.length];
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getWordsPerRow()
+	{
+		return wordsPerRow;
+	}
+
+	/**
+	 * Gets the array that holds the pixels. Used by code that works on whole longs at a time, like the threshold.
+	 * @return The longs that make up the image, row by row.
+	 */
+	public long[] getWords()
+	{
+		return words;
+	}
+
+	/**
+	 * Turns every pixel off.
+	 */
+	public void clear()
+	{
+		Arrays.fill(words, 0);
+	}
+
+	/**
+	 * Tells if a pixel is on.
+	 * @param x The X coordinate of the pixel.
+	 * @param y The Y coordinate of the pixel.
+	 * @return If the pixel is on.
+	 */
+	public boolean get(int x, int y)
+	{
+		return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Turns a pixel on.
+	 * @param x The X coordinate of the pixel.
+	 * @param y The Y coordinate of the pixel.
+	 */
+	public void set(int x, int y)
+	{
+		words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+	}
+
+	/**
+	 * Turns on every pixel in part of a row.
+	 * @param y The row.
+	 * @param start The X coordinate of the first pixel to turn on.
+	 * @param end The X coordinate just past the last pixel to turn on.
+	 */
+	public void setRange(int y, int start, int end)
+	{
+		int rowStart = y * wordsPerRow;
+		for (int w = start >>> 6; w < wordsPerRow && w * PIXELS_PER_WORD < end; w++)
+			words[rowStart + w] |= rangeMask(w, start, end);
+	}
+
+	/**
+	 * Turns off every pixel in part of a row.
+	 * @param y The row.
+	 * @param start The X coordinate of the first pixel to turn off.
+	 * @param end The X coordinate just past the last pixel to turn off.
+	 */
+	public void clearRange(int y, int start, int end)
+	{
+		int rowStart = y * wordsPerRow;
+		for (int w = start >>> 6; w < wordsPerRow && w * PIXELS_PER_WORD < end; w++)
+			words[rowStart + w] &= ~rangeMask(w, start, end);
+	}
+
+	/**
+	 * Gets the bits of one long in a row that are between start (inclusive) and end (exclusive).
+	 */
+	private static long rangeMask(int w, int start, int end)
+	{
+		int wordStart = w * PIXELS_PER_WORD;
+		long mask = -1L;
+		if (start > wordStart)
+			mask &= -1L << (start - wordStart);
+		if (end < wordStart + PIXELS_PER_WORD)
+			mask &= (1L << (end - wordStart)) - 1;
+		return mask;
+	}
+
+	/**
+	 * Counts the pixels that are on.
+	 * @return The number of pixels that are on.
+	 */
+	public int countPixels()
+	{
+		int count = 0;
+		for (long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * Counts the pixels that are on in one row.
+	 * @param y The row to count.
+	 * @return The number of pixels that are on in the row.
+	 */
+	public int countPixelsInRow(int y)
+	{
+		int count = 0;
+		for (int i = y * wordsPerRow; i < (y + 1) * wordsPerRow; i++)
+			count += Long.bitCount(words[i]);
+		return count;
+	}
+
+	/**
+	 * Finds every run (group of pixels that are on, next to each other) in a row.
+	 * Whole longs of pixels that are off are skipped at once, so empty parts of a row cost almost nothing.
+	 * @param y The row to look in.
+	 * @param runStarts Where the X coordinate of the first pixel in each run is put.
+	 * @param runEnds Where the X coordinate just past the last pixel in each run is put.
+	 * @param firstIndex The index in runStarts and runEnds to put the first run at.
+	 * @return The index just past the last run that was put in the arrays. (The same as firstIndex if the row is empty.)
+	 * The arrays must have room for (width + 1) / 2 runs after firstIndex.
+	 */
+	public int getRowRuns(int y, int[] runStarts, int[] runEnds, int firstIndex)
+	{
+		int numOfRuns = firstIndex;
+		int rowStart = y * wordsPerRow;
+		boolean inRun = false;
+		for (int w = 0; w < wordsPerRow; w++)
+		{
+			long word = words[rowStart + w];
+			int wordStart = w * PIXELS_PER_WORD;
+			// If in a run, look for the next pixel that's off (where the run ends). Otherwise look for the next pixel that's on.
+			long searchBits = inRun ? ~word : word;
+			while (searchBits != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(searchBits);
+				if (inRun)
+					runEnds[numOfRuns++] = wordStart + bit;
+				else
+					runStarts[numOfRuns] = wordStart + bit;
+				inRun = !inRun;
+				searchBits = (inRun ? ~word : word) & (-1L << bit); // Only look past the pixel that was just found.
+			}
+		}
+		if (inRun)
+			runEnds[numOfRuns++] = width;
+		return numOfRuns;
+	}
+
+	/**
+	 * Removes one layer of pixels from the outside of every particle. A pixel stays on only if it and all 8 pixels around it are on.
+	 * Pixels outside the image count as off.
+	 */
+	public void erode()
+	{
+		for (int y = 0; y < height; y++)
+		{
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				long word = words[rowStart + w];
+				long before = (w > 0) ? words[rowStart + w - 1] : 0;
+				long after = (w < wordsPerRow - 1) ? words[rowStart + w + 1] : 0;
+				long leftNeighbors = (word << 1) | (before >>> 63);
+				long rightNeighbors = (word >>> 1) | (after << 63);
+				scratch[rowStart + w] = word & leftNeighbors & rightNeighbors;
+			}
+		}
+		for (int y = 0; y < height; y++)
+		{
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				long above = (y > 0) ? scratch[rowStart - wordsPerRow + w] : 0;
+				long below = (y < height - 1) ? scratch[rowStart + wordsPerRow + w] : 0;
+				words[rowStart + w] = scratch[rowStart + w] & above & below;
+			}
+		}
+	}
+
+	/**
+	 * Adds one layer of pixels to the outside of every particle. A pixel is turned on if it or any of the 8 pixels around it are on.
+	 */
+	public void dilate()
+	{
+		for (int y = 0; y < height; y++)
+		{
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				long word = words[rowStart + w];
+				long before = (w > 0) ? words[rowStart + w - 1] : 0;
+				long after = (w < wordsPerRow - 1) ? words[rowStart + w + 1] : 0;
+				long leftNeighbors = (word << 1) | (before >>> 63);
+				long rightNeighbors = (word >>> 1) | (after << 63);
+				scratch[rowStart + w] = word | leftNeighbors | rightNeighbors;
+			}
+			scratch[rowStart + wordsPerRow - 1] &= lastWordMask; // Don't grow past the right edge of the image.
+		}
+		for (int y = 0; y < height; y++)
+		{
+			int rowStart = y * wordsPerRow;
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				long above = (y > 0) ? scratch[rowStart - wordsPerRow + w] : 0;
+				long below = (y < height - 1) ? scratch[rowStart + wordsPerRow + w] : 0;
+				words[rowStart + w] = scratch[rowStart + w] | above | below;
+			}
+		}
+	}
+
+	/**
+	 * Erodes, then dilates (a morphological "opening"). This removes specks and thin lines that are less than 3 pixels across,
+	 * and leaves bigger particles about the same as they were.
+	 */
+	public void open()
+	{
+		erode();
+		dilate();
+	}
+
+	/**
+	 * Copies part of the image into a byte per pixel image, like the one NIVision uses.
+	 * @param binaryPixels The byte per pixel image, the same size as this one.
+	 * @param left The leftmost X coordinate of the part to copy.
+	 * @param top The topmost Y coordinate of the part to copy.
+	 * @param windowWidth The width of the part to copy.
+	 * @param windowHeight The height of the part to copy.
+	 */
+	public void copyTo(byte[] binaryPixels, int left, int top, int windowWidth, int windowHeight)
+	{
+		for (int y = top; y < top + windowHeight; y++)
+		{
+			int rowStart = y * wordsPerRow;
+			int pixelIndex = y * width + left;
+			for (int x = left; x < left + windowWidth; x++, pixelIndex++)
+				binaryPixels[pixelIndex] = ((words[rowStart + (x >>> 6)] & (1L << x)) != 0) ? HSVThresholdTable.PIXEL_ON : HSVThresholdTable.PIXEL_OFF;
+		}
+	}
+}
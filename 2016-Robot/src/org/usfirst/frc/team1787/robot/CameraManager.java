@@ -0,0 +1,140 @@
+package org.usfirst.frc.team1787.robot;
+
+import com.ni.vision.NIVision;
+import com.ni.vision.NIVision.Image;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.vision.USBCamera;
+
+/**
+ * This class keeps both cameras streaming all the time, so switching between them doesn't have to wait for a camera to start up.
+ *
+ * Stopping one camera and starting the other (which is what VisionMethods used to do) means opening the new stream
+ * and waiting for the camera to send its first frame, which stalls the feed for a noticeable amount of time.
+ * Here both cameras are started once, when the manager is made. Each camera has its own Image, and switching just swaps
+ * which camera and Image are "active". The next frame is grabbed from the other camera, which is already streaming,
+ * so it's ready within one frame.
+ *
+ * Only the active camera's frames are decoded. The inactive camera keeps streaming, but its frames are just dropped by the driver.
+ * Some cameras stop streaming if nobody reads from them for a while, so a keep-alive can be turned on,
+ * which grabs (and decodes) a frame from the inactive camera every so often.
+ *
+ * How long the first frame after each switch took is put on the SmartDashboard, so it can be checked that switching takes less than a frame.
+ */
+public class CameraManager
+{
+	/** The camera whose frames are being used. */
+	private USBCamera activeCam;
+	/** The camera that is streaming, but not being used. */
+	private USBCamera inactiveCam;
+	/** The Image that frames from the active camera are decoded into. */
+	private Image activeImage;
+	/** The Image that frames from the inactive camera are decoded into (only used by the keep-alive). */
+	private Image inactiveImage;
+	/** A boolean indicating if the front camera is the active one. */
+	private boolean frontCamActive = true;
+
+	/** The number of active camera frames between each keep-alive grab from the inactive camera. 0 means the keep-alive is off. */
+	private int keepAliveInterval = 0;
+	/** The number of active camera frames grabbed since the last keep-alive grab. */
+	private int framesSinceKeepAlive = 0;
+
+	/** The FPGA time, in seconds, when the cameras were last switched. */
+	private double switchTime = 0;
+	/** A boolean indicating if a frame has been grabbed since the last switch. */
+	private boolean frameGrabbedSinceSwitch = true;
+	/** How long it took to get the first frame after the last switch, in seconds. */
+	private double lastSwitchTime = 0;
+	/** Sends the switch time to the SmartDashboard. */
+	private final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+
+	/**
+	 * Constructor for the CameraManager class. Starts both cameras. The front camera starts out active.
+	 * Any settings for the cameras should be set (with updateSettings()) before this.
+	 * @param camFront The camera mounted on the front of the pickup arm.
+	 * @param camSide The camera mounted on the side of the robot, or on the 2 axis servo base.
+	 */
+	public CameraManager(USBCamera camFront, USBCamera camSide)
+	{
+		activeCam = camFront;
+		inactiveCam = camSide;
+		activeImage = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_RGB, 0);
+		inactiveImage = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_RGB, 0);
+
+		camFront.startCapture();
+		camSide.startCapture();
+	}
+
+	/**
+	 * Gets the next frame from the active camera. Waits for the camera to have a new frame.
+	 * If the keep-alive is on and it's time, a frame is also grabbed from the inactive camera first.
+	 * @return The Image holding the frame. Only valid until the next call to grabImage().
+	 */
+	public Image grabImage()
+	{
+		if (keepAliveInterval > 0 && ++framesSinceKeepAlive >= keepAliveInterval)
+		{
+			inactiveCam.getImage(inactiveImage);
+			framesSinceKeepAlive = 0;
+		}
+
+		activeCam.getImage(activeImage);
+
+		if (!frameGrabbedSinceSwitch)
+		{
+			lastSwitchTime = Timer.getFPGATimestamp() - switchTime;
+			frameGrabbedSinceSwitch = true;
+			dashboard.putNumber("Camera Switch Time (ms)", lastSwitchTime * 1000);
+		}
+		return activeImage;
+	}
+
+	/**
+	 * Switches which camera is active. Both cameras keep streaming, so this doesn't wait for anything.
+	 */
+	public void switchCamera()
+	{
+		USBCamera tempCam = activeCam;
+		activeCam = inactiveCam;
+		inactiveCam = tempCam;
+
+		Image tempImage = activeImage;
+		activeImage = inactiveImage;
+		inactiveImage = tempImage;
+
+		frontCamActive = !frontCamActive;
+		framesSinceKeepAlive = 0;
+		switchTime = Timer.getFPGATimestamp();
+		frameGrabbedSinceSwitch = false;
+	}
+
+	/**
+	 * Tells which camera is active.
+	 * @return True if the front camera is active, false if the side camera is.
+	 */
+	public boolean isFrontCamActive()
+	{
+		return frontCamActive;
+	}
+
+	/**
+	 * Sets how often a frame is grabbed from the inactive camera to keep it streaming.
+	 * Each keep-alive grab decodes a frame and waits for the inactive camera, so it can add up to one frame of time to that loop.
+	 * @param framesBetween The number of active camera frames between each keep-alive grab, or 0 to turn the keep-alive off.
+	 */
+	public void setKeepAliveInterval(int framesBetween)
+	{
+		keepAliveInterval = Math.max(0, framesBetween);
+		framesSinceKeepAlive = 0;
+	}
+
+	/**
+	 * Gets how long it took to get the first frame from the new camera after the last switch.
+	 * This should be less than one frame (33 ms at 30 fps).
+	 * @return The time, in seconds. 0 if the cameras haven't been switched yet.
+	 */
+	public double getLastSwitchTime()
+	{
+		return lastSwitchTime;
+	}
+}
@@ -0,0 +1,139 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class turns pixel coordinates into angles, using a pinhole camera model with radial lens distortion.
+ *
+ * A pinhole camera is described by its focal length (fx, fy, in pixels) and principal point (cx, cy, the pixel the lens is centered on).
+ * A point that is at an angle a to the right of the camera's optical axis shows up at x = cx + fx * tan(a),
+ * so the angle of pixel x is atan((x - cx) / fx). This is different from a fixed number of degrees per pixel,
+ * which is only right near the center of the image and gets worse towards the edges.
+ *
+ * Real lenses also bend straight lines a little (radial distortion). A point that should be at a distance r from the principal point
+ * (in units of the focal length) shows up at r * (1 + k1 * r^2 + k2 * r^4) instead. The model undoes this before taking the atan.
+ *
+ * Since the angle calculation uses atan and an iterative undistortion, it's done ahead of time for every column and every row,
+ * so getting an angle is just looking it up in an array. The column table is worked out along the principal row, and the row table
+ * along the principal column. With distortion, that's only exact on those lines, but that's where the servos keep the goal.
+ *
+ * The focal length, principal point, and distortion can be found by taking pictures of a checkerboard with the camera
+ * and running them through a camera calibration tool (like OpenCV's calibrateCamera), at the resolution used for vision.
+ */
+public class CameraModel
+{
+	/** The number of iterations used to undo the lens distortion. This is plenty for the small distortion of a webcam lens. */
+	private static final int UNDISTORT_ITERATIONS = 10;
+
+	/** The horizontal focal length, in pixels. */
+	private final double focalLengthX;
+	/** The vertical focal length, in pixels. */
+	private final double focalLengthY;
+	/** The X coordinate of the principal point (where the optical axis hits the image). */
+	private final double principalPointX;
+	/** The Y coordinate of the principal point (where the optical axis hits the image). */
+	private final double principalPointY;
+	/** The r^2 radial distortion coefficient. */
+	private final double k1;
+	/** The r^4 radial distortion coefficient. */
+	private final double k2;
+
+	/** The horizontal angle of the center of each column, in degrees. Positive is to the right of the optical axis. */
+	private final double[] columnAngles;
+	/** The vertical angle of the center of each row, in degrees. Positive is below the optical axis. */
+	private final double[] rowAngles;
+
+	/**
+	 * Constructor for the CameraModel class. Builds the lookup tables.
+	 * @param imageWidth The width of the images, in pixels.
+	 * @param imageHeight The height of the images, in pixels.
+	 * @param fx The horizontal focal length, in pixels.
+	 * @param fy The vertical focal length, in pixels.
+	 * @param cx The X coordinate of the principal point.
+	 * @param cy The Y coordinate of the principal point.
+	 * @param distortionK1 The r^2 radial distortion coefficient (0 for no distortion).
+	 * @param distortionK2 The r^4 radial distortion coefficient (0 for no distortion).
+	 */
+	public CameraModel(int imageWidth, int imageHeight, double fx, double fy, double cx, double cy, double distortionK1, double distortionK2)
+	{
+		focalLengthX = fx;
+		focalLengthY = fy;
+		principalPointX = cx;
+		principalPointY = cy;
+		k1 = distortionK1;
+		k2 = distortionK2;
+
+		columnAngles = new double[imageWidth];
+		for (int x = 0; x < imageWidth; x++)
+			columnAngles[x] = Math.toDegrees(Math.atan(undistort((x - principalPointX) / focalLengthX)));
+
+		rowAngles = new double[imageHeight];
+		for (int y = 0; y < imageHeight; y++)
+			rowAngles[y] = Math.toDegrees(Math.atan(undistort((y - principalPointY) / focalLengthY)));
+	}
+
+	/**
+	 * Undoes the radial distortion of a point on one of the principal lines.
+	 * Solves distorted = r * (1 + k1 * r^2 + k2 * r^4) for r, by repeatedly dividing by the distortion factor at the current guess.
+	 * @param distorted The point's distance from the principal point as it appears in the image, in units of the focal length.
+	 * @return Where the point would be without distortion, in units of the focal length.
+	 */
+	private double undistort(double distorted)
+	{
+		double r = distorted;
+		for (int i = 0; i < UNDISTORT_ITERATIONS; i++)
+		{
+			double r2 = r * r;
+			r = distorted / (1 + k1 * r2 + k2 * r2 * r2);
+		}
+		return r;
+	}
+
+	/**
+	 * Gets the horizontal angle between the optical axis and a column of the image.
+	 * @param x The column. Columns outside the image are treated like the nearest edge column.
+	 * @return The angle, in degrees. Positive is to the right.
+	 */
+	public double getAngleX(int x)
+	{
+		return columnAngles[clamp(x, columnAngles.length)];
+	}
+
+	/**
+	 * Gets the vertical angle between the optical axis and a row of the image.
+	 * @param y The row. Rows outside the image are treated like the nearest edge row.
+	 * @return The angle, in degrees. Positive is down.
+	 */
+	public double getAngleY(int y)
+	{
+		return rowAngles[clamp(y, rowAngles.length)];
+	}
+
+	/**
+	 * Gets the horizontal field of view, from the left edge of the first column to the right edge of the last.
+	 * @return The field of view, in degrees.
+	 */
+	public double getHorizontalFieldOfView()
+	{
+		return Math.toDegrees(Math.atan(undistort((columnAngles.length - 0.5 - principalPointX) / focalLengthX))
+				- Math.atan(undistort((-0.5 - principalPointX) / focalLengthX)));
+	}
+
+	/**
+	 * Gets the vertical field of view, from the top edge of the first row to the bottom edge of the last.
+	 * @return The field of view, in degrees.
+	 */
+	public double getVerticalFieldOfView()
+	{
+		return Math.toDegrees(Math.atan(undistort((rowAngles.length - 0.5 - principalPointY) / focalLengthY))
+				- Math.atan(undistort((-0.5 - principalPointY) / focalLengthY)));
+	}
+
+	private static int clamp(int index, int length)
+	{
+		if (index < 0)
+			return 0;
+		else if (index >= length)
+			return length - 1;
+		else
+			return index;
+	}
+}
@@ -0,0 +1,198 @@
+package org.usfirst.frc.team1787.robot;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.vision.USBCamera;
+
+/**
+ * This class changes a camera's exposure, white balance, and brightness on its own thread,
+ * and keeps track of when the new settings have actually taken effect.
+ *
+ * USBCamera.updateSettings() restarts the camera, and after that the camera's auto exposure takes a while to settle.
+ * We used to just wait 2 seconds in teleopPeriodic, which froze driving too. Now the main loop (or the vision thread)
+ * only asks for new settings, and can check getState() to see how it's going:
+ * 1) STATE_APPLYING: the settings thread is sending the settings to the camera.
+ * 2) STATE_SETTLING: the settings have been sent. The vision thread reports the average brightness of each new frame,
+ * and once it stops changing for a few frames in a row, the camera is done adjusting.
+ * 3) STATE_SETTLED: the new settings have taken effect. If no frames are reported (like when the camera isn't the active one),
+ * this happens after MAX_SETTLE_TIME instead.
+ */
+public class CameraSettingsApplier implements Runnable
+{
+	/** The state when the last settings that were asked for have taken effect. */
+	public static final int STATE_SETTLED = 0;
+	/** The state when the settings are being sent to the camera. */
+	public static final int STATE_APPLYING = 1;
+	/** The state when the settings have been sent, and the camera is adjusting to them. */
+	public static final int STATE_SETTLING = 2;
+
+	/** The largest change in average brightness (out of 255) between frames for the camera to be considered done adjusting. */
+	private static final double BRIGHTNESS_TOLERANCE = 2.0;
+	/** The number of frames in a row the brightness has to stay within the tolerance. */
+	private static final int FRAMES_TO_SETTLE = 3;
+	/** The longest time, in seconds, to wait for the brightness to settle. This is how long we used to wait every time. */
+	private static final double MAX_SETTLE_TIME = 2.0;
+
+	/** The camera whose settings are changed. */
+	private final USBCamera camera;
+	/** The thread that sends the settings to the camera. */
+	private Thread settingsThread;
+
+	/** The current state. One of the STATE_ constants. */
+	private int state = STATE_SETTLED;
+	/** A boolean indicating if new settings have been asked for, but the settings thread hasn't started on them yet. */
+	private boolean requestPending = false;
+	/** A boolean indicating if the settings that were asked for are the vision processing settings (true) or the regular settings (false). */
+	private boolean requestedVisionSettings = false;
+
+	/** The FPGA time, in seconds, when the settings finished being sent to the camera. */
+	private double settleStartTime = 0;
+	/** The average brightness of the last frame reported while settling. NaN if no frames have been reported yet. */
+	private double lastBrightness = Double.NaN;
+	/** The number of frames in a row that the brightness has stayed within the tolerance. */
+	private int stableFrames = 0;
+
+	/**
+	 * Constructor for the CameraSettingsApplier class. The settings thread isn't started until start() is called.
+	 * @param cam The camera whose settings will be changed.
+	 */
+	public CameraSettingsApplier(USBCamera cam)
+	{
+		camera = cam;
+	}
+
+	/**
+	 * Starts the settings thread.
+	 */
+	public void start()
+	{
+		settingsThread = new Thread(this, "Camera Settings");
+		settingsThread.setDaemon(true);
+		settingsThread.start();
+	}
+
+	/**
+	 * Asks for the camera's settings to be changed. Returns right away. If settings were already asked for
+	 * and haven't been started on yet, they're replaced by these.
+	 * @param visionSettings True for the settings used for vision processing (dark, with fixed white balance),
+	 * false for the regular settings used for driving (automatic exposure and white balance).
+	 */
+	public synchronized void requestSettings(boolean visionSettings)
+	{
+		requestedVisionSettings = visionSettings;
+		requestPending = true;
+		state = STATE_APPLYING;
+		notifyAll();
+	}
+
+	/**
+	 * The settings thread's main loop. Waits for settings to be asked for, then sends them to the camera.
+	 */
+	public void run()
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			boolean visionSettings;
+			synchronized (this)
+			{
+				while (!requestPending)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+				requestPending = false;
+				visionSettings = requestedVisionSettings;
+			}
+
+			applySettings(camera, visionSettings); // This is the slow part, so it's done without holding the lock.
+
+			synchronized (this)
+			{
+				if (!requestPending) // If more settings were asked for in the meantime, stay in STATE_APPLYING.
+				{
+					state = STATE_SETTLING;
+					settleStartTime = Timer.getFPGATimestamp();
+					lastBrightness = Double.NaN;
+					stableFrames = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends either the vision processing settings or the regular settings to a camera. Waits for the camera to restart.
+	 * @param cam The camera.
+	 * @param visionSettings True for the vision processing settings, false for the regular settings.
+	 */
+	public static void applySettings(USBCamera cam, boolean visionSettings)
+	{
+		if (visionSettings)
+		{
+			cam.setExposureManual(0);
+			cam.setWhiteBalanceManual(USBCamera.WhiteBalance.kFixedIndoor);
+			cam.setBrightness(100);
+		}
+		else
+		{
+			cam.setExposureAuto();
+			cam.setWhiteBalanceAuto();
+			cam.setBrightness(50);
+		}
+		cam.updateSettings();
+	}
+
+	/**
+	 * Tells if frames from the camera should be reported with reportFrameBrightness().
+	 * @return True if the camera is adjusting to new settings.
+	 */
+	public synchronized boolean isWaitingForFrames()
+	{
+		return getState() == STATE_SETTLING;
+	}
+
+	/**
+	 * Reports the average brightness of a new frame from the camera. Used to tell when the camera is done adjusting.
+	 * Frames captured before the settings were sent are ignored.
+	 * @param brightness The average brightness of the frame, from 0 to 255.
+	 * @param captureTime The FPGA time, in seconds, when the frame was captured.
+	 */
+	public synchronized void reportFrameBrightness(double brightness, double captureTime)
+	{
+		if (state != STATE_SETTLING || captureTime < settleStartTime)
+			return;
+
+		if (Math.abs(brightness - lastBrightness) <= BRIGHTNESS_TOLERANCE)
+			stableFrames++;
+		else
+			stableFrames = 0;
+		lastBrightness = brightness;
+
+		if (stableFrames >= FRAMES_TO_SETTLE)
+			state = STATE_SETTLED;
+	}
+
+	/**
+	 * Gets the current state. Safe to call from any thread, and never waits on the camera.
+	 * @return STATE_SETTLED, STATE_APPLYING, or STATE_SETTLING.
+	 */
+	public synchronized int getState()
+	{
+		if (state == STATE_SETTLING && Timer.getFPGATimestamp() - settleStartTime > MAX_SETTLE_TIME)
+			state = STATE_SETTLED;
+		return state;
+	}
+
+	/**
+	 * Tells if the last settings that were asked for have taken effect.
+	 * @return True if the camera is done adjusting.
+	 */
+	public boolean isSettled()
+	{
+		return getState() == STATE_SETTLED;
+	}
+}
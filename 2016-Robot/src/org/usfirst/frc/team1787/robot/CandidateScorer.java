@@ -0,0 +1,180 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class scores every particle in a frame on how much it looks like a goal, and picks the best one.
+ *
+ * Only checking the largest particle means a big reflection (off the driver station glass, a bumper, another robot, etc.)
+ * hides a real goal, and the whole frame is lost. Instead, every particle gets the area test score and the aspect ratio test score
+ * that VisionMethods uses. Like the old teleop code, only the aspect ratio test decides if a particle can be a goal:
+ * a particle that fails it is thrown out. The rest are ranked by a weighted combination of how close each score is to a perfect 1.0,
+ * and the highest one is the candidate. A particle outside the area test's limits isn't thrown out, it just gets nothing for its area score.
+ *
+ * Scoring a particle is only a few multiplications, so for normal frames (a handful of particles) it's done on the calling thread.
+ * Only when there are a lot of particles is the work split up and run in parallel on the common fork-join pool.
+ */
+public class CandidateScorer
+{
+	/** The number of particles in a frame at which scoring is done in parallel. Below this, starting the tasks takes longer than the scoring. */
+	public static final int PARALLEL_SCORING_THRESHOLD = 256;
+	/** The most particles a single fork-join task scores. Bigger ranges are split in half. */
+	private static final int PARTICLES_PER_TASK = 128;
+	/** The score given to a particle that fails the aspect ratio test. */
+	public static final double REJECTED = -1;
+
+	/** How much the area test counts towards a particle's score. */
+	private final double AREA_WEIGHT;
+	/** How much the aspect ratio test counts towards a particle's score. */
+	private final double ASPECT_RATIO_WEIGHT;
+
+	/** The desired ratio of a particle's area over it's bounding box's area. */
+	private final double desiredAreaRatio;
+	/** The area test score at which a particle gets nothing for its area. */
+	private final double minAreaScore;
+	/** The area test score at which a particle gets nothing for its area. */
+	private final double maxAreaScore;
+	/** The desired aspect ratio of a particle's equivalent rectangle. */
+	private final double desiredAspectRatio;
+	/** The minimum aspect ratio test score to be considered a goal. */
+	private final double minAspectRatioScore;
+	/** The maximum aspect ratio test score to be considered a goal. */
+	private final double maxAspectRatioScore;
+
+	/** The combined score of every particle in the last frame scored. REJECTED if the particle failed the aspect ratio test. */
+	private double[] scores = new double[32];
+
+	/**
+	 * Constructor for the CandidateScorer class.
+	 * The test values should be the same ones VisionMethods uses for performAreaTest and performAspectRatioTest.
+	 * @param areaWeight How much the area test counts towards the combined score.
+	 * @param aspectRatioWeight How much the aspect ratio test counts towards the combined score.
+	 * @param desiredArea The desired ratio of a particle's area over it's bounding box's area.
+	 * @param minArea The minimum area test score.
+	 * @param maxArea The maximum area test score.
+	 * @param desiredAspect The desired aspect ratio of a particle's equivalent rectangle.
+	 * @param minAspect The minimum aspect ratio test score.
+	 * @param maxAspect The maximum aspect ratio test score.
+	 */
+	public CandidateScorer(double areaWeight, double aspectRatioWeight, double desiredArea, double minArea, double maxArea,
+			double desiredAspect, double minAspect, double maxAspect)
+	{
+		AREA_WEIGHT = areaWeight;
+		ASPECT_RATIO_WEIGHT = aspectRatioWeight;
+		desiredAreaRatio = desiredArea;
+		minAreaScore = minArea;
+		maxAreaScore = maxArea;
+		desiredAspectRatio = desiredAspect;
+		minAspectRatioScore = minAspect;
+		maxAspectRatioScore = maxAspect;
+	}
+
+	/**
+	 * Scores every particle and finds the one that looks the most like a goal.
+	 * @param data The measurements of every particle in the frame.
+	 * @return The ID of the best particle, or -1 if every particle failed the aspect ratio test.
+	 */
+	public int findBestCandidate(ParticleMeasurements data)
+	{
+		int numOfParticles = data.getCount();
+		if (scores.length < numOfParticles)
+			scores = new double[Math.max(numOfParticles, scores.length * 2)];
+
+		if (numOfParticles >= PARALLEL_SCORING_THRESHOLD)
+			ForkJoinPool.commonPool().invoke(new ScoringTask(data, 0, numOfParticles));
+		else
+			scoreParticles(data, 0, numOfParticles);
+
+		// Picking the best is a single pass over the scores, so it isn't worth doing in parallel.
+		int best = -1;
+		double bestScore = REJECTED;
+		for (int particleID = 0; particleID < numOfParticles; particleID++)
+		{
+			if (scores[particleID] > bestScore)
+			{
+				bestScore = scores[particleID];
+				best = particleID;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the combined score a particle got the last time findBestCandidate was called.
+	 * @param particleID The particle to get the score of.
+	 * @return The particle's score, from 0 to 1, or REJECTED if it failed the aspect ratio test.
+	 */
+	public double getScore(int particleID)
+	{
+		return scores[particleID];
+	}
+
+	/**
+	 * Scores the particles from start up to (not including) end, and puts the results in scores.
+	 */
+	private void scoreParticles(ParticleMeasurements data, int start, int end)
+	{
+		for (int particleID = start; particleID < end; particleID++)
+		{
+			double areaScore = data.compactnessFactor[particleID] / desiredAreaRatio;
+			double aspectRatioScore = data.equivalentRectRatio[particleID] / desiredAspectRatio;
+
+			if (aspectRatioScore < minAspectRatioScore || aspectRatioScore > maxAspectRatioScore)
+				scores[particleID] = REJECTED;
+			else
+				scores[particleID] = AREA_WEIGHT * closeness(areaScore, minAreaScore, maxAreaScore)
+						+ ASPECT_RATIO_WEIGHT * closeness(aspectRatioScore, minAspectRatioScore, maxAspectRatioScore);
+		}
+	}
+
+	/**
+	 * Turns a test score into a value from 0 to 1, where 1 is a perfect score (1.0), and 0 is at or past the limit of the test.
+	 * @param score The test score.
+	 * @param min The minimum score to pass the test.
+	 * @param max The maximum score to pass the test.
+	 * @return How close the score is to perfect.
+	 */
+	private static double closeness(double score, double min, double max)
+	{
+		if (score < min || score > max)
+			return 0;
+		else if (score < 1)
+			return (score - min) / (1 - min);
+		else
+			return (max - score) / (max - 1);
+	}
+
+	/**
+	 * Scores a range of particles. Ranges that are too big are split in half, and the halves are scored in parallel.
+	 */
+	private class ScoringTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ParticleMeasurements data;
+		private final int start;
+		private final int end;
+
+		ScoringTask(ParticleMeasurements data, int start, int end)
+		{
+			this.data = data;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start <= PARTICLES_PER_TASK)
+			{
+				scoreParticles(data, start, end);
+			}
+			else
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new ScoringTask(data, start, middle), new ScoringTask(data, middle, end));
+			}
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * This class runs ControlTasks at a fixed rate on their own high priority thread.
+ *
+ * The periodic methods in Robot are run whenever a packet comes in from the driver station, which is about every 20 ms,
+ * but it can easily be a few ms early or late. Anything that assumes a constant time between loops (like a PID controller)
+ * gets worse when that happens. This loop is timed by the roborio's own clock instead.
+ *
+ * Each loop has a deadline: the time it's supposed to start. After the tasks run, the thread sleeps until the next deadline,
+ * which is exactly one period after the last one (not one period after the tasks finished), so the time the tasks take doesn't add up.
+ * If the tasks take so long that the next deadline has already passed, that's counted as an overrun and the next loop starts right away.
+ * If it's passed by more than a whole period, the deadlines start over from now instead of running a bunch of loops back to back to catch up.
+ *
+ * How late each loop starts (the jitter) is kept in a TimingHistogram, and the percentiles, the number of overruns,
+ * and the measured loop rate are put on the SmartDashboard once a second. The tasks are given the measured time since the last loop,
+ * not the period, so even a late loop is handled correctly.
+ *
+ * If a task throws an exception, the other tasks still run. The failure is written to the EventLog (at most once every
+ * MIN_FAILURE_LOG_INTERVAL) with the exception's class, and the first one is printed in full, stack trace and all,
+ * by a low priority thread so the loop's thread never has to wait on the console.
+ */
+public class ControlLoop implements Runnable
+{
+	/** The most tasks a loop can have. */
+	public static final int MAX_NUM_OF_TASKS = 8;
+
+	/** The width of each jitter histogram bucket, in nanoseconds (0.01 ms). */
+	private static final long JITTER_BUCKET_WIDTH = 10000;
+	/** The number of jitter histogram buckets. With 0.01 ms buckets, jitter up to 20 ms is counted precisely. */
+	private static final int NUM_OF_JITTER_BUCKETS = 2000;
+	/** The time, in nanoseconds, between putting data on the SmartDashboard. */
+	private static final long PUBLISH_PERIOD = 1000000000L;
+	/** The number of publishes between jitter histogram resets. */
+	private static final int PUBLISHES_PER_WINDOW = 10;
+	/** The shortest time, in nanoseconds, between writing task failures to the log. */
+	private static final long MIN_FAILURE_LOG_INTERVAL = 1000000000L;
+	/** The most exception classes that get their own log event. Failures of any other class are logged without it. */
+	private static final int MAX_NUM_OF_FAILURE_CLASSES = 4;
+	/** The time, in milliseconds, between checks for a task failure to print. */
+	private static final long FAILURE_CHECK_INTERVAL = 1000;
+
+	/** The name of the loop. Used for the thread's name and on the SmartDashboard. */
+	private final String name;
+	/** The time between loops, in nanoseconds. */
+	private final long period;
+	/** The tasks, in the order they're run. */
+	private final ControlTask[] tasks = new ControlTask[MAX_NUM_OF_TASKS];
+	/** The number of tasks. */
+	private int numOfTasks = 0;
+	/** The thread that the loop runs on. */
+	private Thread loopThread;
+
+	/** How late each loop started, compared to its deadline. */
+	private final TimingHistogram jitterHistogram = new TimingHistogram(JITTER_BUCKET_WIDTH, NUM_OF_JITTER_BUCKETS);
+	/** The number of times the tasks took so long that the next deadline had already passed. */
+	private volatile long numOfOverruns = 0;
+	/** The longest time, in nanoseconds, the tasks have taken in one loop. */
+	private volatile long maxTaskTime = 0;
+	/** The number of loops since data was last put on the SmartDashboard. */
+	private int loopsSincePublish = 0;
+	/** The number of publishes since the jitter histogram was last reset. */
+	private int publishesSinceReset = 0;
+
+	// Task failure reporting
+	/** The log event for a task throwing an exception, used once there are too many exception classes to give each its own. */
+	private final int taskFailedEvent;
+	/** The exception classes that have their own log event. */
+	private final Class<?>[] failureClasses = new Class<?>[MAX_NUM_OF_FAILURE_CLASSES];
+	/** The log event for each of failureClasses. */
+	private final int[] failureEvents = new int[MAX_NUM_OF_FAILURE_CLASSES];
+	/** The number of exception classes that have their own log event. */
+	private int numOfFailureClasses = 0;
+	/** The first exception a task threw, or null if none have. Printed by the failure reporting thread. */
+	private volatile Throwable firstTaskFailure = null;
+	/** The index of the task that threw firstTaskFailure. Set before firstTaskFailure, so it's seen along with it. */
+	private volatile int firstFailedTask = -1;
+	/** The number of task failures that weren't written to the log because one was written too recently. */
+	private int failuresSinceLog = 0;
+	/** The System.nanoTime() when a task failure was last written to the log. */
+	private long lastFailureLogTime = 0;
+
+	/**
+	 * Constructor for the ControlLoop class. The loop isn't started until start() is called.
+	 * @param loopName The name of the loop.
+	 * @param periodInSeconds The time between loops, in seconds (0.01 is 100 times a second).
+	 */
+	public ControlLoop(String loopName, double periodInSeconds)
+	{
+		name = loopName;
+		period = (long) (periodInSeconds * 1e9);
+		taskFailedEvent = EventLog.registerEvent(loopName + " loop task %.0f threw an exception (%.0f failures not shown)");
+	}
+
+	/**
+	 * Adds a task to the loop. Tasks are run in the order they're added. Only add tasks before start() is called.
+	 * @param task The task to add.
+	 */
+	public void addTask(ControlTask task)
+	{
+		if (numOfTasks == MAX_NUM_OF_TASKS)
+		{
+			System.out.println("Too many tasks in the " + name + " loop");
+			return;
+		}
+		tasks[numOfTasks++] = task;
+	}
+
+	/**
+	 * Starts the loop's thread, at the highest java priority so the vision and logging threads can't delay it.
+	 * Also starts the thread that prints the first task failure, at the lowest priority.
+	 */
+	public void start()
+	{
+		loopThread = new Thread(this, name);
+		loopThread.setDaemon(true);
+		loopThread.setPriority(Thread.MAX_PRIORITY);
+		loopThread.start();
+
+		Thread failureThread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				printFirstTaskFailure();
+			}
+		}, name + " Failure Reporter");
+		failureThread.setDaemon(true);
+		failureThread.setPriority(Thread.MIN_PRIORITY);
+		failureThread.start();
+	}
+
+	/**
+	 * The loop's thread. Runs the tasks, then sleeps until the next deadline.
+	 */
+	public void run()
+	{
+		long deadline = System.nanoTime();
+		long lastStartTime = deadline - period; // So the first loop's dt is one period.
+		long lastPublishTime = deadline;
+
+		while (!Thread.currentThread().isInterrupted())
+		{
+			long startTime = System.nanoTime();
+			jitterHistogram.record(startTime - deadline);
+			double dt = (startTime - lastStartTime) / 1e9;
+			lastStartTime = startTime;
+
+			for (int i = 0; i < numOfTasks; i++)
+			{
+				try
+				{
+					tasks[i].update(dt);
+				}
+				catch (RuntimeException e)
+				{
+					// One task failing shouldn't stop the others, or the loop. A task that fails every loop (like from a CAN fault)
+					// would flood the console, so failures are logged at most once every MIN_FAILURE_LOG_INTERVAL.
+					if (firstTaskFailure == null)
+					{
+						firstFailedTask = i;
+						firstTaskFailure = e;
+					}
+					long now = System.nanoTime();
+					if (now - lastFailureLogTime >= MIN_FAILURE_LOG_INTERVAL)
+					{
+						EventLog.log(getFailureEvent(e.getClass()), i, failuresSinceLog);
+						lastFailureLogTime = now;
+						failuresSinceLog = 0;
+					}
+					else
+						failuresSinceLog++;
+				}
+			}
+
+			long endTime = System.nanoTime();
+			if (endTime - startTime > maxTaskTime)
+				maxTaskTime = endTime - startTime;
+
+			loopsSincePublish++;
+			if (endTime - lastPublishTime >= PUBLISH_PERIOD)
+			{
+				putDataOnSmartDashboard(loopsSincePublish * 1e9 / (endTime - lastPublishTime));
+				lastPublishTime = endTime;
+				loopsSincePublish = 0;
+			}
+
+			deadline += period;
+			long now = System.nanoTime();
+			if (now > deadline)
+			{
+				numOfOverruns++;
+				if (now - deadline > period) // Too far behind to catch up. Start over from now.
+					deadline = now;
+			}
+			sleepUntil(deadline);
+		}
+	}
+
+	/**
+	 * Gets the log event for a task failure with the given exception class, registering one the first time each class is seen.
+	 * Only called from the loop's thread.
+	 * @param failureClass The class of the exception the task threw.
+	 * @return The event's ID. taskFailedEvent if too many classes already have their own event.
+	 */
+	private int getFailureEvent(Class<?> failureClass)
+	{
+		for (int i = 0; i < numOfFailureClasses; i++)
+		{
+			if (failureClasses[i] == failureClass)
+				return failureEvents[i];
+		}
+		if (numOfFailureClasses == MAX_NUM_OF_FAILURE_CLASSES)
+			return taskFailedEvent;
+
+		int event = EventLog.registerEvent(name + " loop task %.0f threw " + failureClass.getName() + " (%.0f failures not shown)");
+		failureClasses[numOfFailureClasses] = failureClass;
+		failureEvents[numOfFailureClasses] = event;
+		numOfFailureClasses++;
+		return event;
+	}
+
+	/**
+	 * The failure reporting thread. Waits for a task to throw an exception, then prints the first one with its stack trace.
+	 * Only the first is printed, since a task that fails every loop would flood the console. The rest are only in the EventLog.
+	 */
+	private void printFirstTaskFailure()
+	{
+		while (firstTaskFailure == null)
+		{
+			try
+			{
+				Thread.sleep(FAILURE_CHECK_INTERVAL);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+		Throwable failure = firstTaskFailure;
+		System.out.println(name + " loop task " + firstFailedTask + " threw " + failure.getClass().getName() + ": " + failure.getMessage());
+		failure.printStackTrace();
+	}
+
+	/**
+	 * Sleeps until System.nanoTime() reaches the given time. parkNanos can wake up early, so it's called until the time is reached.
+	 * @param time The System.nanoTime() to wake up at.
+	 */
+	private static void sleepUntil(long time)
+	{
+		long remaining;
+		while ((remaining = time - System.nanoTime()) > 0)
+		{
+			LockSupport.parkNanos(remaining);
+			if (Thread.currentThread().isInterrupted())
+				return;
+		}
+	}
+
+	/**
+	 * Puts the jitter percentiles, the number of overruns, the longest task time, and the measured loop rate on the SmartDashboard.
+	 * Only called from the loop's thread, since the jitter histogram isn't thread safe.
+	 * @param loopsPerSecond The measured loop rate.
+	 */
+	private void putDataOnSmartDashboard(double loopsPerSecond)
+	{
+		SmartDashboard.putNumber(name + " Loop Rate (Hz)", loopsPerSecond);
+		SmartDashboard.putNumber(name + " Jitter p50 (ms)", jitterHistogram.getPercentile(50) / 1e6);
+		SmartDashboard.putNumber(name + " Jitter p99 (ms)", jitterHistogram.getPercentile(99) / 1e6);
+		SmartDashboard.putNumber(name + " Jitter Max (ms)", jitterHistogram.getMax() / 1e6);
+		SmartDashboard.putNumber(name + " Overruns", numOfOverruns);
+		SmartDashboard.putNumber(name + " Max Task Time (ms)", maxTaskTime / 1e6);
+
+		if (++publishesSinceReset >= PUBLISHES_PER_WINDOW)
+		{
+			jitterHistogram.reset();
+			publishesSinceReset = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of times the tasks took so long that the next deadline had already passed. Safe to call from any thread.
+	 * @return The number of overruns since the loop started.
+	 */
+	public long getNumOfOverruns()
+	{
+		return numOfOverruns;
+	}
+
+	/**
+	 * Gets the longest time the tasks have taken in one loop. Safe to call from any thread.
+	 * @return The time, in seconds.
+	 */
+	public double getMaxTaskTime()
+	{
+		return maxTaskTime / 1e9;
+	}
+
+	/**
+	 * Gets the time between loops.
+	 * @return The period, in seconds.
+	 */
+	public double getPeriod()
+	{
+		return period / 1e9;
+	}
+}
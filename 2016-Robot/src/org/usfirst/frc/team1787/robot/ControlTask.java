@@ -0,0 +1,13 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * Something that is run every loop by a ControlLoop, like driving or moving the servos.
+ */
+public interface ControlTask
+{
+	/**
+	 * Runs one loop of the task.
+	 * @param dt The measured time, in seconds, since the last loop started. Use this instead of assuming the loop's period.
+	 */
+	void update(double dt);
+}
@@ -0,0 +1,266 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.util.HashMap;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * This class sends values to the SmartDashboard only when they've changed, and no more often than a fixed rate.
+ *
+ * Putting a value on the SmartDashboard sends it over the network, and the putDataOnSmartDashboard methods used to do that
+ * for every key, every loop, even when nothing had changed. Here, putNumber(), putBoolean(), and putString() just store the value
+ * in the key's slot and mark it as changed if it's different from the last value that was actually sent. The publisher's thread
+ * sends all of the changed keys together, TELEMETRY_RATE times a second.
+ *
+ * Each key can also have:
+ * 1) A deadband (numbers only): the value has to change by more than this from the last value sent to count as changed.
+ * This keeps a noisy sensor (like the gyro) from being sent every time.
+ * 2) A minimum interval: the key is sent no more often than this, even if it changes more often. The latest value is always the one sent.
+ *
+ * Each key gets its slot the first time it's used, and keeps it. After that, putting a value doesn't create any objects.
+ * Any thread can put values. There is only one publisher, which is gotten with getInstance().
+ */
+public class DashboardPublisher implements Runnable
+{
+	/** The number of times per second changed values are sent. */
+	public static final double TELEMETRY_RATE = 10;
+	/** The most keys the publisher can hold. */
+	private static final int MAX_NUM_OF_KEYS = 128;
+
+	/** The type of a key that has had settings set, but no value put yet. */
+	private static final int TYPE_UNKNOWN = -1;
+	private static final int TYPE_NUMBER = 0;
+	private static final int TYPE_BOOLEAN = 1;
+	private static final int TYPE_STRING = 2;
+
+	/** The one publisher. */
+	private static DashboardPublisher instance = null;
+
+	/** The slot of each key. */
+	private final HashMap<String, Integer> slotOfKey = new HashMap<String, Integer>();
+	/** The number of keys. */
+	private int numOfKeys = 0;
+
+	/** The key in each slot. */
+	private final String[] keys = new String[MAX_NUM_OF_KEYS];
+	/** The type of value in each slot. One of the TYPE_ constants. */
+	private final int[] types = new int[MAX_NUM_OF_KEYS];
+	/** The newest number put in each slot. */
+	private final double[] numbers = new double[MAX_NUM_OF_KEYS];
+	/** The newest boolean put in each slot. */
+	private final boolean[] booleans = new boolean[MAX_NUM_OF_KEYS];
+	/** The newest string put in each slot. */
+	private final String[] strings = new String[MAX_NUM_OF_KEYS];
+	/** The number last sent for each slot. */
+	private final double[] sentNumbers = new double[MAX_NUM_OF_KEYS];
+	/** The boolean last sent for each slot. */
+	private final boolean[] sentBooleans = new boolean[MAX_NUM_OF_KEYS];
+	/** The string last sent for each slot. */
+	private final String[] sentStrings = new String[MAX_NUM_OF_KEYS];
+	/** A boolean for each slot indicating if a value has ever been sent. */
+	private final boolean[] hasBeenSent = new boolean[MAX_NUM_OF_KEYS];
+	/** A boolean for each slot indicating if the newest value needs to be sent. */
+	private final boolean[] changed = new boolean[MAX_NUM_OF_KEYS];
+	/** How much a number has to change from the last value sent to be sent again. */
+	private final double[] deadbands = new double[MAX_NUM_OF_KEYS];
+	/** The shortest time, in nanoseconds, between sending each key. */
+	private final long[] minIntervals = new long[MAX_NUM_OF_KEYS];
+	/** The System.nanoTime() when each key was last sent. */
+	private final long[] lastSentTimes = new long[MAX_NUM_OF_KEYS];
+
+	/** The slots being sent this batch. Filled in while holding the lock, and sent after letting go of it. */
+	private final int[] batchSlots = new int[MAX_NUM_OF_KEYS];
+	private final double[] batchNumbers = new double[MAX_NUM_OF_KEYS];
+	private final boolean[] batchBooleans = new boolean[MAX_NUM_OF_KEYS];
+	private final String[] batchStrings = new String[MAX_NUM_OF_KEYS];
+
+	/** The thread that sends the values. */
+	private Thread publisherThread;
+
+	private DashboardPublisher()
+	{
+	}
+
+	/**
+	 * Gets the publisher.
+	 * @return The publisher.
+	 */
+	public static synchronized DashboardPublisher getInstance()
+	{
+		if (instance == null)
+			instance = new DashboardPublisher();
+		return instance;
+	}
+
+	/**
+	 * Starts the thread that sends changed values. Until this is called, values are only stored.
+	 */
+	public synchronized void start()
+	{
+		if (publisherThread != null)
+			return;
+		publisherThread = new Thread(this, "Dashboard Publisher");
+		publisherThread.setDaemon(true);
+		publisherThread.start();
+	}
+
+	/**
+	 * The publisher thread's loop. Sends the changed values, then waits for the next batch.
+	 */
+	public void run()
+	{
+		long period = (long) (1e9 / TELEMETRY_RATE);
+		long nextBatchTime = System.nanoTime();
+		while (!Thread.currentThread().isInterrupted())
+		{
+			sendChangedValues();
+			nextBatchTime += period;
+			long sleepTime = nextBatchTime - System.nanoTime();
+			if (sleepTime < 0)
+				nextBatchTime = System.nanoTime(); // Fell behind. Don't try to catch up.
+			else
+			{
+				try
+				{
+					Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends every changed key whose minimum interval has passed.
+	 */
+	private void sendChangedValues()
+	{
+		int batchSize = 0;
+		synchronized (this)
+		{
+			long now = System.nanoTime();
+			for (int slot = 0; slot < numOfKeys; slot++)
+			{
+				if (!changed[slot] || (hasBeenSent[slot] && now - lastSentTimes[slot] < minIntervals[slot]))
+					continue;
+				changed[slot] = false;
+				hasBeenSent[slot] = true;
+				lastSentTimes[slot] = now;
+				sentNumbers[slot] = numbers[slot];
+				sentBooleans[slot] = booleans[slot];
+				sentStrings[slot] = strings[slot];
+
+				batchSlots[batchSize] = slot;
+				batchNumbers[batchSize] = numbers[slot];
+				batchBooleans[batchSize] = booleans[slot];
+				batchStrings[batchSize] = strings[slot];
+				batchSize++;
+			}
+		}
+
+		// Sending can be slow, so it's done without holding the lock. Only this thread uses the batch arrays.
+		for (int i = 0; i < batchSize; i++)
+		{
+			int slot = batchSlots[i];
+			if (types[slot] == TYPE_NUMBER)
+				SmartDashboard.putNumber(keys[slot], batchNumbers[i]);
+			else if (types[slot] == TYPE_BOOLEAN)
+				SmartDashboard.putBoolean(keys[slot], batchBooleans[i]);
+			else
+				SmartDashboard.putString(keys[slot], batchStrings[i]);
+		}
+	}
+
+	/**
+	 * Gets the slot of a key, giving it one if it doesn't have one yet. Must be called while holding the lock.
+	 * @param key The key.
+	 * @param type The type of value the key holds. One of the TYPE_ constants. TYPE_UNKNOWN matches any type.
+	 * @return The slot, or -1 if there's no room or the key already holds a different type.
+	 */
+	private int getSlot(String key, int type)
+	{
+		Integer slot = slotOfKey.get(key);
+		if (slot != null)
+		{
+			if (types[slot] == TYPE_UNKNOWN)
+				types[slot] = type;
+			return (type == TYPE_UNKNOWN || types[slot] == type) ? slot : -1;
+		}
+
+		if (numOfKeys == MAX_NUM_OF_KEYS)
+			return -1;
+		keys[numOfKeys] = key;
+		types[numOfKeys] = type;
+		slotOfKey.put(key, numOfKeys);
+		return numOfKeys++;
+	}
+
+	/**
+	 * Puts a number on the SmartDashboard, if it has changed by more than the key's deadband since it was last sent.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public synchronized void putNumber(String key, double value)
+	{
+		int slot = getSlot(key, TYPE_NUMBER);
+		if (slot < 0)
+			return;
+		numbers[slot] = value;
+		changed[slot] = !hasBeenSent[slot] || Math.abs(value - sentNumbers[slot]) > deadbands[slot]
+				|| (Double.isNaN(value) != Double.isNaN(sentNumbers[slot]));
+	}
+
+	/**
+	 * Puts a boolean on the SmartDashboard, if it has changed since it was last sent.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public synchronized void putBoolean(String key, boolean value)
+	{
+		int slot = getSlot(key, TYPE_BOOLEAN);
+		if (slot < 0)
+			return;
+		booleans[slot] = value;
+		changed[slot] = !hasBeenSent[slot] || value != sentBooleans[slot];
+	}
+
+	/**
+	 * Puts a string on the SmartDashboard, if it has changed since it was last sent.
+	 * @param key The key.
+	 * @param value The value.
+	 */
+	public synchronized void putString(String key, String value)
+	{
+		int slot = getSlot(key, TYPE_STRING);
+		if (slot < 0)
+			return;
+		strings[slot] = value;
+		changed[slot] = !hasBeenSent[slot] || !value.equals(sentStrings[slot]);
+	}
+
+	/**
+	 * Sets how much a number has to change from the last value sent before it's sent again.
+	 * @param key The key of a number.
+	 * @param deadband The deadband, in the number's units. 0 (the default) sends every change.
+	 */
+	public synchronized void setDeadband(String key, double deadband)
+	{
+		int slot = getSlot(key, TYPE_UNKNOWN);
+		if (slot >= 0)
+			deadbands[slot] = deadband;
+	}
+
+	/**
+	 * Sets the shortest time between sending a key, for values that change often but don't need to be watched closely.
+	 * @param key The key.
+	 * @param seconds The shortest time between sends, in seconds. 0 (the default) sends it with every batch it changes in.
+	 */
+	public synchronized void setMinInterval(String key, double seconds)
+	{
+		int slot = getSlot(key, TYPE_UNKNOWN);
+		if (slot >= 0)
+			minIntervals[slot] = (long) (seconds * 1e9);
+	}
+}
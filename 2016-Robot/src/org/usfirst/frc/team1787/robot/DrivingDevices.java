@@ -5,9 +5,9 @@ import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.RobotDrive;
 import edu.wpi.first.wpilibj.CANTalon;
 import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.interfaces.Gyro;
 import edu.wpi.first.wpilibj.AnalogGyro;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * This class is a collection of all the mechanisms used for driving the robot.
@@ -56,6 +56,16 @@ public class DrivingDevices
 	//Gyro
 	/** The gyro. */
 	Gyro gyro;
+	/** The number of gyro angles remembered by gyroHistory. At 100 samples per second (the control loop's rate), this is about 1.3 seconds. */
+	private final int GYRO_HISTORY_SIZE = 128;
+	/** The recent gyro angles, with the time each one was read. Used to find the robot's heading when a camera frame was captured. */
+	private TimestampedHistory gyroHistory = new TimestampedHistory(GYRO_HISTORY_SIZE);
+	
+	// SmartDashboard
+	/** Sends the driving data to the SmartDashboard when it changes. */
+	private final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+	/** How many degrees the gyro angle has to change before it's sent to the SmartDashboard again. Keeps gyro noise from being sent every loop. */
+	private final double GYRO_ANGLE_DASHBOARD_DEADBAND = 0.1;
 	
 	/**
 	 * Constructor for the DrivingDevices class
@@ -89,6 +99,8 @@ public class DrivingDevices
 		
 		gyro = new AnalogGyro(gyro_port);
 		gyro.calibrate();
+		
+		dashboard.setDeadband("Gyro Angle", GYRO_ANGLE_DASHBOARD_DEADBAND);
 	}
 	
 	/**
@@ -202,6 +214,27 @@ public class DrivingDevices
 		return gyro;
 	}
 	
+	/**
+	 * Reads the gyro angle and saves it in the gyro history. Should be called once every loop.
+	 */
+	public void recordGyroAngle()
+	{
+		gyroHistory.add(Timer.getFPGATimestamp(), gyro.getAngle());
+	}
+	
+	/**
+	 * Gets what the gyro angle was at a time in the recent past, using the angles saved by recordGyroAngle().
+	 * Only call this from the thread that calls recordGyroAngle() and resetEncodersAndGyro(), since gyroHistory isn't thread safe.
+	 * @param time The FPGA time, in seconds.
+	 * @return The gyro angle at that time, in degrees. If no angles have been saved, the current angle is returned.
+	 */
+	public double getGyroAngleAt(double time)
+	{
+		if (gyroHistory.isEmpty())
+			return gyro.getAngle();
+		return gyroHistory.getValueAt(time);
+	}
+	
 	public boolean hasTurnedDegrees(double degrees)
 	{
 		if (degrees > 0)
@@ -219,6 +252,7 @@ public class DrivingDevices
 	{
 		resetEncoders();
 		gyro.reset();
+		gyroHistory.clear(); // The old angles were measured from a different heading.
 	}
 	
 	/**
@@ -227,10 +261,10 @@ public class DrivingDevices
 	public void putDataOnSmartDashboard()
 	{
 		if (shifter.getCurrentGear())
-			SmartDashboard.putString("Gear:", " High");
+			dashboard.putString("Gear:", " High");
 		else
-			SmartDashboard.putString("Gear:", " Low");
-		SmartDashboard.putNumber("Gyro Angle", gyro.getAngle());
+			dashboard.putString("Gear:", " Low");
+		dashboard.putNumber("Gyro Angle", gyro.getAngle());
 		//SmartDashboard.putNumber("Left Encoder Ticks", leftEncoder.get());
 		//SmartDashboard.putNumber("Left Encoder Distance", leftEncoder.getDistance());
 		//SmartDashboard.putNumber("Left Encoder Degrees (Right Turn)", getLeftEncoderDegreesRightTurn());
@@ -0,0 +1,82 @@
+package org.usfirst.frc.team1787.robot;
+
+import edu.wpi.first.wpilibj.Joystick;
+
+/**
+ * This class tells when a joystick button is first pressed or released, instead of if it's being held down.
+ *
+ * Toggles (like switching the camera feed) should only happen once per press. Checking getRawButton() toggles
+ * every loop the button is held, and waiting after each toggle (which is what we used to do) freezes the whole robot.
+ * Instead, an EdgeButton remembers if the button was down last loop, so a press is only counted
+ * on the loop the button goes from up to down.
+ *
+ * update() has to be called once per loop, before wasPressed() or wasReleased() are checked.
+ */
+public class EdgeButton
+{
+	/** The joystick the button is on. */
+	private final Joystick stick;
+	/** The button number on the joystick. */
+	private final int button;
+	
+	/** A boolean indicating if the button was down at the last update. */
+	private boolean down = false;
+	/** A boolean indicating if the button was down at the update before the last one. */
+	private boolean wasDown = false;
+	
+	/**
+	 * Constructor for the EdgeButton class.
+	 * @param joystick The joystick the button is on.
+	 * @param buttonNumber The button number on the joystick.
+	 */
+	public EdgeButton(Joystick joystick, int buttonNumber)
+	{
+		stick = joystick;
+		button = buttonNumber;
+	}
+	
+	/**
+	 * Reads the button. Call this once per loop.
+	 */
+	public void update()
+	{
+		wasDown = down;
+		down = stick.getRawButton(button);
+	}
+	
+	/**
+	 * Makes the button count as already held down, so holding it through a mode change doesn't count as a new press.
+	 */
+	public void reset()
+	{
+		down = stick.getRawButton(button);
+		wasDown = down;
+	}
+	
+	/**
+	 * Tells if the button was just pressed.
+	 * @return True if the button went from up to down at the last update.
+	 */
+	public boolean wasPressed()
+	{
+		return down && !wasDown;
+	}
+	
+	/**
+	 * Tells if the button was just released.
+	 * @return True if the button went from down to up at the last update.
+	 */
+	public boolean wasReleased()
+	{
+		return !down && wasDown;
+	}
+	
+	/**
+	 * Tells if the button is being held down.
+	 * @return True if the button was down at the last update.
+	 */
+	public boolean isDown()
+	{
+		return down;
+	}
+}
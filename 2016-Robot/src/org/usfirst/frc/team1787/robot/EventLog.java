@@ -0,0 +1,326 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a log that is fast enough to use in the control loop, the vision thread, and the periodic methods.
+ *
+ * System.out.println builds a string and then waits for the console, which on the roborio can take long enough to make a loop late.
+ * Here, logging just copies a few numbers into a ring buffer that was made when the class was loaded: when it happened,
+ * which event it was, and up to MAX_NUM_OF_VALUES doubles. The log thread turns the records into text and writes them out
+ * (to the console, and to a file if one was given to start()) in the background.
+ *
+ * Each kind of event is registered once with a format string (like "Servo angles X: %.1f, Y: %.1f"), which gives it an ID.
+ * Registering creates objects, so do it when the robot starts (like in a static field), not in a loop.
+ *
+ * Any number of threads can log at the same time without locking. A thread claims the next slot in the ring by moving the write position
+ * forward with compareAndSet, fills the slot in, and then marks the slot as published. The log thread only reads a slot once it's published.
+ * If the ring is full (the log thread has fallen far behind), the record is dropped and counted, so logging never has to wait.
+ *
+ * The roborio doesn't have much flash, so the log file can't just keep growing. Once it reaches MAX_FILE_SIZE, it's renamed
+ * to the same name with ".old" on the end (replacing the last one), and a new file is started. So at most about twice MAX_FILE_SIZE is ever used.
+ */
+public final class EventLog
+{
+	/** The number of records the ring can hold. Must be a power of 2. */
+	private static final int CAPACITY = 4096;
+	/** Used to turn a record's sequence number into its slot in the ring. */
+	private static final int MASK = CAPACITY - 1;
+	/** The most doubles a record can hold. */
+	public static final int MAX_NUM_OF_VALUES = 4;
+	/** The most kinds of events that can be registered. */
+	private static final int MAX_NUM_OF_EVENTS = 64;
+	/** How long the log thread sleeps when there's nothing to write, in milliseconds. */
+	private static final long IDLE_SLEEP_TIME = 20;
+	/** The largest the log file gets, in bytes, before it's moved to the ".old" file and a new one is started. */
+	private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+
+	/** The System.nanoTime() of each record. */
+	private static final long[] times = new long[CAPACITY];
+	/** The event ID of each record. */
+	private static final int[] eventIDs = new int[CAPACITY];
+	/** The number of values in each record. */
+	private static final int[] numOfValues = new int[CAPACITY];
+	/** The values of each record. Record slot i's values start at i * MAX_NUM_OF_VALUES. */
+	private static final double[] values = new double[CAPACITY * MAX_NUM_OF_VALUES];
+	/** For each slot, one more than the sequence number of the record published in it (0 if none has been yet). */
+	private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+	/** The sequence number the next record will get. */
+	private static final AtomicLong writePosition = new AtomicLong(0);
+	/** The sequence number of the next record the log thread will read. Only changed by the log thread. */
+	private static volatile long readPosition = 0;
+	/** The number of records dropped because the ring was full. */
+	private static final AtomicLong numOfDroppedRecords = new AtomicLong(0);
+
+	/** The format string of each registered event. */
+	private static final String[] eventFormats = new String[MAX_NUM_OF_EVENTS];
+	/** The number of registered events. */
+	private static int numOfEvents = 0;
+
+	/** The System.nanoTime() when the class was loaded. Record times are printed relative to this. */
+	private static final long startTime = System.nanoTime();
+	/** The thread that writes the records out. Null until start() is called. */
+	private static Thread logThread = null;
+	/** Where records are written to besides the console. Null if there's no file. */
+	private static BufferedWriter fileWriter = null;
+	/** The file the log is written to. Null if there's no file. */
+	private static File logFile = null;
+	/** The size of the log file, in bytes (counting each character as one byte). */
+	private static long fileSize = 0;
+
+	private EventLog()
+	{
+	}
+
+	/**
+	 * Registers a kind of event. Not meant to be called in a loop.
+	 * @param format How to turn the event's values into text, as in String.format (like "Turned %.1f degrees"). 
+	 * The values are passed as doubles, so use %f-style conversions.
+	 * @return The event's ID, to pass to log(). -1 if too many events have been registered (logging it does nothing).
+	 */
+	public static synchronized int registerEvent(String format)
+	{
+		if (numOfEvents == MAX_NUM_OF_EVENTS)
+		{
+			System.out.println("Too many log events, can't register: " + format);
+			return -1;
+		}
+		eventFormats[numOfEvents] = format;
+		return numOfEvents++;
+	}
+
+	/**
+	 * Starts the log thread. Records logged before this are kept (up to the ring's capacity) and written once it starts.
+	 * @param filePath The file to also write the log to, or null to only write to the console.
+	 */
+	public static synchronized void start(String filePath)
+	{
+		if (logThread != null)
+			return;
+		if (filePath != null)
+		{
+			logFile = new File(filePath);
+			fileSize = logFile.length(); // 0 if it doesn't exist yet.
+			if (fileSize >= MAX_FILE_SIZE)
+				rotateFile();
+			else
+				openFile();
+		}
+		logThread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				writeRecords();
+			}
+		}, "Event Log");
+		logThread.setDaemon(true);
+		logThread.setPriority(Thread.MIN_PRIORITY);
+		logThread.start();
+	}
+
+	public static void log(int eventID)
+	{
+		log(eventID, 0, 0, 0, 0, 0);
+	}
+
+	public static void log(int eventID, double a)
+	{
+		log(eventID, 1, a, 0, 0, 0);
+	}
+
+	public static void log(int eventID, double a, double b)
+	{
+		log(eventID, 2, a, b, 0, 0);
+	}
+
+	public static void log(int eventID, double a, double b, double c)
+	{
+		log(eventID, 3, a, b, c, 0);
+	}
+
+	public static void log(int eventID, double a, double b, double c, double d)
+	{
+		log(eventID, 4, a, b, c, d);
+	}
+
+	/**
+	 * Adds a record to the ring. Never waits and never creates objects.
+	 * @param eventID The event's ID, from registerEvent().
+	 * @param count The number of values that are used.
+	 */
+	private static void log(int eventID, int count, double a, double b, double c, double d)
+	{
+		if (eventID < 0)
+			return;
+		long time = System.nanoTime();
+
+		// Claim a slot, unless the ring is full.
+		long sequence;
+		do
+		{
+			sequence = writePosition.get();
+			if (sequence - readPosition >= CAPACITY)
+			{
+				numOfDroppedRecords.incrementAndGet();
+				return;
+			}
+		}
+		while (!writePosition.compareAndSet(sequence, sequence + 1));
+
+		int slot = (int) (sequence & MASK);
+		times[slot] = time;
+		eventIDs[slot] = eventID;
+		numOfValues[slot] = count;
+		int valueIndex = slot * MAX_NUM_OF_VALUES;
+		values[valueIndex] = a;
+		values[valueIndex + 1] = b;
+		values[valueIndex + 2] = c;
+		values[valueIndex + 3] = d;
+		published.lazySet(slot, sequence + 1); // Makes everything written above visible to the log thread before the slot is marked published.
+	}
+
+	/**
+	 * The log thread's loop. Writes out every published record in order, then sleeps a bit when it catches up.
+	 */
+	private static void writeRecords()
+	{
+		StringBuilder line = new StringBuilder();
+		long lastDroppedCount = 0;
+
+		while (!Thread.currentThread().isInterrupted())
+		{
+			long sequence = readPosition;
+			int slot = (int) (sequence & MASK);
+			if (published.get(slot) != sequence + 1) // Nothing new yet (or the next record is still being filled in).
+			{
+				flush();
+				long dropped = numOfDroppedRecords.get();
+				if (dropped != lastDroppedCount)
+				{
+					writeLine("Event log dropped " + (dropped - lastDroppedCount) + " records");
+					lastDroppedCount = dropped;
+				}
+				try
+				{
+					Thread.sleep(IDLE_SLEEP_TIME);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+				continue;
+			}
+
+			// Formatting creates objects, but this is the log thread, so that's fine.
+			Object[] recordArgs = new Object[numOfValues[slot]];
+			for (int i = 0; i < recordArgs.length; i++)
+				recordArgs[i] = values[slot * MAX_NUM_OF_VALUES + i];
+			long time = times[slot];
+			String format = eventFormats[eventIDs[slot]];
+			readPosition = sequence + 1; // The slot has been read, so it can be reused.
+
+			line.setLength(0);
+			line.append(String.format("[%9.3f] ", (time - startTime) / 1e9));
+			try
+			{
+				line.append(String.format(format, recordArgs));
+			}
+			catch (RuntimeException e)
+			{
+				line.append(format).append(" (bad format: ").append(e.getMessage()).append(')');
+			}
+			writeLine(line.toString());
+		}
+	}
+
+	private static void writeLine(String text)
+	{
+		System.out.println(text);
+		if (fileWriter != null)
+		{
+			try
+			{
+				fileWriter.write(text);
+				fileWriter.newLine();
+				fileSize += text.length() + 1;
+			}
+			catch (IOException e)
+			{
+				fileWriter = null; // Keep logging to the console.
+			}
+			if (fileSize >= MAX_FILE_SIZE)
+				rotateFile();
+		}
+	}
+
+	/**
+	 * Opens the log file to add to the end of it. If it can't be opened, the log only goes to the console.
+	 */
+	private static void openFile()
+	{
+		try
+		{
+			fileWriter = new BufferedWriter(new FileWriter(logFile, true));
+		}
+		catch (IOException e)
+		{
+			fileWriter = null;
+			System.out.println("Couldn't open the log file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Moves the log file to the ".old" file (replacing the last one), and starts a new log file.
+	 */
+	private static void rotateFile()
+	{
+		if (fileWriter != null)
+		{
+			try
+			{
+				fileWriter.close();
+			}
+			catch (IOException e)
+			{
+				// The new file is opened either way.
+			}
+			fileWriter = null;
+		}
+		File oldFile = new File(logFile.getPath() + ".old");
+		oldFile.delete();
+		if (!logFile.renameTo(oldFile))
+			logFile.delete(); // Better to lose the old log than to let the file keep growing.
+		fileSize = 0;
+		openFile();
+	}
+
+	private static void flush()
+	{
+		if (fileWriter != null)
+		{
+			try
+			{
+				fileWriter.flush();
+			}
+			catch (IOException e)
+			{
+				fileWriter = null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of records dropped because the ring was full.
+	 * @return The number of dropped records.
+	 */
+	public static long getNumOfDroppedRecords()
+	{
+		return numOfDroppedRecords.get();
+	}
+}
@@ -0,0 +1,121 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class records raw camera frames into a file so a match's vision can be replayed later, off the robot (see FrameReplaySource).
+ *
+ * The file is memory-mapped and used as a ring: it holds a fixed number of frames, and once it's full, the oldest frame is overwritten.
+ * Recording a frame is just a copy into memory. The operating system writes it out to the file in the background.
+ *
+ * File layout (all values big-endian):
+ * Header (HEADER_SIZE bytes): int FILE_ID, int FILE_VERSION, int width, int height, int bytes per pixel, int number of slots, long frames written.
+ * Then one slot per frame: double capture time, long frame number, then the pixels in NIVision's RGB layout (blue, green, red, alpha).
+ * The frame in slot (frameNumber % number of slots) is frame number frameNumber.
+ */
+public class FrameRecorder
+{
+	/** The value at the start of every recording file. Spells out "1787". */
+	public static final int FILE_ID = 0x31373837;
+	/** The version of the file layout. */
+	public static final int FILE_VERSION = 1;
+	/** The number of bytes in the file header. */
+	public static final int HEADER_SIZE = 64;
+	/** The number of bytes at the start of each slot used for the capture time and frame number. */
+	public static final int SLOT_HEADER_SIZE = 16;
+	/** The index in the header where the number of frames written is stored. */
+	static final int FRAMES_WRITTEN_INDEX = 24;
+
+	/** The file being recorded to. */
+	private RandomAccessFile file;
+	/** The memory-mapped contents of the file. */
+	private MappedByteBuffer mappedFile;
+	/** The number of frames the file can hold. */
+	private final int numOfSlots;
+	/** The number of bytes of pixel data in each frame. */
+	private final int frameSize;
+	/** The number of bytes in each slot (slot header plus pixel data). */
+	private final int slotSize;
+	/** The number of frames recorded so far. */
+	private long framesWritten = 0;
+
+	/**
+	 * Constructor for the FrameRecorder class. Creates (or replaces) the recording file.
+	 * @param path The path of the file to record to.
+	 * @param width The width of the frames, in pixels.
+	 * @param height The height of the frames, in pixels.
+	 * @param bytesPerPixel The number of bytes used to store each pixel.
+	 * @param slots The number of frames the file can hold before the oldest ones are overwritten.
+	 * @throws IOException If the file can't be created or mapped.
+	 */
+	public FrameRecorder(String path, int width, int height, int bytesPerPixel, int slots) throws IOException
+	{
+		numOfSlots = slots;
+		frameSize = width * height * bytesPerPixel;
+		slotSize = SLOT_HEADER_SIZE + frameSize;
+		long fileSize = HEADER_SIZE + (long) slotSize * numOfSlots;
+
+		file = new RandomAccessFile(path, "rw");
+		file.setLength(fileSize);
+		mappedFile = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+		mappedFile.putInt(0, FILE_ID);
+		mappedFile.putInt(4, FILE_VERSION);
+		mappedFile.putInt(8, width);
+		mappedFile.putInt(12, height);
+		mappedFile.putInt(16, bytesPerPixel);
+		mappedFile.putInt(20, numOfSlots);
+		mappedFile.putLong(FRAMES_WRITTEN_INDEX, framesWritten);
+	}
+
+	/**
+	 * Copies a frame into the next slot of the file.
+	 * The frame count in the header is only updated after the pixels have been copied, so a reader never sees a half-written frame as the newest one.
+	 * @param pixels The buffer holding the frame. Its position and limit are changed.
+	 * @param offset The index in the buffer where the frame's pixel data starts.
+	 * @param captureTime The time, in seconds, the frame was captured.
+	 */
+	public void recordFrame(ByteBuffer pixels, int offset, double captureTime)
+	{
+		int slotStart = HEADER_SIZE + (int) (framesWritten % numOfSlots) * slotSize;
+		mappedFile.putDouble(slotStart, captureTime);
+		mappedFile.putLong(slotStart + 8, framesWritten);
+
+		pixels.limit(offset + frameSize);
+		pixels.position(offset);
+		mappedFile.position(slotStart + SLOT_HEADER_SIZE);
+		mappedFile.put(pixels);
+
+		framesWritten++;
+		mappedFile.putLong(FRAMES_WRITTEN_INDEX, framesWritten);
+	}
+
+	/**
+	 * Gets the number of frames recorded so far (including ones that have since been overwritten).
+	 * @return The number of frames recorded so far.
+	 */
+	public long getFramesWritten()
+	{
+		return framesWritten;
+	}
+
+	/**
+	 * Makes sure everything recorded so far has been written to the file, then closes it.
+	 */
+	public void close()
+	{
+		try
+		{
+			mappedFile.force();
+			file.close();
+		}
+		catch (IOException e)
+		{
+			System.out.println("Couldn't close the vision recording: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads frames back out of a file made by FrameRecorder, oldest to newest.
+ * The file is memory-mapped, and frames are never copied: getPixels() returns the mapped file itself,
+ * and getPixelOffset() says where the current frame starts in it.
+ * This class doesn't use NIVision or anything else that only exists on the robot, so it can be run on any computer.
+ */
+public class FrameReplaySource
+{
+	/** The memory-mapped contents of the file. */
+	private final MappedByteBuffer mappedFile;
+	/** The width of the recorded frames. */
+	private final int width;
+	/** The height of the recorded frames. */
+	private final int height;
+	/** The number of frames the file can hold. */
+	private final int numOfSlots;
+	/** The number of bytes in each slot. */
+	private final int slotSize;
+	/** The frame number of the oldest frame still in the file. */
+	private final long firstFrame;
+	/** The frame number of the newest frame in the file, plus one. */
+	private final long endFrame;
+	/** The frame number of the current frame. */
+	private long currentFrame;
+
+	/**
+	 * Constructor for the FrameReplaySource class. Opens and maps the recording file.
+	 * @param path The path of the recording file.
+	 * @throws IOException If the file can't be read, or isn't a recording file.
+	 */
+	public FrameReplaySource(String path) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try
+		{
+			mappedFile = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		}
+		finally
+		{
+			file.close(); // The mapping stays valid after the file is closed.
+		}
+
+		if (mappedFile.getInt(0) != FrameRecorder.FILE_ID || mappedFile.getInt(4) != FrameRecorder.FILE_VERSION)
+			throw new IOException(path + " isn't a vision recording");
+
+		width = mappedFile.getInt(8);
+		height = mappedFile.getInt(12);
+		int bytesPerPixel = mappedFile.getInt(16);
+		numOfSlots = mappedFile.getInt(20);
+		slotSize = FrameRecorder.SLOT_HEADER_SIZE + width * height * bytesPerPixel;
+
+		endFrame = mappedFile.getLong(FrameRecorder.FRAMES_WRITTEN_INDEX);
+		firstFrame = Math.max(0, endFrame - numOfSlots);
+		rewind();
+	}
+
+	/**
+	 * Goes back to before the oldest frame. The next call to nextFrame() will move to the oldest frame.
+	 */
+	public void rewind()
+	{
+		currentFrame = firstFrame - 1;
+	}
+
+	/**
+	 * Moves to the next frame.
+	 * @return False if there are no frames left.
+	 */
+	public boolean nextFrame()
+	{
+		if (currentFrame + 1 >= endFrame)
+			return false;
+		currentFrame++;
+		return true;
+	}
+
+	/**
+	 * Gets the number of frames in the file.
+	 * @return The number of frames in the file.
+	 */
+	public int getNumOfFrames()
+	{
+		return (int) (endFrame - firstFrame);
+	}
+
+	/**
+	 * Gets the buffer holding the frames. Use getPixelOffset() to find the current frame in it.
+	 * @return The memory-mapped file. Don't change its contents.
+	 */
+	public MappedByteBuffer getPixels()
+	{
+		return mappedFile;
+	}
+
+	/**
+	 * Gets the index in getPixels() where the current frame's pixel data starts.
+	 * @return The index of the current frame's first byte of pixel data.
+	 */
+	public int getPixelOffset()
+	{
+		return getSlotStart() + FrameRecorder.SLOT_HEADER_SIZE;
+	}
+
+	/**
+	 * Gets the time the current frame was captured.
+	 * @return The capture time of the current frame, in seconds.
+	 */
+	public double getCaptureTime()
+	{
+		return mappedFile.getDouble(getSlotStart());
+	}
+
+	/**
+	 * Gets the index in the file where the current frame's slot starts.
+	 */
+	private int getSlotStart()
+	{
+		return FrameRecorder.HEADER_SIZE + (int) (currentFrame % numOfSlots) * slotSize;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+}
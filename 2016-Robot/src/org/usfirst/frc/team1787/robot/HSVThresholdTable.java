@@ -0,0 +1,248 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class performs an HSV color threshold in plain Java, without NIVision.
+ * Instead of converting every pixel to HSV on every frame, the pass/fail result for every possible
+ * RGB color (2^24 of them) is worked out ahead of time and stored as one bit in a lookup table.
+ * Thresholding a pixel is then just one table lookup.
+ * The table is only rebuilt when the HSV ranges actually change.
+ *
+ * The HSV scales match the ones NIVision's imaqColorThreshold uses in HSV mode: hue, saturation, and value are all 0 - 255.
+ * Hue is NOT in degrees. A hue of h degrees is h * 255 / 360 here, so the default hue range of 125 - 145 is about 176 - 205 degrees.
+ */
+public class HSVThresholdTable
+{
+	/** The value NIVision and byte per pixel binary images use for pixels that pass the threshold. Matches the replace value used with imaqColorThreshold. */
+	public static final byte PIXEL_ON = (byte) 255;
+	/** The value NIVision and byte per pixel binary images use for pixels that fail the threshold. */
+	public static final byte PIXEL_OFF = 0;
+
+	/** One bit for every 24 bit RGB color. A bit is set if that color is within the HSV ranges. (2^24 bits / 64 bits per long = 2^18 longs, or 2 MB) */
+	private final long[] passTable = new long[1 << 18];
+	/** A boolean indicating if passTable needs to be rebuilt before it is used again. */
+	private boolean tableNeedsRebuild = true;
+
+	// HSV Ranges
+	private int hueMin;
+	private int hueMax;
+	private int saturationMin;
+	private int saturationMax;
+	private int valueMin;
+	private int valueMax;
+
+	/**
+	 * Constructor for the HSVThresholdTable class. The table itself isn't built until the first threshold is performed.
+	 * @param hMin The minimum acceptable hue (0 - 255).
+	 * @param hMax The maximum acceptable hue (0 - 255).
+	 * @param sMin The minimum acceptable saturation (0 - 255).
+	 * @param sMax The maximum acceptable saturation (0 - 255).
+	 * @param vMin The minimum acceptable value (0 - 255).
+	 * @param vMax The maximum acceptable value (0 - 255).
+	 */
+	public HSVThresholdTable(int hMin, int hMax, int sMin, int sMax, int vMin, int vMax)
+	{
+		setRanges(hMin, hMax, sMin, sMax, vMin, vMax);
+	}
+
+	/**
+	 * Sets the acceptable HSV ranges. The lookup table is only marked for a rebuild if one of the ranges is different than before.
+	 * @return If the ranges changed.
+	 */
+	public boolean setRanges(int hMin, int hMax, int sMin, int sMax, int vMin, int vMax)
+	{
+		if (hMin == hueMin && hMax == hueMax && sMin == saturationMin && sMax == saturationMax && vMin == valueMin && vMax == valueMax)
+			return false;
+
+		hueMin = hMin;
+		hueMax = hMax;
+		saturationMin = sMin;
+		saturationMax = sMax;
+		valueMin = vMin;
+		valueMax = vMax;
+		tableNeedsRebuild = true;
+		return true;
+	}
+
+	/**
+	 * Fills in the lookup table by converting every possible RGB color to HSV once.
+	 * Colors are checked against the value range first, since it is the cheapest to calculate.
+	 */
+	private void rebuildTable()
+	{
+		Arrays.fill(passTable, 0);
+
+		for (int r = 0; r < 256; r++)
+		{
+			for (int g = 0; g < 256; g++)
+			{
+				int rg = (r << 16) | (g << 8);
+				for (int b = 0; b < 256; b++)
+				{
+					int max = Math.max(r, Math.max(g, b));
+					if (max < valueMin || max > valueMax)
+						continue;
+
+					int min = Math.min(r, Math.min(g, b));
+					int delta = max - min;
+					int saturation = (max == 0) ? 0 : (255 * delta + max / 2) / max;
+					if (saturation < saturationMin || saturation > saturationMax)
+						continue;
+
+					int hue = calculateHue(r, g, b, max, delta);
+					if (hue < hueMin || hue > hueMax)
+						continue;
+
+					int rgb = rg | b;
+					passTable[rgb >>> 6] |= (1L << rgb);
+				}
+			}
+		}
+
+		tableNeedsRebuild = false;
+	}
+
+	/**
+	 * Calculates the hue of an RGB color on NIVision's scale from 0 - 255 (a full turn of the color wheel is 255, not 360).
+	 * @param max The largest of r, g, and b.
+	 * @param delta The largest of r, g, and b minus the smallest.
+	 * @return The hue of the color, rounded to the nearest step. Grays have a hue of 0.
+	 */
+	private static int calculateHue(int r, int g, int b, int max, int delta)
+	{
+		if (delta == 0)
+			return 0;
+
+		double sixths; // The hue in sixths of the color wheel (60 degree steps).
+		if (max == r)
+			sixths = (double) (g - b) / delta;
+		else if (max == g)
+			sixths = 2 + (double) (b - r) / delta;
+		else
+			sixths = 4 + (double) (r - g) / delta;
+
+		if (sixths < 0)
+			sixths += 6;
+		return (int) Math.round(sixths * 255 / 6);
+	}
+
+	/**
+	 * Builds the lookup table now if it needs to be, instead of on the next threshold.
+	 * Building it takes tens of milliseconds, so this keeps that out of anything that's being timed.
+	 */
+	public void prepare()
+	{
+		if (tableNeedsRebuild)
+			rebuildTable();
+	}
+
+	/**
+	 * Gets the lookup table, building it first if it needs to be. Lets the byte per pixel threshold in the benchmarks use the same table.
+	 * @return The table. Bit (rgb % 64) of long (rgb / 64) is set if color rgb passes.
+	 */
+	long[] getPassTable()
+	{
+		prepare();
+		return passTable;
+	}
+
+	/**
+	 * Tells if the given color is within the HSV ranges.
+	 * @param rgb The color, packed as 0xRRGGBB.
+	 * @return If the color is within the HSV ranges.
+	 */
+	public boolean passes(int rgb)
+	{
+		if (tableNeedsRebuild)
+			rebuildTable();
+		rgb &= 0xFFFFFF;
+		return (passTable[rgb >>> 6] & (1L << rgb)) != 0;
+	}
+
+	/**
+	 * Performs the threshold on only part of an image stored in a ByteBuffer using NIVision's RGB pixel layout,
+	 * and puts the result straight into a bit packed image. Each long of the result is built up in a local variable
+	 * and written once, so this writes 1/8 as much memory as thresholding into a byte per pixel image.
+	 * Pixels outside the window are left unchanged in binaryImage.
+	 * @param bgraPixels The image to threshold.
+	 * @param offset The index in the buffer of the first pixel's blue byte.
+	 * @param left The leftmost X coordinate of the window.
+	 * @param top The topmost Y coordinate of the window.
+	 * @param windowWidth The width of the window.
+	 * @param windowHeight The height of the window.
+	 * @param binaryImage Where the result is put. Must be the same size as the image being thresholded.
+	 */
+	public void threshold(ByteBuffer bgraPixels, int offset, int left, int top, int windowWidth, int windowHeight, BitPackedImage binaryImage)
+	{
+		if (tableNeedsRebuild)
+			rebuildTable();
+
+		long[] table = passTable;
+		long[] binaryWords = binaryImage.getWords();
+		int imageWidth = binaryImage.getWidth();
+		int wordsPerRow = binaryImage.getWordsPerRow();
+		int right = left + windowWidth;
+		for (int y = top; y < top + windowHeight; y++)
+		{
+			int index = offset + (y * imageWidth + left) * 4;
+			int x = left;
+			while (x < right)
+			{
+				// Threshold the pixels of the window that are in the long x is in.
+				int wordIndex = y * wordsPerRow + (x >>> 6);
+				int wordEnd = Math.min(right, ((x >>> 6) + 1) * BitPackedImage.PIXELS_PER_WORD);
+				long windowBits = 0;
+				long passingBits = 0;
+				for (; x < wordEnd; x++, index += 4)
+				{
+					int rgb = ((bgraPixels.get(index + 2) & 0xFF) << 16) | ((bgraPixels.get(index + 1) & 0xFF) << 8) | (bgraPixels.get(index) & 0xFF);
+					windowBits |= 1L << x;
+					passingBits |= ((table[rgb >>> 6] >>> rgb) & 1L) << x; // The color's bit in the table, moved to pixel x's bit.
+				}
+				binaryWords[wordIndex] = (binaryWords[wordIndex] & ~windowBits) | passingBits;
+			}
+		}
+	}
+
+	/**
+	 * Performs the threshold on a shrunk copy of an image stored in a ByteBuffer using NIVision's RGB pixel layout.
+	 * Each pixel of the result is the middle pixel of a factor x factor block of the image, so only 1 / factor^2 of the pixels are looked up.
+	 * This is used to quickly find where the goal might be before thresholding that part of the image at full size.
+	 * Every pixel of coarseImage is overwritten.
+	 * @param bgraPixels The image to threshold.
+	 * @param offset The index in the buffer of the first pixel's blue byte.
+	 * @param imageWidth The width of the full size image.
+	 * @param factor How many times smaller coarseImage is than the full size image, in each direction.
+	 * @param coarseImage Where the result is put. Must be (image width / factor) x (image height / factor).
+	 */
+	public void thresholdDownsampled(ByteBuffer bgraPixels, int offset, int imageWidth, int factor, BitPackedImage coarseImage)
+	{
+		if (tableNeedsRebuild)
+			rebuildTable();
+
+		long[] table = passTable;
+		long[] coarseWords = coarseImage.getWords();
+		int coarseWidth = coarseImage.getWidth();
+		int wordsPerRow = coarseImage.getWordsPerRow();
+		int sampleOffset = factor / 2; // Use the middle pixel of each block.
+		int step = factor * 4;
+		for (int coarseY = 0; coarseY < coarseImage.getHeight(); coarseY++)
+		{
+			int y = coarseY * factor + sampleOffset;
+			int index = offset + (y * imageWidth + sampleOffset) * 4;
+			for (int w = 0; w < wordsPerRow; w++)
+			{
+				int wordEnd = Math.min(coarseWidth, (w + 1) * BitPackedImage.PIXELS_PER_WORD);
+				long passingBits = 0;
+				for (int coarseX = w * BitPackedImage.PIXELS_PER_WORD; coarseX < wordEnd; coarseX++, index += step)
+				{
+					int rgb = ((bgraPixels.get(index + 2) & 0xFF) << 16) | ((bgraPixels.get(index + 1) & 0xFF) << 8) | (bgraPixels.get(index) & 0xFF);
+					passingBits |= ((table[rgb >>> 6] >>> rgb) & 1L) << coarseX;
+				}
+				coarseWords[coarseY * wordsPerRow + w] = passingBits;
+			}
+		}
+	}
+}
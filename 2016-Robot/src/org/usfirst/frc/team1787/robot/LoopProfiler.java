@@ -0,0 +1,218 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class times each section of a loop (like driving, or the arm), and reports when a loop takes longer than it should.
+ *
+ * The driver station only says "loop overrun", not which part of the loop was slow. Here, each section is timed with start() and stop()
+ * (a section can be timed in more than one piece, and the pieces are added up), and endLoop() checks the whole loop against its budget.
+ * If the loop went over, the time of every section in that loop is written to the EventLog, so the slow part can be found afterwards.
+ * To keep a run of slow loops from flooding the log, this is done at most once every MIN_DUMP_INTERVAL, and the skipped ones are counted.
+ *
+ * Each section's times are also kept over a window of WINDOW_SIZE loops. At the end of each window, the min, mean, max, and 99th percentile
+ * of every section (and the whole loop) are put on the SmartDashboard through the DashboardPublisher, and the window starts over.
+ *
+ * Every key, log event, and histogram is made in the constructor, so profiling a loop doesn't create anything and can be left on in matches.
+ * A profiler should only be used by one thread (the thread running the loop).
+ */
+public class LoopProfiler
+{
+	/** The number of loops in each stats window. */
+	private static final int WINDOW_SIZE = 250;
+	/** The shortest time, in nanoseconds, between writing overrun breakdowns to the log. */
+	private static final long MIN_DUMP_INTERVAL = 1000000000L;
+	/** The width of each histogram bucket, in nanoseconds (0.01 ms). */
+	private static final long BUCKET_WIDTH = 10000;
+	/** The number of histogram buckets. With 0.01 ms buckets, times up to 50 ms are counted precisely. */
+	private static final int NUM_OF_BUCKETS = 5000;
+
+	/** The number of sections. */
+	private final int numOfSections;
+	/** The longest a loop should take, in nanoseconds. */
+	private final long budget;
+
+	/** The System.nanoTime() when the current loop started. */
+	private long loopStartTime = 0;
+	/** The System.nanoTime() when each section was last started. */
+	private final long[] sectionStartTimes;
+	/** The total time each section has taken so far this loop, in nanoseconds. */
+	private final long[] sectionTimesThisLoop;
+
+	// Stats for the current window. Index numOfSections is the whole loop.
+	/** A histogram of each section's time per loop, for the 99th percentile. */
+	private final TimingHistogram[] histograms;
+	/** The shortest time of each section this window, in nanoseconds. */
+	private final long[] minTimes;
+	/** The total time of each section this window, in nanoseconds. */
+	private final long[] totalTimes;
+	/** The number of loops this window. */
+	private int loopsThisWindow = 0;
+
+	// Overrun reporting
+	/** The number of loops that have gone over budget. */
+	private long numOfOverruns = 0;
+	/** The number of overruns that weren't written to the log because one was written too recently. */
+	private int overrunsSinceDump = 0;
+	/** The System.nanoTime() when an overrun breakdown was last written to the log. */
+	private long lastDumpTime = 0;
+	/** The log event that starts an overrun breakdown. */
+	private final int overrunEvent;
+	/** The log event for each section's line of an overrun breakdown. */
+	private final int[] sectionEvents;
+
+	// SmartDashboard keys. Index numOfSections is the whole loop.
+	private final String[] minKeys;
+	private final String[] meanKeys;
+	private final String[] maxKeys;
+	private final String[] p99Keys;
+	/** The key for the number of overruns. */
+	private final String overrunsKey;
+	/** Sends the stats to the SmartDashboard. */
+	private final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+
+	/**
+	 * Constructor for the LoopProfiler class.
+	 * @param loopName The name of the loop, used in the log and on the SmartDashboard.
+	 * @param sectionNames The name of each section. The section numbers passed to start() and stop() are the indexes in this array.
+	 * @param budgetSeconds The longest a loop should take, in seconds.
+	 */
+	public LoopProfiler(String loopName, String[] sectionNames, double budgetSeconds)
+	{
+		numOfSections = sectionNames.length;
+		budget = (long) (budgetSeconds * 1e9);
+		sectionStartTimes = new long[numOfSections];
+		sectionTimesThisLoop = new long[numOfSections];
+
+		histograms = new TimingHistogram[numOfSections + 1];
+		minTimes = new long[numOfSections + 1];
+		totalTimes = new long[numOfSections + 1];
+		minKeys = new String[numOfSections + 1];
+		meanKeys = new String[numOfSections + 1];
+		maxKeys = new String[numOfSections + 1];
+		p99Keys = new String[numOfSections + 1];
+		sectionEvents = new int[numOfSections];
+
+		for (int i = 0; i <= numOfSections; i++)
+		{
+			String name = loopName + " " + ((i < numOfSections) ? sectionNames[i] : "Total");
+			histograms[i] = new TimingHistogram(BUCKET_WIDTH, NUM_OF_BUCKETS);
+			minKeys[i] = name + " Min (ms)";
+			meanKeys[i] = name + " Mean (ms)";
+			maxKeys[i] = name + " Max (ms)";
+			p99Keys[i] = name + " p99 (ms)";
+		}
+		overrunsKey = loopName + " Overruns";
+
+		overrunEvent = EventLog.registerEvent(loopName + " loop took %.2f ms (budget %.2f ms, %.0f overruns not shown):");
+		for (int i = 0; i < numOfSections; i++)
+			sectionEvents[i] = EventLog.registerEvent("    " + sectionNames[i] + ": %.3f ms");
+
+		resetWindow();
+	}
+
+	/**
+	 * Marks the start of a loop. Call this before any sections are started.
+	 */
+	public void startLoop()
+	{
+		loopStartTime = System.nanoTime();
+		for (int i = 0; i < numOfSections; i++)
+			sectionTimesThisLoop[i] = 0;
+	}
+
+	/**
+	 * Starts timing a section.
+	 * @param section The section's number.
+	 */
+	public void start(int section)
+	{
+		sectionStartTimes[section] = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing a section, and adds the time since start() to the section's time for this loop.
+	 * @param section The section's number.
+	 */
+	public void stop(int section)
+	{
+		sectionTimesThisLoop[section] += System.nanoTime() - sectionStartTimes[section];
+	}
+
+	/**
+	 * Marks the end of a loop. Records every section's time, writes a breakdown to the log if the loop went over budget,
+	 * and puts the stats on the SmartDashboard if the window is over.
+	 */
+	public void endLoop()
+	{
+		long loopTime = System.nanoTime() - loopStartTime;
+		for (int i = 0; i < numOfSections; i++)
+			recordTime(i, sectionTimesThisLoop[i]);
+		recordTime(numOfSections, loopTime);
+		loopsThisWindow++;
+
+		if (loopTime > budget)
+		{
+			numOfOverruns++;
+			long now = System.nanoTime();
+			if (now - lastDumpTime >= MIN_DUMP_INTERVAL)
+			{
+				EventLog.log(overrunEvent, loopTime / 1e6, budget / 1e6, overrunsSinceDump);
+				for (int i = 0; i < numOfSections; i++)
+					EventLog.log(sectionEvents[i], sectionTimesThisLoop[i] / 1e6);
+				lastDumpTime = now;
+				overrunsSinceDump = 0;
+			}
+			else
+				overrunsSinceDump++;
+		}
+
+		if (loopsThisWindow >= WINDOW_SIZE)
+		{
+			putDataOnSmartDashboard();
+			resetWindow();
+		}
+	}
+
+	private void recordTime(int index, long time)
+	{
+		histograms[index].record(time);
+		totalTimes[index] += time;
+		if (time < minTimes[index])
+			minTimes[index] = time;
+	}
+
+	/**
+	 * Puts the min, mean, max, and 99th percentile of each section and the whole loop for this window,
+	 * and the total number of overruns, on the SmartDashboard.
+	 */
+	private void putDataOnSmartDashboard()
+	{
+		for (int i = 0; i <= numOfSections; i++)
+		{
+			dashboard.putNumber(minKeys[i], minTimes[i] / 1e6);
+			dashboard.putNumber(meanKeys[i], totalTimes[i] / 1e6 / loopsThisWindow);
+			dashboard.putNumber(maxKeys[i], histograms[i].getMax() / 1e6);
+			dashboard.putNumber(p99Keys[i], histograms[i].getPercentile(99) / 1e6);
+		}
+		dashboard.putNumber(overrunsKey, numOfOverruns);
+	}
+
+	private void resetWindow()
+	{
+		for (int i = 0; i <= numOfSections; i++)
+		{
+			histograms[i].reset();
+			minTimes[i] = Long.MAX_VALUE;
+			totalTimes[i] = 0;
+		}
+		loopsThisWindow = 0;
+	}
+
+	/**
+	 * Gets the number of loops that have gone over budget.
+	 * @return The number of overruns.
+	 */
+	public long getNumOfOverruns()
+	{
+		return numOfOverruns;
+	}
+}
@@ -1,36 +1,78 @@
 package org.usfirst.frc.team1787.robot;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.Timer;
 
 /**
  * This class is for logic involving PID controllers.
+ * 
+ * Call calculateError() with the desired value and the current value, then generateOutput() to get the output.
+ * generateOutput() measures the time since it was last called itself, or the time can be passed in (like the dt from a ControlLoop).
+ * 
+ * A few things are done differently from a textbook PID controller:
+ * 1) The D term uses how fast the current value is changing, not the error, so changing the desired value doesn't make the output jump.
+ * When the desired value isn't changing, this is the same thing. The rate is also smoothed (low-pass filtered), since the
+ * difference between two noisy readings is even noisier.
+ * 2) The error is only added to the I term while it's inside the integral threshold, and not while the output is maxed out
+ * in the direction the error is pushing (anti-windup). The I term by itself is also kept between the min and max output.
+ * 3) Feedforward terms can be added for how fast the desired value is moving (velocity) and speeding up (acceleration),
+ * for when the desired value follows a planned motion instead of jumping.
+ * 
+ * Nothing is created and nothing is printed while generating output, so it's safe to call every loop.
  * @author Simon Wieder
  *
  */
 public class PIDOutputCalc
 {
+	/** The dt used the first time generateOutput() is called after a reset, in seconds. This is how often the periodic methods are called. */
+	private static final double DEFAULT_DT = 0.02;
+	/** The longest dt used, in seconds. A longer gap between calls (like after being paused without a reset) is treated as this long, so the I term doesn't jump. */
+	private static final double MAX_DT = 0.1;
+	/** The default time constant of the D term's low-pass filter, in seconds. */
+	private static final double DEFAULT_DERIVATIVE_FILTER_TIME = 0.02;
+	
 	private double kp;
 	private double ki;
 	private double kd;
+	/** The velocity feedforward gain. Multiplied by the desired velocity. */
+	private double kv = 0;
+	/** The acceleration feedforward gain. Multiplied by the desired acceleration. */
+	private double ka = 0;
 	
 	private double pTerm;
 	private double iTerm;
 	private double dTerm;
+	private double feedforwardTerm;
 	
-	private double dt = 0.05;
+	/** The FPGA time, in seconds, when generateOutput() was last called. 0 after a reset. */
+	private double lastOutputTime;
 	
 	private double error;
-	private double previousError;
-	private double errorRateOfChange;
 	private double areaUnderErrorCurve;
 	
+	/** The current value given to the last calculateError() call. */
+	private double currentValue;
+	/** The current value when output was last generated. NaN after a reset. */
+	private double previousValue;
+	/** The smoothed rate of change of the current value, in units per second. */
+	private double valueRateOfChange;
+	/** The time constant of the D term's low-pass filter, in seconds. 0 means no filtering. */
+	private double derivativeFilterTime = DEFAULT_DERIVATIVE_FILTER_TIME;
+	
+	/** The velocity the desired value is moving at, in units per second. */
+	private double desiredVelocity = 0;
+	/** The acceleration of the desired value, in units per second^2. */
+	private double desiredAcceleration = 0;
+	
 	private double output;
-	private double minOutput;
-	private double maxOutput;
+	private double minOutput = -1;
+	private double maxOutput = 1;
 	
 	private double toleranceThreshold;
 	private double integralThreshold;
 	
+	/** Sends the PID data to the SmartDashboard when it changes. */
+	private final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+	
 	public PIDOutputCalc(double p, double i, double d)
 	{
 		kp = p;
@@ -39,38 +81,75 @@ public class PIDOutputCalc
 		reset();
 	}
 	
+	/**
+	 * Generates the output, using the time since this was last called as dt.
+	 * @return The output, between the min and max output.
+	 */
 	public double generateOutput()
+	{
+		double now = Timer.getFPGATimestamp();
+		double dt = (lastOutputTime == 0) ? DEFAULT_DT : now - lastOutputTime;
+		lastOutputTime = now;
+		return generateOutput(dt);
+	}
+	
+	/**
+	 * Generates the output.
+	 * @param dt The measured time, in seconds, since output was last generated.
+	 * @return The output, between the min and max output.
+	 */
+	public double generateOutput(double dt)
 	{
 		// Calculate error (done outside this method)
 		
-		if (-integralThreshold < error && error < integralThreshold)
-		areaUnderErrorCurve += (error * dt);
+		if (dt > MAX_DT)
+			dt = MAX_DT;
 		
-		errorRateOfChange = ((error - previousError) / dt);
-		previousError = error;
+		if (dt > 0)
+		{
+			// D term from the current value. The first time after a reset there's nothing to compare to, so the rate stays 0.
+			if (!Double.isNaN(previousValue))
+			{
+				double rawRate = (currentValue - previousValue) / dt;
+				valueRateOfChange += (dt / (derivativeFilterTime + dt)) * (rawRate - valueRateOfChange);
+			}
+			previousValue = currentValue;
+		}
 		
 		pTerm = (error * kp);
-		iTerm = (areaUnderErrorCurve * ki);
-		dTerm = (errorRateOfChange * kd);
+		dTerm = -(valueRateOfChange * kd);
+		feedforwardTerm = (desiredVelocity * kv) + (desiredAcceleration * ka);
 		
-		//System.out.println("P term: "+pTerm);
-		//System.out.println("I term : "+iTerm);
-		//System.out.println("D term: "+dTerm);
+		// Only add to the I term if it would help: inside the integral threshold, and not while the output is already maxed out in that direction.
+		if (dt > 0 && -integralThreshold < error && error < integralThreshold)
+		{
+			double outputBeforeIntegrating = pTerm + dTerm + feedforwardTerm + (areaUnderErrorCurve * ki);
+			boolean maxedOutInErrorDirection = (outputBeforeIntegrating >= maxOutput && error * ki > 0) || (outputBeforeIntegrating <= minOutput && error * ki < 0);
+			if (!maxedOutInErrorDirection)
+				areaUnderErrorCurve += (error * dt);
+		}
+		
+		iTerm = (areaUnderErrorCurve * ki);
+		if (ki != 0 && (iTerm > maxOutput || iTerm < minOutput))
+		{
+			iTerm = Math.max(minOutput, Math.min(maxOutput, iTerm));
+			areaUnderErrorCurve = iTerm / ki;
+		}
 		
-		output = pTerm + iTerm + dTerm;
+		output = pTerm + iTerm + dTerm + feedforwardTerm;
 		
 		if (output > maxOutput)
 			output = maxOutput;
 		else if (output < minOutput)
 			output = minOutput;
 		
-		System.out.println("Output: "+output);
 		return output;
 	}
 	
 	public void calculateError(double desiredValue, double currentValue)
 	{
 		error = desiredValue - currentValue;
+		this.currentValue = currentValue;
 	}
 	
 	public boolean errorIsAcceptable()
@@ -98,21 +177,54 @@ public class PIDOutputCalc
 		minOutput = min;
 	}
 	
+	/**
+	 * Sets the feedforward gains.
+	 * @param velocityGain Multiplied by the desired velocity (for a drive, about 1 / top speed).
+	 * @param accelerationGain Multiplied by the desired acceleration.
+	 */
+	public void setFeedforwardGains(double velocityGain, double accelerationGain)
+	{
+		kv = velocityGain;
+		ka = accelerationGain;
+	}
+	
+	/**
+	 * Sets how fast the desired value is moving, for the feedforward terms. Set both to 0 when the desired value isn't moving.
+	 * @param velocity The velocity of the desired value, in units per second.
+	 * @param acceleration The acceleration of the desired value, in units per second^2.
+	 */
+	public void setDesiredMotion(double velocity, double acceleration)
+	{
+		desiredVelocity = velocity;
+		desiredAcceleration = acceleration;
+	}
+	
+	/**
+	 * Sets how much the D term is smoothed. A longer time is smoother, but reacts later.
+	 * @param seconds The time constant of the low-pass filter, in seconds. 0 turns the filter off.
+	 */
+	public void setDerivativeFilterTime(double seconds)
+	{
+		derivativeFilterTime = Math.max(0, seconds);
+	}
+	
 	public void reset()
 	{
 		error = 0;
-		previousError = 0;
-		errorRateOfChange = 0;
 		areaUnderErrorCurve = 0;
+		previousValue = Double.NaN;
+		valueRateOfChange = 0;
+		lastOutputTime = 0;
 		output = 0;
 	}
 	
 	public void putDataOnSmartDashboard()
 	{
-		SmartDashboard.putNumber("Error", error);
-		SmartDashboard.putNumber("P Term", pTerm);
-		SmartDashboard.putNumber("I Term", iTerm);
-		SmartDashboard.putNumber("D Term", dTerm);
-		SmartDashboard.putNumber("Output", output);
+		dashboard.putNumber("Error", error);
+		dashboard.putNumber("P Term", pTerm);
+		dashboard.putNumber("I Term", iTerm);
+		dashboard.putNumber("D Term", dTerm);
+		dashboard.putNumber("Feedforward Term", feedforwardTerm);
+		dashboard.putNumber("Output", output);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class stores the measurements of every particle found in a binary image.
+ * Each measurement is kept in its own array (indexed by particle ID), so measuring a frame
+ * only fills in primitive values and never creates new objects once the arrays are big enough.
+ */
+public class ParticleMeasurements
+{
+	/** The number of particles that currently have measurements stored. */
+	private int count = 0;
+
+	/** The area of each particle, including any holes in it. */
+	double[] area;
+	/** The X coordinate of each particle's center of mass. */
+	double[] centerOfMassX;
+	/** The Y coordinate of each particle's center of mass. */
+	double[] centerOfMassY;
+	/** The topmost Y coordinate of each particle's bounding box. */
+	int[] boundingRectTop;
+	/** The leftmost X coordinate of each particle's bounding box. */
+	int[] boundingRectLeft;
+	/** The width of each particle's bounding box. */
+	int[] boundingRectWidth;
+	/** The height of each particle's bounding box. */
+	int[] boundingRectHeight;
+	/** The ratio of each particle's area over the area of it's bounding box. */
+	double[] compactnessFactor;
+	/** The aspect ratio (long side / short side) of each particle's equivalent rectangle. */
+	double[] equivalentRectRatio;
+
+	/**
+	 * Constructor for the ParticleMeasurements class.
+	 * @param initialCapacity How many particles can be stored before the arrays need to grow.
+	 */
+	public ParticleMeasurements(int initialCapacity)
+	{
+		allocate(Math.max(1, initialCapacity));
+	}
+
+	/**
+	 * Creates all of the measurement arrays with the given length.
+	 * @param capacity The length of the arrays.
+	 */
+	private void allocate(int capacity)
+	{
+		area = new double[capacity];
+		centerOfMassX = new double[capacity];
+		centerOfMassY = new double[capacity];
+		boundingRectTop = new int[capacity];
+		boundingRectLeft = new int[capacity];
+		boundingRectWidth = new int[capacity];
+		boundingRectHeight = new int[capacity];
+		compactnessFactor = new double[capacity];
+		equivalentRectRatio = new double[capacity];
+	}
+
+	/**
+	 * Clears the stored measurements and makes room for the given number of particles.
+	 * The arrays are only replaced if they are too small, which should only happen on the first few frames.
+	 * @param numOfParticles The number of particles that are about to be measured.
+	 */
+	public void reset(int numOfParticles)
+	{
+		if (numOfParticles > area.length)
+			allocate(Math.max(numOfParticles, area.length * 2));
+		count = numOfParticles;
+	}
+
+	/**
+	 * Gets the number of particles that currently have measurements stored.
+	 * @return The number of particles that currently have measurements stored.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets how many particles can be stored before the arrays need to grow.
+	 * @return How many particles can be stored before the arrays need to grow.
+	 */
+	public int getCapacity()
+	{
+		return area.length;
+	}
+
+	/**
+	 * Tells if the given particle ID has measurements stored.
+	 * @param particleID The particle to check.
+	 * @return If the given particle ID is greater than or equal to 0, and less than the number of particles stored.
+	 */
+	public boolean isValid(int particleID)
+	{
+		return (0 <= particleID && particleID < count);
+	}
+
+	/**
+	 * Fills in the compactness factor and equivalent rectangle aspect ratio of a particle
+	 * whose area, bounding box, and perimeter are already known.
+	 * @param particleID The particle to update.
+	 * @param perimeter The perimeter of the particle.
+	 */
+	void calculateShapeRatios(int particleID, double perimeter)
+	{
+		double boundingBoxArea = (double) boundingRectWidth[particleID] * boundingRectHeight[particleID];
+		compactnessFactor[particleID] = (boundingBoxArea > 0) ? (area[particleID] / boundingBoxArea) : 0;
+		equivalentRectRatio[particleID] = getEquivalentRectRatio(area[particleID], perimeter);
+	}
+
+	/**
+	 * Calculates the aspect ratio of the rectangle that has the given area and perimeter.
+	 * The side lengths of that rectangle are the zeroes of 2x^2 - (perimeter)x + 2(area) (see the notes in VisionMethods).
+	 * @param area The area of the particle.
+	 * @param perimeter The perimeter of the particle.
+	 * @return The long side of the equivalent rectangle divided by the short side.
+	 * Returns 1 if no such rectangle exists (i.e. the particle is more compact than a square).
+	 */
+	static double getEquivalentRectRatio(double area, double perimeter)
+	{
+		double discriminant = (perimeter * perimeter) - (16 * area);
+		if (area <= 0 || discriminant <= 0)
+			return 1;
+		double longSide = (perimeter + Math.sqrt(discriminant)) / 4;
+		double shortSide = (perimeter - Math.sqrt(discriminant)) / 4;
+		return (shortSide > 0) ? (longSide / shortSide) : 1;
+	}
+}
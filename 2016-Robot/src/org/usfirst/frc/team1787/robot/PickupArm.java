@@ -4,7 +4,6 @@ import edu.wpi.first.wpilibj.CANTalon;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * This class represents the pickup arm on the robot.
@@ -118,6 +117,10 @@ public class PickupArm
 	/** The value that indicates if the arm is currently moving towards region 2 from region 4.  */
 	private boolean movingTowardsApproachFromPickup = false;
 	
+	// SmartDashboard
+	/** Sends the pickup arm data to the SmartDashboard when it changes. */
+	private final DashboardPublisher dashboard = DashboardPublisher.getInstance();
+	
 	/**
 	 * Constructor for the PickupArm class
 	 * @param leftTalonID    ID of the talon on the right of the arm.
@@ -199,7 +202,7 @@ public class PickupArm
 	/**
 	 * Stops the arm.
 	 */
-	private void stopArm()
+	public void stopArm()
 	{
 		rightTalon.set(0);
 		leftTalon.set(0);
@@ -305,10 +308,10 @@ public class PickupArm
 	 */
 	public void putDataOnSmartDashboard()
 	{
-		SmartDashboard.putNumber("Current Region", currentRegion);
-		SmartDashboard.putBoolean("Region 0 LS Reading", reg_Store_LS_Is_Activated());
-		SmartDashboard.putBoolean("Region 4 LS Reading", reg_Pickup_LS_Is_Activated());
-		SmartDashboard.putBoolean("movingTowardsApproachFromStore", movingTowardsApproachFromStore);
-		SmartDashboard.putBoolean("movingTowardsApproachFromPickup", movingTowardsApproachFromPickup);
+		dashboard.putNumber("Current Region", currentRegion);
+		dashboard.putBoolean("Region 0 LS Reading", reg_Store_LS_Is_Activated());
+		dashboard.putBoolean("Region 4 LS Reading", reg_Pickup_LS_Is_Activated());
+		dashboard.putBoolean("movingTowardsApproachFromStore", movingTowardsApproachFromStore);
+		dashboard.putBoolean("movingTowardsApproachFromPickup", movingTowardsApproachFromPickup);
 	}
 }
\ No newline at end of file
@@ -72,7 +72,7 @@ public class Robot extends IterativeRobot
 	
 	// Arm Motion
 	/** The region that the pickup arm will move to. This value is set by buttons on the joystick during teleop. */
-	private int pickupArmDesiredRegion = -1; // Starts at -1 so that the arm doesn't move upon entering teleop unless it's told to.
+	private volatile int pickupArmDesiredRegion = -1; // Starts at -1 so that the arm doesn't move upon entering teleop unless it's told to.
 	
 	// Objects and variables used for the Wedge:
 	
@@ -92,6 +92,16 @@ public class Robot extends IterativeRobot
 	private Joystick stickB;
 	/** The USB port on the computer that stickB is connected to. */
 	public static final int JOSTICK_B_USB_PORT = 1;
+	/** The wedge toggle button, so holding it only toggles the wedge once. */
+	private EdgeButton wedgeToggleButton;
+	/** The camera feed toggle button, so holding it only switches cameras once. */
+	private EdgeButton camFeedToggleButton;
+	/** The image processing toggle button, so holding it only toggles image processing once. */
+	private EdgeButton imageProcessingToggleButton;
+	/** The image type toggle button, so holding it only toggles the image type once. */
+	private EdgeButton imageTypeToggleButton;
+	/** The camera settings toggle button, so holding it only toggles the settings once. */
+	private EdgeButton camSettingsToggleButton;
 	
 	// stickA & stickB Button Mapping
 	/** The button on both joysticks that will put the robot in high gear. */
@@ -153,14 +163,35 @@ public class Robot extends IterativeRobot
     
     // Objects and variables involving the camera:
     
-    /** The object which has methods to control the various camera functions / processes. */
+    /** The object which has methods to control the various camera functions / processes. Only used by the vision thread once robotInit is finished. */
     private VisionMethods visionMaster;
+    /** The object which runs all camera functions / processes on a separate thread and hands the results to the main loop. */
+    private VisionProcessor visionProcessor;
+    /** The capture time of the last vision result that was used to move the servos. Used to make sure each frame is only acted on once. */
+    private double lastVisionResultCaptureTime = 0;
     /** The name of the front camera as it is set in the roborio web interface ("roboRIO-1787-FRC.local"). */
     private static final String CAMERA_FRONT_NAME = "cam1";
     /** The name of the other camera as it is set in the roborio web interface ("roboRIO-1787-FRC.local"). */
     private static final String CAMERA_SIDE_NAME = "cam2";
+    /** A boolean indicating if the frames used for vision processing should be saved on the roborio so they can be replayed later with VisionReplay. */
+    private static final boolean RECORD_VISION_FRAMES = false;
+    /** The file on the roborio that vision frames are saved to. */
+    private static final String VISION_RECORDING_PATH = "/home/lvuser/vision-frames.bin";
+    /** A boolean indicating if the threshold, particle labeling, and measurements are done in java instead of by NIVision. NIVision is only kept as a fallback in case the java processing misbehaves. */
+    private static final boolean USE_JAVA_VISION_PROCESSING = true;
+    /** A boolean indicating if, once a goal has been found, only a window around it is processed. Only works with java processing. */
+    private static final boolean USE_VISION_TRACKING_MODE = true;
+    /** How many times smaller the image is shrunk to first look for the goal when searching the whole image (1 is off, 2 or 4 is on). Only works with java processing. 2 keeps the thin tape of a far away goal from being skipped over. */
+    private static final int VISION_PYRAMID_SEARCH_FACTOR = 2;
+    /** The number of active camera frames between grabbing a frame from the inactive camera to keep it streaming. 0 turns the keep-alive off. If switching cameras starts taking longer than a frame, try about 30 (once a second). */
+    private static final int CAMERA_KEEP_ALIVE_INTERVAL = 0;
+    /**
+     * The number of frames kept in the recording. Once it's full, the oldest frames are overwritten. 150 frames is about 5 seconds at 30 fps (about 46 MB).
+     * The recording is memory mapped, and the roborio only has 256 MB of RAM for the whole robot program, so don't go much over 200 frames (about 60 MB).
+     */
+    private static final int VISION_RECORDING_NUM_OF_FRAMES = 150;
     /** A boolean indicating if methods involving vision processing should be/are being called. */
-	private boolean imageProcessingActive = false;
+	private volatile boolean imageProcessingActive = false;
 	/** A boolean indicating if a binary image or a regular image should be drawn on and sent to the dashboard. */
 	private boolean sendBinaryImage = true;
 	/** The amount of pixels off center that is considered acceptable when locking on to a targed. */
@@ -174,9 +205,9 @@ public class Robot extends IterativeRobot
 	/** The side servo on the camera mount. */
 	private Servo sideServo = new Servo(SIDE_SERVO_PWM_PORT);
 	/** The angle of the bottom servo. */
-	private double bottomServoDesiredAngle = 95;
+	private volatile double bottomServoDesiredAngle = 95;
 	/** The angle of the side servo. */
-	private double sideServoDesiredAngle = 60;
+	private volatile double sideServoDesiredAngle = 60;
 	/** This is how many degrees off the bottom servo is from the angle it thinks it's at (ie setting the angle to 90 doesn't make the mount point at the front of the robot, but setting it to 95 does. It is 5 degrees off). This is only used when you want to know the actual angle of the servo. */
 	private final double BOTTOM_SERVO_OFFSET = 5;
 	/** This is how many degrees off the side servo is from the angle it thinks it's at (ie setting the angle to 90 doesn't make the mount level, but setting it to 85 does. It is -5 degrees off). This is only used when you want to know the actual angle of the servo. */
@@ -190,9 +221,66 @@ public class Robot extends IterativeRobot
 	/** The greatest angle the side servo should turn to. */
 	private final double SIDE_SERVO_UPPER_LIMIT = 130;
 	/** A boolean telling whether the camera is locked on to the target in the x dimension (horizontally). */
-	private boolean xLocked = false;
+	private volatile boolean xLocked = false;
 	/** A boolean telling whether the camera is locked on to the target in the y dimension (vertically). */
-	private boolean yLocked = false;
+	private volatile boolean yLocked = false;
+	/** How much the goal's angular velocity is expected to randomly change, in (degrees / second^2)^2. Used by both trackers. */
+	private final double TRACKER_PROCESS_NOISE = 400;
+	/** How much a single vision measurement is expected to be off by, in degrees^2. Used by both trackers. */
+	private final double TRACKER_MEASUREMENT_NOISE = 1.0;
+	/** How long the trackers keep the camera moving without seeing the goal before they stop, in seconds. */
+	private final double TRACKER_MAX_COAST_TIME = 0.5;
+	/** Estimates the bottom servo angle that points at the goal, between frames. Uses the gyro to keep up with the robot turning. */
+	private TargetTracker panTracker = new TargetTracker(TRACKER_PROCESS_NOISE, TRACKER_MEASUREMENT_NOISE, TRACKER_MAX_COAST_TIME);
+	/** Estimates the side servo angle that points at the goal, between frames. */
+	private TargetTracker tiltTracker = new TargetTracker(TRACKER_PROCESS_NOISE, TRACKER_MEASUREMENT_NOISE, TRACKER_MAX_COAST_TIME);
+	/** The number of servo angles remembered by each servo history. At 100 samples per second (the control loop's rate), this is about 1.3 seconds. */
+	private final int SERVO_HISTORY_SIZE = 128;
+	/** The recent angles the bottom servo was set to. Used to find where the camera was pointing when a frame was captured. */
+	private TimestampedHistory bottomServoHistory = new TimestampedHistory(SERVO_HISTORY_SIZE);
+	/** The recent angles the side servo was set to. Used to find where the camera was pointing when a frame was captured. */
+	private TimestampedHistory sideServoHistory = new TimestampedHistory(SERVO_HISTORY_SIZE);
+	
+	// Objects and variables involving the control loop:
+	
+	/** The time between runs of the control loop, in seconds. */
+	private static final double CONTROL_LOOP_PERIOD = 0.01;
+	/** Runs driving, the pickup arm, and the camera servos at a fixed rate on their own thread during teleop. */
+	private ControlLoop controlLoop;
+	/** Set by teleopInit so the control loop resets the gyro, the trackers, and the servo histories on its own thread before using them. */
+	private volatile boolean teleopControlResetRequested = false;
+	/**
+	 * Set as the last thing teleopInit does, and cleared when any other mode starts. The control loop only runs teleopControl() while this is set.
+	 * isOperatorControl() turns true before the main thread has run teleopInit, so checking it alone would let the control loop
+	 * use the drive base and the gyro while teleopInit (and the end of auto) is still using them.
+	 */
+	private volatile boolean teleopControlEnabled = false;
+	
+	// Objects and variables used to profile the loops:
+	
+	/** The section of teleopControl that drives the robot. */
+	private static final int CONTROL_SECTION_DRIVE = 0;
+	/** The section of teleopControl that shifts gears. */
+	private static final int CONTROL_SECTION_SHIFTING = 1;
+	/** The section of teleopControl that moves the pickup arm. */
+	private static final int CONTROL_SECTION_ARM = 2;
+	/** The section of teleopControl that spins the pickup wheels. */
+	private static final int CONTROL_SECTION_WHEELS = 3;
+	/** The section of teleopControl that uses the vision results to aim the camera. */
+	private static final int CONTROL_SECTION_VISION = 4;
+	/** Times each section of teleopControl. Only used by the control loop's thread. Named differently from the loop so their SmartDashboard keys (like "Control Overruns") don't collide. */
+	private LoopProfiler controlProfiler = new LoopProfiler("Control Sections", new String[] {"Drive", "Shifting", "Arm", "Wheels", "Vision"}, CONTROL_LOOP_PERIOD);
+	
+	/** The section of teleopPeriodic that puts data on the SmartDashboard. */
+	private static final int TELEOP_SECTION_DASHBOARD = 0;
+	/** The section of teleopPeriodic that moves the wedge. */
+	private static final int TELEOP_SECTION_WEDGE = 1;
+	/** The section of teleopPeriodic that handles the camera buttons. */
+	private static final int TELEOP_SECTION_CAMERA_TOGGLES = 2;
+	/** How long teleopPeriodic should take at most, in seconds. It's called every time a driver station packet arrives (every 20 ms). */
+	private static final double TELEOP_LOOP_BUDGET = 0.02;
+	/** Times each section of teleopPeriodic. */
+	private LoopProfiler teleopProfiler = new LoopProfiler("Teleop", new String[] {"Dashboard", "Wedge", "Camera Toggles"}, TELEOP_LOOP_BUDGET);
     
     // Objects and variables used for general testing.
     
@@ -220,19 +308,31 @@ public class Robot extends IterativeRobot
     private double testCounterX;
     private double testCounterY;
     
+    /** Logged every loop while manually controlling the servos in test mode. */
+    private static final int LOG_TEST_SERVO_ANGLES = EventLog.registerEvent("X: %.1f, Y: %.1f");
+    /** Logged when the PID turning test finishes a turn. */
+    private static final int LOG_TEST_TURN_FINISHED = EventLog.registerEvent("Sucessfully turned %.1f degrees!");
+    
     // Objects and variables used to test specific things.
     
     // Using gyro to turn with PID control.
     private PIDOutputCalc PIDTester;
     private double desiredDegrees;
+    /** The step of the PID turning test: 1) turning, 2) waiting for the robot to stop, 3) waiting for the gyro after it's reset. */
+    private int testTurnStep = 1;
+    /** The wait used between the steps of the PID turning test. */
+    private WaitStep testWait = new WaitStep();
+    /** How long, in seconds, the PID turning test waits after finishing a turn, and again after resetting the gyro. */
+    private static final double TEST_TURN_SETTLE_TIME = 1;
     
-    // Gyro aided tracking
-    boolean bothLocked = false;
-    double lastGyroAngle = 0.0;
-    double gyroDampener;
     
     // Miscellaneous objects and variables:
     
+    /** Sends values to the SmartDashboard only when they change, at a fixed rate, on its own thread. */
+    private DashboardPublisher dashboard = DashboardPublisher.getInstance();
+    /** The file on the roborio that the event log is written to (as well as the console). */
+    private static final String EVENT_LOG_PATH = "/home/lvuser/event-log.txt";
+    
 	/** Don't ask. */
 	protected int farfar37;
 	
@@ -245,6 +345,10 @@ public class Robot extends IterativeRobot
      */
     public void robotInit()
     {	
+    	// Start writing out the event log, and sending changed values to the SmartDashboard, in the background
+    	EventLog.start(EVENT_LOG_PATH);
+    	dashboard.start();
+    	
     	// Construct the DrivingDevices
     	driveControl = new DrivingDevices(TALON_DRIVE_BR_ID, TALON_DRIVE_BL_ID, TALON_DRIVE_FR_ID, TALON_DRIVE_FL_ID, 
     			SOL_GEAR_SHIFTING_PCM_PORT, LEFT_ENCODER_DIO_PORT_A, LEFT_ENCODER_DIO_PORT_B, 
@@ -260,9 +364,27 @@ public class Robot extends IterativeRobot
     	// Construct the Joysticks
     	stickA = new Joystick(JOYSTICK_A_USB_PORT);
     	stickB = new Joystick(JOSTICK_B_USB_PORT);
+    	wedgeToggleButton = new EdgeButton(stickB, JOYSTICK_B_WEDGE_TOGGLE);
+    	camFeedToggleButton = new EdgeButton(stickB, JOYSTICK_B_CAMERA_FEED_TOGGLE);
+    	imageProcessingToggleButton = new EdgeButton(stickB, JOYSTICK_B_IMAGE_PROCESSING_TOGGLE);
+    	imageTypeToggleButton = new EdgeButton(stickB, JOYSTICK_B_IMAGE_TYPE_TOGGLE);
+    	camSettingsToggleButton = new EdgeButton(stickB, JOYSTICK_B_CAMERA_SETTINGS_TOGGLE);
     	
-    	// Construct the VisionMethods
+    	// Construct the VisionMethods, and start processing on its own thread
     	visionMaster = new VisionMethods(CAMERA_FRONT_NAME, CAMERA_SIDE_NAME);
+    	visionMaster.setJavaProcessingActive(USE_JAVA_VISION_PROCESSING);
+    	visionMaster.setTrackingModeActive(USE_VISION_TRACKING_MODE);
+    	visionMaster.setPyramidSearchFactor(VISION_PYRAMID_SEARCH_FACTOR);
+    	visionMaster.setCamKeepAliveInterval(CAMERA_KEEP_ALIVE_INTERVAL);
+    	if (RECORD_VISION_FRAMES)
+    		visionMaster.startRecording(VISION_RECORDING_PATH, VISION_RECORDING_NUM_OF_FRAMES);
+    	visionProcessor = new VisionProcessor(visionMaster);
+    	visionProcessor.start();
+    	
+    	// Construct the control loop, and start it on its own thread. It only does anything while the robot is enabled in teleop.
+    	controlLoop = new ControlLoop("Control", CONTROL_LOOP_PERIOD);
+    	controlLoop.addTask(new TeleopControlTask());
+    	controlLoop.start();
     	
     	// Construct the AutoMethods
     	autoMethods = new AutoMethods(driveControl, arm, wedge);
@@ -295,6 +417,8 @@ public class Robot extends IterativeRobot
 	 */
     public void autonomousInit()
     {
+    	teleopControlEnabled = false;
+    	
     	// Get the selected starting position from the smart dashboard
     	startingPosition =  (int) autonomousPositionChooser.getSelected();
     	
@@ -307,11 +431,11 @@ public class Robot extends IterativeRobot
 		// Put the robot in low gear for better control while going over defenses
     	driveControl.setLowGear();
 		
-		// Make sure that all auto processes will execute step 1 when initially called
-		autoMethods.resetStepCounts();
-		
 		// Reset the encoders and the gyro
 		driveControl.resetEncodersAndGyro();
+		
+		// Build the auto routine for the chosen options and start it
+		autoMethods.startAuto(startingPosition, defenseInStartingPosition, tryToScore);
     }
     
     /** 
@@ -319,8 +443,7 @@ public class Robot extends IterativeRobot
      */
     public void autonomousPeriodic()
     {
-    	if (startingPosition != 0) // A startingPosition of 0 indicates the driver chose "No Autonomous" from the smart dashboard
-    		autoMethods.runAuto(startingPosition, defenseInStartingPosition, tryToScore);
+    	autoMethods.runAuto();
     }
     
     /**
@@ -328,54 +451,146 @@ public class Robot extends IterativeRobot
      */
     public void teleopInit()
     {
+    	teleopControlEnabled = false; // Should already be cleared by disabledInit, but the control loop must not run until this is done.
+    	autoMethods.stopAuto(); // In case auto didn't finish
     	driveControl.setLowGear();
-    	driveControl.resetEncodersAndGyro();
     	pickupArmDesiredRegion = -1; // Ensures the pickup arm only begins to move when we tell it to.
-    	bottomServo.setAngle(bottomServoDesiredAngle); // Start with the camera looking up so it can find a goal.
-    	sideServo.setAngle(sideServoDesiredAngle); // Start with the camera looking up so it can find a goal.
+    	// Buttons held down while teleop starts shouldn't count as presses.
+    	wedgeToggleButton.reset();
+    	camFeedToggleButton.reset();
+    	imageProcessingToggleButton.reset();
+    	imageTypeToggleButton.reset();
+    	camSettingsToggleButton.reset();
     	/*
     	visionMaster.setHSVThreshold(
-    			prefs.getInt("HMin", 0), prefs.getInt("HMax", 360), 
+    			prefs.getInt("HMin", 0), prefs.getInt("HMax", 255), 
     			prefs.getInt("SMin", 0), prefs.getInt("SMax", 255), 
     			prefs.getInt("VMin", 0), prefs.getInt("VMax", 255));
     	*/
-    	//visionMaster.setControlLoopDampener(prefs.getDouble("vision dampener", 0.83));
     	xLocked = false;
     	yLocked = false;
-    	SmartDashboard.putBoolean("X Locked", xLocked);
-    	SmartDashboard.putBoolean("Y Locked", yLocked);
-
-    	//gyroDampener = prefs.getDouble("gyroDampener", 0.5); // Used to help adjust gyro aided tracking.
-    	//System.out.println("Gyro Dampener: "+gyroDampener); // Used to help adjust gyro aided tracking.
-    	bothLocked = false; // Used for gyro aided tracking
-    	lastGyroAngle = 0.0; // Used for gyro aided tracking
+    	dashboard.putBoolean("X Locked", xLocked);
+    	dashboard.putBoolean("Y Locked", yLocked);
+    	
+    	// The gyro, trackers, servos, and histories belong to the control loop's thread, so it resets them itself.
+    	teleopControlResetRequested = true;
+    	teleopControlEnabled = true;
     }
     
     /**
      * This function is called periodically while the robot is in teleop mode.
+     * Driving, the pickup arm, and the camera servos are handled by teleopControl() on the control loop's thread instead.
      */
     public void teleopPeriodic()
     {
     	// Note: Try to keep this to simply method calls triggered by buttons. Doing so will maintain readability.
+    	teleopProfiler.startLoop();
+    	
+    	// Driving Data
+    	teleopProfiler.start(TELEOP_SECTION_DASHBOARD);
+    	driveControl.putDataOnSmartDashboard();
+    	
+    	// Arm Data
+    	// arm.putDataOnSmartDashboard(); // <- Used for testing arm stuff
+    	teleopProfiler.stop(TELEOP_SECTION_DASHBOARD);
+    	
+    	// Functions specific to Joystick B
+    	
+    	// Wedge
+    	teleopProfiler.start(TELEOP_SECTION_WEDGE);
+    	wedgeToggleButton.update();
+    	if (stickB.getRawButton(JOYSTICK_B_WEDGE_DEPLOY))
+    		wedge.deploy();
+    	else if (stickB.getRawButton(JOYSTICK_B_WEDGE_RETRACT))
+    		wedge.retract();
+    	else if (wedgeToggleButton.wasPressed())
+    		wedge.toggle();
+    	wedge.checkWedgeTimer();
+    	teleopProfiler.stop(TELEOP_SECTION_WEDGE);
+    	
+    	// Cameras
+    	teleopProfiler.start(TELEOP_SECTION_CAMERA_TOGGLES);
+    	camFeedToggleButton.update();
+    	imageProcessingToggleButton.update();
+    	imageTypeToggleButton.update();
+    	camSettingsToggleButton.update();
+    	if (camFeedToggleButton.wasPressed()) // Toggles which camera feed is in use
+    		visionProcessor.requestCamFeedToggle();
+    	if (imageProcessingToggleButton.wasPressed())
+    	{
+    		imageProcessingActive = !imageProcessingActive;
+    		visionProcessor.setImageProcessingActive(imageProcessingActive);
+    		xLocked = false;
+    		yLocked = false;
+    		dashboard.putBoolean("X Locked", xLocked);
+    		dashboard.putBoolean("Y Locked", yLocked);
+    	}
+    	if (imageTypeToggleButton.wasPressed())
+    	{
+    		sendBinaryImage = ! sendBinaryImage;
+    		visionProcessor.setSendBinaryImage(sendBinaryImage);
+    	}
+    	if (camSettingsToggleButton.wasPressed()) // The camera changes in the background.
+    		visionProcessor.requestCamSettingsToggle();
+    	dashboard.putBoolean("Camera Settings Ready", visionProcessor.getCamSettingsState() == CameraSettingsApplier.STATE_SETTLED);
+    	teleopProfiler.stop(TELEOP_SECTION_CAMERA_TOGGLES);
+    	
+    	teleopProfiler.endLoop();
+    }
+    
+    /**
+     * Runs teleopControl() on the control loop's thread, but only while the robot is enabled in teleop and teleopInit has finished.
+     */
+    private class TeleopControlTask implements ControlTask
+    {
+    	public void update(double dt)
+    	{
+    		if (teleopControlEnabled && isOperatorControl() && isEnabled())
+    			teleopControl(dt);
+    	}
+    }
+    
+    /**
+     * Drives the robot, moves the pickup arm, and aims the camera servos. Called by the control loop at a fixed rate during teleop,
+     * so the trackers get an even time step instead of whenever the driver station's packets arrive.
+     * Only this thread touches the drive motors, arm, servos, trackers, and gyro during teleop.
+     * @param dt The measured time, in seconds, since the last loop.
+     */
+    private void teleopControl(double dt)
+    {
+    	controlProfiler.startLoop();
+    	if (teleopControlResetRequested)
+    	{
+    		teleopControlResetRequested = false;
+    		driveControl.resetEncodersAndGyro();
+    		bottomServo.setAngle(bottomServoDesiredAngle); // Start with the camera looking up so it can find a goal.
+    		sideServo.setAngle(sideServoDesiredAngle); // Start with the camera looking up so it can find a goal.
+    		panTracker.reset();
+    		tiltTracker.reset();
+    		bottomServoHistory.clear();
+    		sideServoHistory.clear();
+    	}
     	
     	// Driving
+    	controlProfiler.start(CONTROL_SECTION_DRIVE);
     	if (stickA.getMagnitude() > stickB.getMagnitude()) // Lets only one stick be used to drive at a time.
     		driveControl.arcadeDrivePickupArmInFront(stickA);
     	else
     		driveControl.arcadeDriveWedgeInFront(stickB); 
+    	controlProfiler.stop(CONTROL_SECTION_DRIVE);
     	
     	// Shifting Gears
+    	controlProfiler.start(CONTROL_SECTION_SHIFTING);
     	if (stickA.getRawButton(JOYSTICK_HIGH_GEAR) || stickB.getRawButton(JOYSTICK_HIGH_GEAR))
     		driveControl.setHighGear();
     	else if (stickA.getRawButton(JOYSTICK_LOW_GEAR) || stickB.getRawButton(JOYSTICK_LOW_GEAR))
     		driveControl.setLowGear();
-    	
-    	// Driving Data
-    	driveControl.putDataOnSmartDashboard();
+    	controlProfiler.stop(CONTROL_SECTION_SHIFTING);
     	
     	// Functions specific to Joystick A
     	
     	// Pickup Arm
+    	controlProfiler.start(CONTROL_SECTION_ARM);
 		if (stickA.getRawButton(JOYSTICK_A_PICKUP_ARM_STORE))
 			pickupArmDesiredRegion = PickupArm.REG_STORE;
 		else if (stickA.getRawButton(JOYSTICK_A_PICKUP_ARM_APPROACH))
@@ -396,121 +611,115 @@ public class Robot extends IterativeRobot
 		
 		if (pickupArmDesiredRegion >= 0) // Used to see if an arm region button has been pressed in teleop yet.
 			arm.moveToRegion(pickupArmDesiredRegion);
+		controlProfiler.stop(CONTROL_SECTION_ARM);
     	
     	// Pickup Wheels
+    	controlProfiler.start(CONTROL_SECTION_WHEELS);
     	if (stickA.getRawButton(JOYSTICK_A_PICKUP_WHEELS_FORWARDS) || (arm.getCurrentRegion() == 4 && stickA.getRawButton(JOYSTICK_A_PICKUP_ARM_PICKUP)))
     		arm.spinPickupWheels(PickupArm.WHEELS_PICKUP); 
     	else if (stickA.getRawButton(JOYSTICK_A_PICKUP_WHEELS_BACKWARDS))
     		arm.spinPickupWheels(PickupArm.WHEELS_EJECT);
     	else
     		arm.stopPickupWheels();
-    	    	
-    	// Arm Data
-    	// arm.putDataOnSmartDashboard(); // <- Used for testing arm stuff
-    	
-    	// Functions specific to Joystick B
-    	
-    	// Wedge
-    	if (stickB.getRawButton(JOYSTICK_B_WEDGE_DEPLOY))
-    		wedge.deploy();
-    	else if (stickB.getRawButton(JOYSTICK_B_WEDGE_RETRACT))
-    		wedge.retract();
-    	else if (stickB.getRawButton(JOYSTICK_B_WEDGE_TOGGLE))
-    		wedge.toggle();
-    	wedge.checkWedgeTimer();
+    	controlProfiler.stop(CONTROL_SECTION_WHEELS);
     	
-    	// Cameras
-    	if (stickB.getRawButton(JOYSTICK_B_CAMERA_FEED_TOGGLE)) // Toggles which camera feed is in use
-    		visionMaster.toggleActiveCamFeed();
-    	if (stickB.getRawButton(JOYSTICK_B_IMAGE_PROCESSING_TOGGLE))
-    	{
-    		imageProcessingActive = !imageProcessingActive;
-    		xLocked = false;
-    		yLocked = false;
-    		SmartDashboard.putBoolean("X Locked", xLocked);
-    		SmartDashboard.putBoolean("Y Locked", yLocked);
-    		testTimer.delay(1); // Prevent imageProcessingActive from switching super quickly if the button is held down
-    	}
-    	if (stickB.getRawButton(JOYSTICK_B_IMAGE_TYPE_TOGGLE))
-    		sendBinaryImage = ! sendBinaryImage;
-    	if (stickB.getRawButton(JOYSTICK_B_CAMERA_SETTINGS_TOGGLE))
-    	{
-    		visionMaster.toggleCamSettings();
-    		testTimer.delay(2); // Gives the camera time to update settings.
-    	}
+    	// Move the trackers forward every loop, whether or not there's a new frame.
+    	controlProfiler.start(CONTROL_SECTION_VISION);
+    	// When the robot turns right (gyro angle going up), the goal moves left relative to the robot, which is a lower bottom servo angle.
+    	double now = Timer.getFPGATimestamp();
+    	driveControl.recordGyroAngle();
+    	panTracker.predict(dt, -driveControl.getGyro().getRate());
+    	tiltTracker.predict(dt, 0);
     	
     	if (imageProcessingActive && (pickupArmDesiredRegion == -1 || pickupArmDesiredRegion == arm.getCurrentRegion()))
     	{
-    		if (bothLocked) // Used for gyro aided tracking
+    		// The vision thread does all of the processing. Here we only read its latest result, and only act on each frame once.
+    		VisionResult target = visionProcessor.getLatestResult();
+    		if (target.getCaptureTime() > lastVisionResultCaptureTime)
     		{
-    			double gyroAngleDifference = lastGyroAngle - driveControl.getGyro().getAngle();
-    			bottomServoDesiredAngle += (gyroAngleDifference * gyroDampener);
-    			bottomServo.setAngle(bottomServoDesiredAngle);
-    			lastGyroAngle = driveControl.getGyro().getAngle();
-    		}
-    		
-    		visionMaster.performHSVFilter();
-    		visionMaster.removeSmallParticles();
-    		if (visionMaster.getNumOfParticles() > 0) // if there is at least 1 particle, look for the biggest one.
-    		{
-    			visionMaster.findLargestParticle();
-				if (visionMaster.performAspectRatioTest()) // if the biggest particle is a goal, track it.
+    			lastVisionResultCaptureTime = target.getCaptureTime();
+				if (target.isTargetFound()) // if a goal was found in the frame, correct the trackers with where it was seen.
 				{
-					// Horizontal
-					if (visionMaster.getCenterOfMassX(visionMaster.getCurrentParticle()) < visionMaster.centerOfImage.x - ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER ||
-						visionMaster.getCenterOfMassX(visionMaster.getCurrentParticle()) > visionMaster.centerOfImage.x + ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER) // if the goal is to the left or right of center, turn appropriately.
-					{
-						int errorInPixels = visionMaster.getCenterOfMassX(visionMaster.getCurrentParticle()) - visionMaster.centerOfImage.x;
-						double errorInDegrees = visionMaster.getDampenedErrorInDegreesX(errorInPixels);
-						bottomServoDesiredAngle += errorInDegrees;
-						
-						if (bottomServoDesiredAngle < BOTTOM_SERVO_LOWER_LIMIT)
-							bottomServoDesiredAngle = BOTTOM_SERVO_LOWER_LIMIT;
-						else if (bottomServoDesiredAngle > BOTTOM_SERVO_UPPER_LIMIT)
-							bottomServoDesiredAngle = BOTTOM_SERVO_UPPER_LIMIT;
-					}
-					else
-						xLocked = true;
-						
-					// Vertical
-					if (visionMaster.getCenterOfMassY(visionMaster.getCurrentParticle()) < visionMaster.centerOfImage.y - ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER ||
-						visionMaster.getCenterOfMassY(visionMaster.getCurrentParticle()) > visionMaster.centerOfImage.y + ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER) // if the goal is too high or too low, turn accordingly.
-					{
-						int errorInPixels = visionMaster.getCenterOfMassY(visionMaster.getCurrentParticle()) - visionMaster.centerOfImage.y;
-						double errorInDegrees = visionMaster.getDampenedErrorInDegreesY(errorInPixels);
-						sideServoDesiredAngle += errorInDegrees;
-						
-						if (sideServoDesiredAngle < SIDE_SERVO_LOWER_LIMIT)
-							sideServoDesiredAngle = SIDE_SERVO_LOWER_LIMIT;
-						else if (sideServoDesiredAngle > SIDE_SERVO_UPPER_LIMIT)
-							sideServoDesiredAngle = SIDE_SERVO_UPPER_LIMIT;
-					}
-					else
-						yLocked = true;
+					// The frame was captured a while ago, so the error is measured from where the camera was pointing back then, not where it's pointing now.
+					double captureTime = target.getCaptureTime();
 					
-					if (xLocked && yLocked) // Used for gyro aided tracking
-					{
-						if (!bothLocked)
-							driveControl.resetEncodersAndGyro();
-						bothLocked = true;
-					}
+					// Horizontal
+					// Any turning the robot has done since the frame was captured moves the goal the other way relative to the robot.
+					int errorInPixelsX = target.getCenterOfMassX() - visionMaster.centerOfImage.x;
+					double turnSinceCapture = driveControl.getGyroAngleAt(now) - driveControl.getGyroAngleAt(captureTime);
+					panTracker.correct(getServoAngleAt(bottomServoHistory, captureTime, bottomServoDesiredAngle) + visionMaster.getErrorInDegreesX(errorInPixelsX) - turnSinceCapture);
+					xLocked = Math.abs(errorInPixelsX) <= ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER;
 					
-					SmartDashboard.putBoolean("X Locked", xLocked);
-					SmartDashboard.putBoolean("Y Locked", yLocked);
-					xLocked = false;
-					yLocked = false;
+					// Vertical
+					int errorInPixelsY = target.getCenterOfMassY() - visionMaster.centerOfImage.y;
+					tiltTracker.correct(getServoAngleAt(sideServoHistory, captureTime, sideServoDesiredAngle) + visionMaster.getErrorInDegreesY(errorInPixelsY));
+					yLocked = Math.abs(errorInPixelsY) <= ACCEPTABLE_NUM_OF_PIXELS_OFF_CENTER;
 					
-					bottomServo.setAngle(bottomServoDesiredAngle);
-		    		sideServo.setAngle(sideServoDesiredAngle);
+					dashboard.putBoolean("X Locked", xLocked);
+					dashboard.putBoolean("Y Locked", yLocked);
 				}
     		}
-    		if (sendBinaryImage)
-    			visionMaster.sendProcessedImageToDashboard();
-    		else
-    			visionMaster.sendHybridImageToDashboard();
+    		
+    		// Point the camera where the trackers think the goal is now. This happens every loop, so the servos move smoothly between frames.
+    		if (panTracker.isTracking())
+    		{
+    			bottomServoDesiredAngle = limit(panTracker.getAngle(), BOTTOM_SERVO_LOWER_LIMIT, BOTTOM_SERVO_UPPER_LIMIT);
+    			bottomServo.setAngle(bottomServoDesiredAngle);
+    		}
+    		if (tiltTracker.isTracking())
+    		{
+    			sideServoDesiredAngle = limit(tiltTracker.getAngle(), SIDE_SERVO_LOWER_LIMIT, SIDE_SERVO_UPPER_LIMIT);
+    			sideServo.setAngle(sideServoDesiredAngle);
+    		}
     	}
-    	else if (!imageProcessingActive)
-    		visionMaster.sendRegularImageToDashboard();	
+    	else // Frames captured while the arm is moving the camera mount out of the way aren't useful for aiming.
+    		lastVisionResultCaptureTime = Timer.getFPGATimestamp();
+    	
+    	// Remember where the servos were told to point this loop, so later frames can be matched up with where the camera was pointing.
+    	bottomServoHistory.add(now, bottomServoDesiredAngle);
+    	sideServoHistory.add(now, sideServoDesiredAngle);
+    	controlProfiler.stop(CONTROL_SECTION_VISION);
+    	
+    	controlProfiler.endLoop();
+    }
+    
+    /**
+     * Gets the angle a servo was set to at a time in the recent past.
+     * @param history The servo's history.
+     * @param time The FPGA time, in seconds.
+     * @param currentAngle The angle the servo is set to now. Used if there's no history yet.
+     * @return The servo angle at that time, in degrees.
+     */
+    private double getServoAngleAt(TimestampedHistory history, double time, double currentAngle)
+    {
+    	if (history.isEmpty())
+    		return currentAngle;
+    	return history.getValueAt(time);
+    }
+    
+    /**
+     * Keeps a value between a lower and upper limit.
+     * @param value The value to limit.
+     * @param lowerLimit The lowest the value can be.
+     * @param upperLimit The highest the value can be.
+     * @return The value, or the closest limit if it's outside of them.
+     */
+    private double limit(double value, double lowerLimit, double upperLimit)
+    {
+    	if (value < lowerLimit)
+    		return lowerLimit;
+    	else if (value > upperLimit)
+    		return upperLimit;
+    	else
+    		return value;
+    }
+    
+    /**
+     * This method is run once when the robot is disabled.
+     */
+    public void disabledInit()
+    {
+    	teleopControlEnabled = false;
     }
     
     /**
@@ -518,7 +727,10 @@ public class Robot extends IterativeRobot
      */
     public void testInit()
     {
+    	teleopControlEnabled = false;
     	testMode = 0;
+    	testTurnStep = 1;
+    	testWait.cancel();
     	driveControl.resetEncoders();
     	driveControl.getGyro().calibrate();
     	
@@ -579,21 +791,37 @@ public class Robot extends IterativeRobot
     	else if (testMode == 2) // Test PID turning.
     	{
     		PIDTester.putDataOnSmartDashboard();
-        	SmartDashboard.putNumber("Gyro Angle (Test)", driveControl.getGyro().getAngle());
+        	dashboard.putNumber("Gyro Angle (Test)", driveControl.getGyro().getAngle());
         	
-    		PIDTester.calculateError(desiredDegrees, driveControl.getGyro().getAngle());
-    		if (!PIDTester.errorIsAcceptable())
+    		if (testTurnStep == 1) // Turning
     		{
-    			driveControl.arcadeDriveCustomValues(0, PIDTester.generateOutput());
+    			PIDTester.calculateError(desiredDegrees, driveControl.getGyro().getAngle());
+    			if (!PIDTester.errorIsAcceptable())
+    			{
+    				driveControl.arcadeDriveCustomValues(0, PIDTester.generateOutput());
+    			}
+    			else
+    			{
+    				driveControl.stop();
+    				EventLog.log(LOG_TEST_TURN_FINISHED, desiredDegrees);
+    				testTurnStep++;
+    			}
+    		}
+    		else if (testTurnStep == 2) // Let the robot stop moving before resetting the gyro.
+    		{
+    			driveControl.stop();
+    			if (testWait.waitFor(TEST_TURN_SETTLE_TIME))
+    			{
+    				PIDTester.reset();
+    				driveControl.resetEncodersAndGyro();
+    				testTurnStep++;
+    			}
     		}
-    		else
+    		else if (testTurnStep == 3) // Let the gyro settle after being reset before turning again.
     		{
     			driveControl.stop();
-    			System.out.println("Sucessfully turned "+desiredDegrees+" degrees!");
-    			testTimer.delay(1);
-    			PIDTester.reset();
-    			driveControl.resetEncodersAndGyro();
-    			testTimer.delay(1);
+    			if (testWait.waitFor(TEST_TURN_SETTLE_TIME))
+    				testTurnStep = 1;
     		}
     	}
     	else if (testMode == 3) // Manually control servos.
@@ -614,8 +842,7 @@ public class Robot extends IterativeRobot
     			testCounterY = 90 + SIDE_SERVO_OFFSET;
     		}
     		
-    		System.out.println("X: "+testCounterX);
-    		System.out.println("Y: "+testCounterY);
+    		EventLog.log(LOG_TEST_SERVO_ANGLES, testCounterX, testCounterY);
     		
     		bottomServo.setAngle(testCounterX);
     		sideServo.setAngle(testCounterY);
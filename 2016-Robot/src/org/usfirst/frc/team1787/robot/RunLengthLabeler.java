@@ -0,0 +1,463 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class finds and measures the particles in a bit packed binary image by working on runs instead of pixels.
+ * It gives the same results as the pixel by pixel ParticleLabeler it replaced, which is now only kept in the benchmarks to compare against
+ * (connectivity8, optional hole filling, and a filter on area by image area).
+ *
+ * A run is a group of pixels that are on, next to each other in the same row. The image is first turned into a list of runs
+ * (BitPackedImage.getRowRuns skips a whole long of empty pixels at once). Everything after that only looks at the runs:
+ * two runs in neighboring rows are part of the same particle if they touch (including diagonally),
+ * and area, center of mass, bounding box, and perimeter are all added up a run at a time.
+ * The retroreflective tape is only a small part of the image, so there are usually only a few hundred runs,
+ * and the work depends on how many pixels are lit instead of on the 76,800 pixels in the image.
+ *
+ * The perimeter is the same estimate ParticleLabeler used: the number of pixel edges that touch the background.
+ * For a run, that's 2 (the ends) plus the pixels that don't have a lit pixel above them plus the pixels that don't have one below them.
+ *
+ * Every buffer is created in the constructor, so labeling a frame never creates any new objects.
+ */
+public class RunLengthLabeler
+{
+	/** The width of the images this labeler works on. */
+	private final int width;
+	/** The height of the images this labeler works on. */
+	private final int height;
+
+	// Runs (sorted by row, then by X). End coordinates are exclusive.
+	private final int[] runStart;
+	private final int[] runEnd;
+	/** The index of the first run in each row of the window. The runs in row y are firstRunOfRow[y - windowTop] up to firstRunOfRow[y - windowTop + 1]. */
+	private final int[] firstRunOfRow;
+	/** The number of runs in the current image. */
+	private int numOfRuns;
+
+	/** The union-find parent of every run. A run that is its own parent is the root of its particle. */
+	private final int[] parent;
+	/** The particle ID of each root run. -1 means the particle was removed by the filter. */
+	private final int[] particleIDOfRun;
+
+	// Per-run totals (only the roots' totals mean anything after combining)
+	private final int[] area;
+	private final long[] sumX;
+	private final long[] sumY;
+	private final int[] minX;
+	private final int[] maxX;
+	private final int[] minY;
+	private final int[] maxY;
+	private final int[] perimeter;
+
+	// Hole filling. A gap is a run of background pixels, including the ones before the first run and after the last run of a row.
+	private final int[] gapStart;
+	private final int[] gapEnd;
+	private final int[] firstGapOfRow;
+	private final int[] gapParent;
+	private final boolean[] gapTouchesBorder;
+
+	// Window (right and bottom are exclusive)
+	private int windowLeft;
+	private int windowTop;
+	private int windowRight;
+	private int windowBottom;
+
+	// Filter Options
+	/** A boolean indicating if holes in particles should be filled in before measuring. */
+	private boolean fillHoles = true;
+	/** The smallest area a particle can have, as a percentage of the image area, without being removed by the filter. */
+	private double minAreaPercentage = 0.1;
+	/** The largest area a particle can have, as a percentage of the image area, without being removed by the filter. */
+	private double maxAreaPercentage = 100.0;
+
+	/**
+	 * Constructor for the RunLengthLabeler class.
+	 * @param imageWidth The width of the images that will be labeled.
+	 * @param imageHeight The height of the images that will be labeled.
+	 */
+	public RunLengthLabeler(int imageWidth, int imageHeight)
+	{
+		width = imageWidth;
+		height = imageHeight;
+		int maxRuns = ((width + 1) / 2) * height; // A run needs at least one off pixel after it, so there are at most (width + 1) / 2 per row.
+		int maxGaps = maxRuns + height; // There is one more gap than run in every row.
+
+		runStart = new int[maxRuns];
+		runEnd = new int[maxRuns];
+		firstRunOfRow = new int[height + 1];
+		parent = new int[maxRuns];
+		particleIDOfRun = new int[maxRuns];
+		area = new int[maxRuns];
+		sumX = new long[maxRuns];
+		sumY = new long[maxRuns];
+		minX = new int[maxRuns];
+		maxX = new int[maxRuns];
+		minY = new int[maxRuns];
+		maxY = new int[maxRuns];
+		perimeter = new int[maxRuns];
+
+		gapStart = new int[maxGaps];
+		gapEnd = new int[maxGaps];
+		firstGapOfRow = new int[height + 1];
+		gapParent = new int[maxGaps];
+		gapTouchesBorder = new boolean[maxGaps];
+	}
+
+	/**
+	 * Sets the options used by filterAndMeasureParticles.
+	 * @param fill If holes in particles should be filled in.
+	 * @param minPercentage The smallest area a particle can have, as a percentage of the image area.
+	 * @param maxPercentage The largest area a particle can have, as a percentage of the image area.
+	 */
+	public void setFilterOptions(boolean fill, double minPercentage, double maxPercentage)
+	{
+		fillHoles = fill;
+		minAreaPercentage = minPercentage;
+		maxAreaPercentage = maxPercentage;
+	}
+
+	/**
+	 * Fills holes in particles, removes particles whose area is outside the filter's bounds, and measures the remaining particles,
+	 * only looking at the given window of the image. The image is changed to match the result, just like imaqParticleFilter4.
+	 * The area filter is still based on the area of the whole image.
+	 * @param binaryImage The binary image.
+	 * @param results Where the measurements of the remaining particles are put.
+	 * @param left The leftmost X coordinate of the window.
+	 * @param top The topmost Y coordinate of the window.
+	 * @param windowWidth The width of the window.
+	 * @param windowHeight The height of the window.
+	 * @return The number of particles remaining in the window.
+	 */
+	public int filterAndMeasureParticles(BitPackedImage binaryImage, ParticleMeasurements results, int left, int top, int windowWidth, int windowHeight)
+	{
+		setWindow(left, top, windowWidth, windowHeight);
+		findRuns(binaryImage);
+		if (fillHoles && fillHoles())
+			writeRuns(binaryImage);
+		int numOfParticles = labelAndMeasure(results, minAreaPercentage, maxAreaPercentage);
+		if (numOfParticles < countRoots())
+			writeRuns(binaryImage);
+		return numOfParticles;
+	}
+
+	/**
+	 * Measures every particle in the given window of the image without filtering or changing it.
+	 * @param binaryImage The binary image.
+	 * @param results Where the measurements of the particles are put.
+	 * @param left The leftmost X coordinate of the window.
+	 * @param top The topmost Y coordinate of the window.
+	 * @param windowWidth The width of the window.
+	 * @param windowHeight The height of the window.
+	 * @return The number of particles in the window.
+	 */
+	public int measureParticles(BitPackedImage binaryImage, ParticleMeasurements results, int left, int top, int windowWidth, int windowHeight)
+	{
+		setWindow(left, top, windowWidth, windowHeight);
+		findRuns(binaryImage);
+		return labelAndMeasure(results, 0, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Gets the number of runs found in the last image labeled.
+	 * @return The number of runs.
+	 */
+	public int getNumOfRuns()
+	{
+		return numOfRuns;
+	}
+
+	/**
+	 * Sets the window that will be labeled, clipped to the edges of the image.
+	 */
+	private void setWindow(int left, int top, int windowWidth, int windowHeight)
+	{
+		windowLeft = Math.max(0, left);
+		windowTop = Math.max(0, top);
+		windowRight = Math.min(width, left + windowWidth);
+		windowBottom = Math.min(height, top + windowHeight);
+	}
+
+	/**
+	 * Fills the run list with every run inside the window. Runs that cross the edge of the window are cut off at the edge.
+	 */
+	private void findRuns(BitPackedImage binaryImage)
+	{
+		numOfRuns = 0;
+		for (int y = windowTop; y < windowBottom; y++)
+		{
+			firstRunOfRow[y - windowTop] = numOfRuns;
+			int rowEnd = binaryImage.getRowRuns(y, runStart, runEnd, numOfRuns);
+
+			// Keep only the parts of the runs that are inside the window.
+			for (int i = numOfRuns; i < rowEnd; i++)
+			{
+				int start = Math.max(runStart[i], windowLeft);
+				int end = Math.min(runEnd[i], windowRight);
+				if (start < end)
+				{
+					runStart[numOfRuns] = start;
+					runEnd[numOfRuns] = end;
+					numOfRuns++;
+				}
+			}
+		}
+		firstRunOfRow[windowBottom - windowTop] = numOfRuns;
+	}
+
+	/**
+	 * Writes the current run list back into the window of the image, so the image matches any holes that were filled
+	 * and particles that were removed. Removed particles have a particle ID of -1 and are left out.
+	 */
+	private void writeRuns(BitPackedImage binaryImage)
+	{
+		for (int y = windowTop; y < windowBottom; y++)
+		{
+			binaryImage.clearRange(y, windowLeft, windowRight);
+			for (int i = firstRunOfRow[y - windowTop]; i < firstRunOfRow[y - windowTop + 1]; i++)
+			{
+				if (particleIDOfRun[find(parent, i)] >= 0)
+					binaryImage.setRange(y, runStart[i], runEnd[i]);
+			}
+		}
+	}
+
+	/**
+	 * Fills in every hole in every particle. A hole is a group of gaps (background runs) that doesn't touch the edge of the window,
+	 * using connectivity4 (the opposite of the connectivity8 used for particles). Filling the gap between two runs
+	 * just means joining the two runs into one.
+	 * @return If any holes were filled.
+	 */
+	private boolean fillHoles()
+	{
+		// Make the gaps. Every row has one more gap than run (some of them might be empty).
+		int numOfGaps = 0;
+		for (int row = 0; row < windowBottom - windowTop; row++)
+		{
+			firstGapOfRow[row] = numOfGaps;
+			int x = windowLeft;
+			for (int i = firstRunOfRow[row]; i <= firstRunOfRow[row + 1]; i++)
+			{
+				int end = (i < firstRunOfRow[row + 1]) ? runStart[i] : windowRight;
+				gapStart[numOfGaps] = x;
+				gapEnd[numOfGaps] = end;
+				gapParent[numOfGaps] = numOfGaps;
+				// The first and last gap in a row touch the left and right edges, and every gap in the top and bottom rows touches an edge.
+				gapTouchesBorder[numOfGaps] = (i == firstRunOfRow[row] || i == firstRunOfRow[row + 1] || row == 0 || row == windowBottom - windowTop - 1);
+				numOfGaps++;
+				if (i < firstRunOfRow[row + 1])
+					x = runEnd[i];
+			}
+		}
+		firstGapOfRow[windowBottom - windowTop] = numOfGaps;
+
+		// Join gaps in neighboring rows that share at least one column (connectivity4).
+		for (int row = 1; row < windowBottom - windowTop; row++)
+		{
+			int above = firstGapOfRow[row - 1];
+			int current = firstGapOfRow[row];
+			while (above < firstGapOfRow[row] && current < firstGapOfRow[row + 1])
+			{
+				if (gapStart[current] < gapEnd[current] && gapStart[above] < gapEnd[above]
+						&& gapStart[current] < gapEnd[above] && gapStart[above] < gapEnd[current])
+					union(gapParent, above, current);
+
+				// Move past whichever gap ends first.
+				if (gapEnd[above] < gapEnd[current])
+					above++;
+				else
+					current++;
+			}
+		}
+
+		// Pass the border flag on to the root of each set.
+		for (int gap = 0; gap < numOfGaps; gap++)
+		{
+			if (gapTouchesBorder[gap])
+				gapTouchesBorder[find(gapParent, gap)] = true;
+		}
+
+		// Join the runs on each side of every hole. The run list is rewritten in place, since it can only get shorter.
+		boolean holesWereFilled = false;
+		int newNumOfRuns = 0;
+		for (int row = 0; row < windowBottom - windowTop; row++)
+		{
+			int rowFirstRun = firstRunOfRow[row];
+			int rowEndRun = firstRunOfRow[row + 1];
+			firstRunOfRow[row] = newNumOfRuns;
+			for (int i = rowFirstRun; i < rowEndRun; i++)
+			{
+				// Gap number (i - rowFirstRun) of the row is right before run i.
+				int gapBefore = firstGapOfRow[row] + (i - rowFirstRun);
+				boolean isHole = i > rowFirstRun && !gapTouchesBorder[find(gapParent, gapBefore)];
+				if (isHole)
+				{
+					runEnd[newNumOfRuns - 1] = runEnd[i]; // Extend the previous run over the hole and this run.
+					holesWereFilled = true;
+				}
+				else
+				{
+					runStart[newNumOfRuns] = runStart[i];
+					runEnd[newNumOfRuns] = runEnd[i];
+					newNumOfRuns++;
+				}
+			}
+		}
+		firstRunOfRow[windowBottom - windowTop] = newNumOfRuns;
+		numOfRuns = newNumOfRuns;
+		if (holesWereFilled)
+		{
+			for (int i = 0; i < numOfRuns; i++)
+				particleIDOfRun[i] = 0; // So writeRuns keeps every run.
+			for (int i = 0; i < numOfRuns; i++)
+				parent[i] = i;
+		}
+		return holesWereFilled;
+	}
+
+	/**
+	 * Joins touching runs into particles, adds up each particle's measurements, applies the area filter,
+	 * and writes the measurements of each remaining particle.
+	 * @param results Where the measurements are put.
+	 * @param minPercentage The smallest area a particle can have, as a percentage of the image area.
+	 * @param maxPercentage The largest area a particle can have, as a percentage of the image area.
+	 * @return The number of particles that passed the filter.
+	 */
+	private int labelAndMeasure(ParticleMeasurements results, double minPercentage, double maxPercentage)
+	{
+		// Measure each run on its own. Every run starts out as its own particle.
+		for (int row = 0; row < windowBottom - windowTop; row++)
+		{
+			int y = windowTop + row;
+			for (int i = firstRunOfRow[row]; i < firstRunOfRow[row + 1]; i++)
+			{
+				int length = runEnd[i] - runStart[i];
+				parent[i] = i;
+				area[i] = length;
+				sumX[i] = (long) (runStart[i] + runEnd[i] - 1) * length / 2;
+				sumY[i] = (long) y * length;
+				minX[i] = runStart[i];
+				maxX[i] = runEnd[i] - 1;
+				minY[i] = y;
+				maxY[i] = y;
+				perimeter[i] = 2 + 2 * length; // Both ends, plus the top and bottom of every pixel. Covered edges are taken off below.
+			}
+		}
+
+		// Join touching runs in neighboring rows, and take the edges they share off of both perimeters.
+		for (int row = 1; row < windowBottom - windowTop; row++)
+		{
+			int above = firstRunOfRow[row - 1];
+			int current = firstRunOfRow[row];
+			while (above < firstRunOfRow[row] && current < firstRunOfRow[row + 1])
+			{
+				// Runs touch with connectivity8 if they overlap, or their ends are diagonal from each other.
+				if (runStart[current] <= runEnd[above] && runStart[above] <= runEnd[current])
+				{
+					union(parent, above, current);
+					int sharedEdges = Math.min(runEnd[above], runEnd[current]) - Math.max(runStart[above], runStart[current]);
+					if (sharedEdges > 0)
+					{
+						perimeter[above] -= sharedEdges;
+						perimeter[current] -= sharedEdges;
+					}
+				}
+
+				if (runEnd[above] < runEnd[current])
+					above++;
+				else
+					current++;
+			}
+		}
+
+		// Add each run's totals into its root. Roots always have the smallest index in their set, so they come first.
+		for (int i = 0; i < numOfRuns; i++)
+		{
+			int root = find(parent, i);
+			if (root == i)
+				continue;
+			area[root] += area[i];
+			sumX[root] += sumX[i];
+			sumY[root] += sumY[i];
+			perimeter[root] += perimeter[i];
+			minX[root] = Math.min(minX[root], minX[i]);
+			maxX[root] = Math.max(maxX[root], maxX[i]);
+			minY[root] = Math.min(minY[root], minY[i]);
+			maxY[root] = Math.max(maxY[root], maxY[i]);
+		}
+
+		// Apply the filter and give each remaining particle an ID, in order of where each particle's first run is.
+		double imageArea = (double) width * height;
+		int numOfParticles = 0;
+		for (int i = 0; i < numOfRuns; i++)
+		{
+			if (parent[i] != i)
+				continue;
+			double areaPercentage = 100.0 * area[i] / imageArea;
+			particleIDOfRun[i] = (minPercentage <= areaPercentage && areaPercentage <= maxPercentage) ? numOfParticles++ : -1;
+		}
+
+		results.reset(numOfParticles);
+		for (int i = 0; i < numOfRuns; i++)
+		{
+			int particleID = (parent[i] == i) ? particleIDOfRun[i] : -1;
+			if (particleID < 0)
+				continue;
+
+			results.area[particleID] = area[i];
+			results.centerOfMassX[particleID] = (double) sumX[i] / area[i];
+			results.centerOfMassY[particleID] = (double) sumY[i] / area[i];
+			results.boundingRectLeft[particleID] = minX[i];
+			results.boundingRectTop[particleID] = minY[i];
+			results.boundingRectWidth[particleID] = maxX[i] - minX[i] + 1;
+			results.boundingRectHeight[particleID] = maxY[i] - minY[i] + 1;
+			results.calculateShapeRatios(particleID, perimeter[i]);
+		}
+		return numOfParticles;
+	}
+
+	/**
+	 * Counts the particles found by the last call to labelAndMeasure, including ones removed by the filter.
+	 */
+	private int countRoots()
+	{
+		int roots = 0;
+		for (int i = 0; i < numOfRuns; i++)
+		{
+			if (parent[i] == i)
+				roots++;
+		}
+		return roots;
+	}
+
+	/**
+	 * Finds the root of the set the given item belongs to, and points every item along the way directly at the root.
+	 * @param parents The union-find parent array to use (runs or gaps).
+	 * @param item The item to look up.
+	 * @return The root item.
+	 */
+	private static int find(int[] parents, int item)
+	{
+		int root = item;
+		while (parents[root] != root)
+			root = parents[root];
+
+		while (parents[item] != root)
+		{
+			int next = parents[item];
+			parents[item] = root;
+			item = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Records that two items belong to the same set. The smaller item always becomes the root.
+	 */
+	private static void union(int[] parents, int itemA, int itemB)
+	{
+		int rootA = find(parents, itemA);
+		int rootB = find(parents, itemB);
+		if (rootA < rootB)
+			parents[rootB] = rootA;
+		else if (rootB < rootA)
+			parents[rootA] = rootB;
+	}
+}
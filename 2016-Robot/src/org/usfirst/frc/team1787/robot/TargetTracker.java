@@ -0,0 +1,150 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class keeps track of where the goal is along one axis (pan or tilt) between camera frames, using a Kalman filter.
+ *
+ * The filter keeps two things: the angle the servo would have to be at to point right at the goal, and how fast that angle is changing.
+ * It is updated in two steps:
+ * 1) predict() is called every loop. It moves the angle forward by its velocity, plus any known motion
+ * (for the pan axis, the robot turning, which is read from the gyro).
+ * 2) correct() is called whenever the camera gives a new measurement. It moves the estimate towards the measurement.
+ * How far it moves depends on how much the filter currently trusts its prediction compared to the measurement.
+ *
+ * This lets the servos move smoothly every loop, instead of jumping once per frame, and keeps them pointed
+ * at the goal while the robot turns even if the camera is slow or misses a few frames.
+ */
+public class TargetTracker
+{
+	/** How much the goal's angular velocity is expected to randomly change, in (degrees / second^2)^2. Bigger values make the filter react faster, but be noisier. */
+	private final double PROCESS_NOISE;
+	/** How much a camera measurement is expected to be off by, in degrees^2. Bigger values make the filter trust the camera less. */
+	private final double MEASUREMENT_NOISE;
+	/** How long the filter keeps predicting without a measurement before it gives up on the goal, in seconds. */
+	private final double MAX_COAST_TIME;
+
+	/** A boolean indicating if the filter has a goal to track. False until the first measurement, and after coasting for too long. */
+	private boolean tracking = false;
+	/** The estimated angle that points right at the goal, in degrees. */
+	private double angle = 0;
+	/** The estimated rate the goal's angle is changing on its own (not counting the known motion), in degrees per second. */
+	private double velocity = 0;
+	/** How long it's been since the last measurement, in seconds. */
+	private double timeSinceMeasurement = 0;
+
+	// The covariance of the estimate (how unsure the filter is about the angle and velocity, and how they are related).
+	private double angleVariance;
+	private double angleVelocityCovariance;
+	private double velocityVariance;
+
+	/** The variance of the velocity right after the filter starts tracking, in (degrees / second)^2. We have no idea how fast the goal is moving at that point. */
+	private static final double INITIAL_VELOCITY_VARIANCE = 100;
+
+	/**
+	 * Constructor for the TargetTracker class.
+	 * @param processNoise How much the goal's angular velocity is expected to randomly change, in (degrees / second^2)^2.
+	 * @param measurementNoise How much a camera measurement is expected to be off by, in degrees^2.
+	 * @param maxCoastTime How long to keep predicting without a measurement before giving up on the goal, in seconds.
+	 */
+	public TargetTracker(double processNoise, double measurementNoise, double maxCoastTime)
+	{
+		PROCESS_NOISE = processNoise;
+		MEASUREMENT_NOISE = measurementNoise;
+		MAX_COAST_TIME = maxCoastTime;
+	}
+
+	/**
+	 * Moves the estimate forward in time. Should be called every loop, before correct().
+	 * Does nothing if the filter isn't tracking a goal.
+	 * @param dt The time since the last call to predict(), in seconds.
+	 * @param knownRate How fast the angle to the goal is changing because of something we measured (like the robot turning), in degrees per second.
+	 */
+	public void predict(double dt, double knownRate)
+	{
+		if (!tracking)
+			return;
+
+		timeSinceMeasurement += dt;
+		if (timeSinceMeasurement > MAX_COAST_TIME)
+		{
+			tracking = false;
+			return;
+		}
+
+		angle += (velocity + knownRate) * dt;
+
+		// P = F * P * F^T + Q, where F = [1 dt; 0 1] and Q is the noise from a random acceleration over dt.
+		double dt2 = dt * dt;
+		angleVariance += dt * (2 * angleVelocityCovariance + dt * velocityVariance) + PROCESS_NOISE * dt2 * dt2 / 4;
+		angleVelocityCovariance += dt * velocityVariance + PROCESS_NOISE * dt2 * dt / 2;
+		velocityVariance += PROCESS_NOISE * dt2;
+	}
+
+	/**
+	 * Moves the estimate towards a new measurement from the camera.
+	 * If the filter isn't tracking a goal yet, it starts tracking at the measured angle.
+	 * @param measuredAngle The angle that pointed right at the goal, according to the camera, in degrees.
+	 */
+	public void correct(double measuredAngle)
+	{
+		timeSinceMeasurement = 0;
+		if (!tracking)
+		{
+			tracking = true;
+			angle = measuredAngle;
+			velocity = 0;
+			angleVariance = MEASUREMENT_NOISE;
+			angleVelocityCovariance = 0;
+			velocityVariance = INITIAL_VELOCITY_VARIANCE;
+			return;
+		}
+
+		// We only measure the angle, so H = [1 0].
+		double error = measuredAngle - angle;
+		double errorVariance = angleVariance + MEASUREMENT_NOISE;
+		double angleGain = angleVariance / errorVariance;
+		double velocityGain = angleVelocityCovariance / errorVariance;
+
+		angle += angleGain * error;
+		velocity += velocityGain * error;
+
+		// P = (I - K * H) * P
+		velocityVariance -= velocityGain * angleVelocityCovariance;
+		angleVelocityCovariance -= angleGain * angleVelocityCovariance;
+		angleVariance -= angleGain * angleVariance;
+	}
+
+	/**
+	 * Stops tracking. The next measurement will start the filter over.
+	 */
+	public void reset()
+	{
+		tracking = false;
+	}
+
+	/**
+	 * Tells if the filter has a goal to track.
+	 * @return True if the filter has had a measurement recently enough to be trusted.
+	 */
+	public boolean isTracking()
+	{
+		return tracking;
+	}
+
+	/**
+	 * Gets the estimated angle that points right at the goal.
+	 * @return The estimated angle, in degrees. Meaningless if isTracking() is false.
+	 */
+	public double getAngle()
+	{
+		return angle;
+	}
+
+	/**
+	 * Gets the estimated rate the goal's angle is changing on its own.
+	 * @return The estimated velocity, in degrees per second.
+	 */
+	public double getVelocity()
+	{
+		return velocity;
+	}
+}
@@ -0,0 +1,97 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class remembers the recent values of something that changes over time (like the gyro angle), along with when each value was read.
+ * It's used to find out what a value was when a camera frame was captured, since the frame is processed some time after that.
+ *
+ * The values are kept in a ring buffer: once it's full, each new value replaces the oldest one.
+ * This class isn't thread safe. Every method must be called from the same thread, or from threads that hand it off
+ * safely (like the main robot thread and the control loop, which only runs teleopControl() while teleopControlEnabled is set).
+ */
+public class TimestampedHistory
+{
+	/** The number of samples that can be remembered. */
+	private final int capacity;
+	/** The FPGA time, in seconds, of each sample. */
+	private final double[] times;
+	/** The value of each sample. */
+	private final double[] values;
+	/** The number of samples added since the last clear. Sample i is stored at index (i % capacity). */
+	private long numOfSamples = 0;
+
+	/**
+	 * Constructor for the TimestampedHistory class.
+	 * @param numOfSamples The number of samples to remember. At 50 samples per second, 64 samples is about 1.3 seconds.
+	 */
+	public TimestampedHistory(int numOfSamples)
+	{
+		capacity = numOfSamples;
+		times = new double[capacity];
+		values = new double[capacity];
+	}
+
+	/**
+	 * Adds a sample. Samples must be added in order of time.
+	 * @param time The FPGA time, in seconds, when the value was read.
+	 * @param value The value.
+	 */
+	public void add(double time, double value)
+	{
+		int index = (int) (numOfSamples % capacity);
+		times[index] = time;
+		values[index] = value;
+		numOfSamples++;
+	}
+
+	/**
+	 * Forgets every sample. Used when the value jumps (like when the gyro is reset), so old and new values are never mixed.
+	 */
+	public void clear()
+	{
+		numOfSamples = 0;
+	}
+
+	/**
+	 * Tells if there are any samples.
+	 * @return True if at least one sample has been added since the last clear.
+	 */
+	public boolean isEmpty()
+	{
+		return numOfSamples == 0;
+	}
+
+	/**
+	 * Gets the most recent value.
+	 * @return The value of the newest sample, or NaN if there are none.
+	 */
+	public double getLatestValue()
+	{
+		return getValueAt(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Estimates what the value was at the given time, by drawing a straight line between the samples just before and just after it.
+	 * Times before the oldest sample get the oldest value, and times after the newest sample get the newest value.
+	 * @param time The FPGA time, in seconds.
+	 * @return The estimated value, or NaN if there are no samples.
+	 */
+	public double getValueAt(double time)
+	{
+		long end = numOfSamples;
+		if (end == 0)
+			return Double.NaN;
+		long start = Math.max(0, end - capacity);
+
+		// Find the newest sample at or before the given time.
+		long before = end - 1;
+		while (before > start && times[(int) (before % capacity)] > time)
+			before--;
+
+		int beforeIndex = (int) (before % capacity);
+		if (before == end - 1 || times[beforeIndex] > time)
+			return values[beforeIndex]; // Newer than the newest sample, or older than the oldest.
+		int afterIndex = (int) ((before + 1) % capacity);
+		double fraction = (time - times[beforeIndex]) / (times[afterIndex] - times[beforeIndex]);
+		return values[beforeIndex] + fraction * (values[afterIndex] - values[beforeIndex]);
+	}
+}
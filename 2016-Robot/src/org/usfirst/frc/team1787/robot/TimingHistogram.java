@@ -0,0 +1,94 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class counts how many times something took each amount of time, so percentiles (like the median or the 95th percentile)
+ * can be found without keeping every time.
+ *
+ * The times are sorted into buckets of equal width, made when the histogram is made, so recording a time never creates anything.
+ * Times longer than the last bucket all go into one overflow bucket. A percentile is reported as the top edge of
+ * the bucket it lands in, so it's never less than the real value, and never more than one bucket width over it
+ * (unless it lands in the overflow bucket, in which case the longest time recorded is reported).
+ */
+public class TimingHistogram
+{
+	/** The width of each bucket, in nanoseconds. */
+	private final long bucketWidth;
+	/** The number of times recorded in each bucket. The last one is the overflow bucket. */
+	private final long[] buckets;
+	/** The number of times recorded since the last reset. */
+	private long count = 0;
+	/** The longest time recorded since the last reset, in nanoseconds. */
+	private long max = 0;
+
+	/**
+	 * Constructor for the TimingHistogram class.
+	 * @param bucketWidthNanos The width of each bucket, in nanoseconds. Smaller buckets give more precise percentiles.
+	 * @param numOfBuckets The number of buckets (not counting the overflow bucket). Times up to bucketWidthNanos * numOfBuckets are counted precisely.
+	 */
+	public TimingHistogram(long bucketWidthNanos, int numOfBuckets)
+	{
+		bucketWidth = bucketWidthNanos;
+		buckets = new long[numOfBuckets + 1];
+	}
+
+	/**
+	 * Records one time.
+	 * @param nanos The time, in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		if (nanos < 0)
+			nanos = 0;
+		long bucket = nanos / bucketWidth;
+		if (bucket >= buckets.length - 1)
+			bucket = buckets.length - 1;
+		buckets[(int) bucket]++;
+		count++;
+		if (nanos > max)
+			max = nanos;
+	}
+
+	/**
+	 * Forgets every time recorded.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = 0;
+		count = 0;
+		max = 0;
+	}
+
+	/**
+	 * Gets the time that the given percent of the recorded times were less than or equal to.
+	 * @param percentile The percentile, from 0 to 100 (50 is the median).
+	 * @return The time, in nanoseconds, or 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		if (count == 0)
+			return 0;
+		long target = (long) Math.ceil(count * percentile / 100.0);
+		if (target < 1)
+			target = 1;
+
+		long seen = 0;
+		for (int i = 0; i < buckets.length - 1; i++)
+		{
+			seen += buckets[i];
+			if (seen >= target)
+				return Math.min((i + 1) * bucketWidth, max);
+		}
+		return max;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+}
@@ -0,0 +1,118 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds everything the stages of a VisionPipeline pass to each other while processing one frame.
+ *
+ * It doesn't hold any image data itself. The images and particle measurements stay in the VisionMethods object,
+ * which reuses the same buffers every frame, and the source pixels (when they don't come from a camera) are only referenced.
+ * The pipeline keeps one VisionFrame and resets it at the start of every frame, so nothing is created per frame.
+ */
+public class VisionFrame
+{
+	/** The object that holds the images and measurements, and does most of the work. */
+	private final VisionMethods vision;
+
+	/** The buffer holding the frame's pixels, when they come from somewhere other than the camera (like a recording). Null when using the camera. */
+	private ByteBuffer pixels = null;
+	/** The index in pixels of the first pixel. */
+	private int pixelOffset = 0;
+	/** The FPGA time, in seconds, when the frame was captured. */
+	private double captureTime = 0;
+
+	/** A boolean indicating if a goal has been found in the frame so far. */
+	private boolean goalFound = false;
+	/** The particleID of the goal, or -1 if no goal has been found. */
+	private int goalParticle = -1;
+
+	/**
+	 * Constructor for the VisionFrame class.
+	 * @param visionMethods The VisionMethods object the stages work with.
+	 */
+	public VisionFrame(VisionMethods visionMethods)
+	{
+		vision = visionMethods;
+	}
+
+	/**
+	 * Gets ready for a frame that comes from the camera.
+	 */
+	public void resetForCamera()
+	{
+		pixels = null;
+		pixelOffset = 0;
+		captureTime = 0;
+		goalFound = false;
+		goalParticle = -1;
+	}
+
+	/**
+	 * Gets ready for a frame whose pixels are already in a buffer (like a recorded frame).
+	 * @param framePixels The buffer holding the pixels, 4 bytes per pixel in the order blue, green, red, alpha.
+	 * @param offset The index in the buffer of the first pixel.
+	 * @param time The FPGA time, in seconds, when the frame was captured.
+	 */
+	public void resetForPixels(ByteBuffer framePixels, int offset, double time)
+	{
+		pixels = framePixels;
+		pixelOffset = offset;
+		captureTime = time;
+		goalFound = false;
+		goalParticle = -1;
+	}
+
+	public VisionMethods getVision()
+	{
+		return vision;
+	}
+
+	public ByteBuffer getPixels()
+	{
+		return pixels;
+	}
+
+	public int getPixelOffset()
+	{
+		return pixelOffset;
+	}
+
+	public double getCaptureTime()
+	{
+		return captureTime;
+	}
+
+	public void setCaptureTime(double time)
+	{
+		captureTime = time;
+	}
+
+	public boolean isGoalFound()
+	{
+		return goalFound;
+	}
+
+	public int getGoalParticle()
+	{
+		return goalParticle;
+	}
+
+	/**
+	 * Sets the goal that was found in the frame.
+	 * @param particleID The particleID of the goal.
+	 */
+	public void setGoal(int particleID)
+	{
+		goalFound = true;
+		goalParticle = particleID;
+	}
+
+	/**
+	 * Records that the frame has no goal (for example, when the goal candidate failed a test).
+	 */
+	public void clearGoal()
+	{
+		goalFound = false;
+		goalParticle = -1;
+	}
+}
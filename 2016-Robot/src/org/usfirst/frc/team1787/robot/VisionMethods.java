@@ -1,17 +1,24 @@
 package org.usfirst.frc.team1787.robot;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 import com.ni.vision.NIVision;
+import com.ni.vision.NIVision.CompressionType;
 import com.ni.vision.NIVision.DrawMode;
+import com.ni.vision.NIVision.FlattenType;
 import com.ni.vision.NIVision.Image;
 import com.ni.vision.NIVision.MeasurementType;
 import com.ni.vision.NIVision.ParticleFilterCriteria2;
 import com.ni.vision.NIVision.ParticleFilterOptions2;
 import com.ni.vision.NIVision.Point;
 import com.ni.vision.NIVision.Range;
+import com.ni.vision.NIVision.RawData;
 import com.ni.vision.NIVision.Rect;
 import com.ni.vision.NIVision.ShapeMode;
 
 import edu.wpi.first.wpilibj.CameraServer;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.vision.USBCamera;
 
 /*
@@ -62,6 +69,18 @@ import edu.wpi.first.wpilibj.vision.USBCamera;
  * When detecting particles, it connectivity8 is on, then pixels adjacent or diagonal to another pixel are considered to be part of the same particle.
  * The other form of connectivity, connectivity4, defines particles as groups of pixels that are only adjacent to each other, not touching diagonally.
  * Learned this from the NI Vision Concepts Help section called "Connectivity".
+ * 
+ * Note on java processing:
+ * NIVision doesn't give us a way to read the pixels of an Image directly, so to threshold in java we flatten the image 
+ * (imaqFlatten with no compression) and read the pixel data from the end of the flattened data. RGB pixels are stored 
+ * as 4 bytes each in the order blue, green, red, alpha. The threshold is put into binaryBits (one bit per pixel), and the particle filter 
+ * and measurements are done by RunLengthLabeler on the runs of lit pixels in binaryBits, so the work depends on how much of the image passes the threshold. 
+ * The result is only unpacked into binaryPixels and put back into binaryImg (using imaqArrayToImage) when it's about to be drawn on and sent to the dashboard.
+ * 
+ * Note on recording and replay:
+ * startRecording() saves every frame that gets thresholded (with its capture time) to a file using FrameRecorder.
+ * On a computer, VisionReplay makes a VisionMethods with the no-camera constructor and feeds those frames back through 
+ * performHSVFilter(ByteBuffer, int, double), which is the same java threshold used on the robot. Nothing after the threshold knows the difference.
  */
 
 public class VisionMethods
@@ -72,22 +91,33 @@ public class VisionMethods
 	private USBCamera camFront;
 	/** The camera mounted on the side of the robot, or on the 2 axis servo base. */
 	private USBCamera camSide;
-	/** The image object that stores an image captured by a camera. */
+	/** Keeps both cameras streaming, and switches which one frames are grabbed from. */
+	private CameraManager camManager;
+	/** Changes the side camera's settings without making the vision thread or the main loop wait. */
+	private CameraSettingsApplier camSettingsApplier;
+	/** The image object that stores an image captured by a camera. Points to the active camera's Image in camManager. */
 	private Image img;
 	/** The binary image used for vision processing. */
 	private Image binaryImg;
-	/** A boolean indicating if the front camera is currently active. */
-	private boolean frontCamActive;
 	/** A boolean indicating if the side-cam's exposure, white balance, and brightness are currently optimal for vision processing. */
 	private boolean imageProcessingSettingsActive;
+	/** The FPGA time, in seconds, when the image in img was captured. */
+	private double lastCaptureTime = 0;
+	/** Times each step of processing a frame. */
+	private final VisionTimings timings = new VisionTimings();
 	
-	/** The Range object which stores the acceptable range of hues for vision processing. (hue is on a scale from 0 - 360). */
+	/** The Range object which stores the acceptable range of hues for vision processing. (hue is on NIVision's scale from 0 - 255, not degrees, so 125 - 145 is about 176 - 205 degrees). */
 	private final Range HUE = new Range(125, 145);
 	/** The Range object which stores the acceptable range of saturations for vision processing. (saturation is on a scale from 0 - 255). */
 	private final Range SATURATION = new Range(245, 255);
 	/** The Range object which stores the acceptable range of values (as in the "v" in HSV) for vision processing. (value is on a scale from 0 - 255). */
 	private final Range VALUE = new Range(30, 175);
 	
+	/** The lookup table used to perform the HSV threshold in java. It is only rebuilt when setHSVThreshold changes the ranges. */
+	private HSVThresholdTable thresholdTable = new HSVThresholdTable(HUE.minValue, HUE.maxValue, SATURATION.minValue, SATURATION.maxValue, VALUE.minValue, VALUE.maxValue);
+	/** A boolean indicating if the threshold, particle filter, and measurements should be done in java (by thresholdTable and runLengthLabeler) instead of by NIVision. */
+	private boolean javaProcessingActive = false;
+	
 	/** The bounding box that surrounds the current particle being tracked. */
 	private Rect boundingBox = new Rect();
 	/** The circle that is drawn around the center of mass of the particle being tracked. */
@@ -97,6 +127,57 @@ public class VisionMethods
 	private final int IMAGE_WIDTH_IN_PIXELS = 320;
 	/** The image height in pixels. */
 	private final int IMAGE_HEIGHT_IN_PIXELS = 240;
+	/** The number of pixels in an image. */
+	private final int IMAGE_NUM_OF_PIXELS = IMAGE_WIDTH_IN_PIXELS * IMAGE_HEIGHT_IN_PIXELS;
+	/** The number of bytes used to store one pixel of an RGB image. */
+	private final int BYTES_PER_RGB_PIXEL = 4;
+	
+	/** The result of the java threshold, one bit per pixel. */
+	private BitPackedImage binaryBits = new BitPackedImage(IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS);
+	/** A boolean indicating if an opening (erode then dilate) should be done on binaryBits to remove noise before looking for particles. */
+	private boolean morphologicalOpeningActive = false;
+	/** binaryBits unpacked to one byte per pixel, since NIVision needs a byte per pixel. Only filled in when binaryImg is about to be sent to the dashboard. */
+	private byte[] binaryPixels = new byte[IMAGE_NUM_OF_PIXELS];
+	/** The direct buffer used to hand binaryPixels to NIVision. */
+	private ByteBuffer binaryPixelBuffer = ByteBuffer.allocateDirect(IMAGE_NUM_OF_PIXELS);
+	/** Wraps binaryPixelBuffer so it can be passed to imaqArrayToImage. */
+	private RawData binaryRawData = new RawData(binaryPixelBuffer);
+	/** A boolean indicating if binaryImg has the same contents as binaryPixels. Only used when java processing is active. */
+	private boolean binaryImgIsCurrent = false;
+	/** Finds and measures particles in binaryBits when java processing is active. */
+	private RunLengthLabeler runLengthLabeler = new RunLengthLabeler(IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS);
+	/** Saves every thresholded frame to a file so it can be replayed later. Null when not recording. */
+	private FrameRecorder frameRecorder = null;
+	
+	// Tracking Mode
+	/** A boolean indicating if tracking mode is active. In tracking mode, once a goal has been found, only a window around it is thresholded and labeled. Only works when java processing is active. */
+	private boolean trackingModeActive = false;
+	/** The number of pixels added to each side of the goal's bounding box to make the tracking window. Doubles every frame the goal is missed. */
+	private final int TRACKING_WINDOW_PADDING = 16;
+	/** The number of frames in a row the goal can be missed in the tracking window before going back to searching the whole image. */
+	private final int MAX_TRACKING_MISSES = 3;
+	/** The number of frames in a row the goal hasn't been found in the tracking window. */
+	private int trackingMisses = 0;
+	/** The bounding box of the last particle that was confirmed to be a goal. The tracking window is built around this. */
+	private Rect trackedGoalBox = new Rect(0, 0, IMAGE_HEIGHT_IN_PIXELS, IMAGE_WIDTH_IN_PIXELS);
+	/** The region of the image that will be thresholded and labeled in the next frame. Covers the whole image when not tracking. */
+	private Rect searchWindow = new Rect(0, 0, IMAGE_HEIGHT_IN_PIXELS, IMAGE_WIDTH_IN_PIXELS);
+	/** The region of binaryBits that was thresholded in the current frame. Everything outside of it is 0. */
+	private Rect thresholdedWindow = new Rect(0, 0, IMAGE_HEIGHT_IN_PIXELS, IMAGE_WIDTH_IN_PIXELS);
+	
+	// Pyramid Search
+	/** How many times smaller (in each direction) the coarse image is than the full image. 1 means pyramid search is off. */
+	private int pyramidFactor = 1;
+	/** The shrunk threshold used to find candidates when searching the whole image. Null when pyramid search is off. */
+	private BitPackedImage coarseBits = null;
+	/** Finds and measures particles in coarseBits. Null when pyramid search is off. */
+	private RunLengthLabeler coarseLabeler = null;
+	/** The measurements of the particles in coarseBits. Null when pyramid search is off. */
+	private ParticleMeasurements coarseParticleData = null;
+	/** The number of full size pixels added to each side of the coarse candidate's bounding box before it's thresholded at full size. Covers pixels the coarse image skipped. */
+	private final int PYRAMID_REFINE_PADDING = 8;
+	/** The part of the full size image that is thresholded after the coarse search. */
+	private Rect refineWindow = new Rect();
 	
 	/** The starting point on the image for the horizontal line in the crosshairs. */
 	private Point horizontalStart = new Point(0, 120);
@@ -114,6 +195,13 @@ public class VisionMethods
 	/** The particleID for the largest particle currently in view. This particle hasn't necessarily been confirmed to be a goal. */
 	private int largestParticle = -1;
 	
+	/** The number of particles we expect to see in a typical frame. Used to size the measurement arrays up front. */
+	private final int EXPECTED_MAX_NUM_OF_PARTICLES = 32;
+	/** The measurements of every particle in the current binary image. Filled in once per frame by measureParticles(). */
+	private ParticleMeasurements particleData = new ParticleMeasurements(EXPECTED_MAX_NUM_OF_PARTICLES);
+	/** A boolean indicating if particleData matches the current binary image. Set to false whenever binaryImg is changed. */
+	private boolean particleDataIsCurrent = false;
+	
 	/** The desired ratio of a particle's area over it's bounding boxes area to be considered a goal. */
 	private final double DESIRED_AREA_TO_BOUNDING_BOX_AREA_RATIO = 0.33; // (Area of target (80 in^2) / Area of "bounding box" (240 in^2)) = 1/3
 	/** The minimum score a particle can get in the area test to be considered a goal. */
@@ -133,39 +221,56 @@ public class VisionMethods
 	/** The maximum score a particle can get in the aspect ratio test to be considered a goal. */
 	private final double MAX_ASPECT_RATIO_SCORE = 1.25; // determined through testing
 	
+	/** How much the area test counts towards a particle's combined score in findBestCandidate. */
+	private final double AREA_SCORE_WEIGHT = 0.4;
+	/** How much the aspect ratio test counts towards a particle's combined score in findBestCandidate. Weighted higher because the aspect ratio test is better at telling the goal apart from reflections. */
+	private final double ASPECT_RATIO_SCORE_WEIGHT = 0.6;
+	/** Scores every particle in the frame to find the one that looks the most like a goal. */
+	private CandidateScorer candidateScorer = new CandidateScorer(AREA_SCORE_WEIGHT, ASPECT_RATIO_SCORE_WEIGHT, 
+			DESIRED_AREA_TO_BOUNDING_BOX_AREA_RATIO, MIN_AREA_SCORE, MAX_AREA_SCORE, DESIRED_ASPECT_RATIO, MIN_ASPECT_RATIO_SCORE, MAX_ASPECT_RATIO_SCORE);
+	
 	/** An array of all the criteria we would like to filter by when using the particle filter. This area is only size 1, because we only perform a filter based on 1 criteria, being area. This is used to remove very small particles from the binary image to eliminate noise. */
 	ParticleFilterCriteria2[] filterCriteria = new ParticleFilterCriteria2[1]; // We only filter based on one criteria: area.
 	/** An object that is used in the particle filter method that tells the method how to perform the filter. (0,0,1,1) means don't reject matches, don't reject the border, fill holes, and use connectivity8. */
 	ParticleFilterOptions2 filterOptions = new ParticleFilterOptions2(0,0,1,1); // Don't reject matches, don't reject the border, fill holes, and use connectivity8.
 	
-	/** The horizontal degrees per pixel that was determined using what the microsoft lifecam data sheet says about the image's dimensions (16:9 aspect ratio). */
-	private final double DEGREES_PER_PIXEL_HORIZONTAL_NI = 0.17125;
-	/** The horizontal degrees per pixel that was determined using what NIVision says about the the image's dimensions (4:3 aspect ratio). */
-	private final double DEGREES_PER_PIXEL_HORIZONTAL_DATA_SHEET = 0.046643;
-	/** An experimentally determined value for the horizontal degrees per pixel. This value seems to be the most accurate when compared to the mathematically determined values. */
-	private double DEGREES_PER_PIXEL_HORIZONTAL_GUESS = 0.15; // determined through testing. May not be super accurate, but works better than the others right now.
-	
-	/** The vertical degrees per pixel that was determined using what the microsoft lifecam data sheet says about the image's dimensions (16:9 aspect ratio). */
-	private final double DEGREES_PER_PIXEL_VERTICAL_NI = 0.17125;
-	/** The vertical degrees per pixel that was determined using what NIVision says about the image's dimensions (4:3 aspect ratio). */
-	private final double DEGREES_PER_PIXEL_VERTICAL_DATA_SHEET = 0.046643;
-	/** An experimentally determined value for the vertical degrees per pixel. This value seems to be the most accurate when compared to the mathematically determined values. */
-	private double DEGREES_PER_PIXEL_VERTICAL_GUESS = 0.15; // determined though testing. May not be super accurate, but works better than the others right now. Unsure if this being the same as the horizontal ratio is a coincidence or not.
-	
-	/** A value that dampens the result returned when calculating the error in degrees given the error in pixels. This helps to prevent overshooting, but makes the control loop more sluggish. */
-	private double CONTROL_LOOP_DAMPENER = 0.83; // Value determined through testing.
+	/** The focal length of the side camera at 320x240, in pixels. Set so the angle near the center is the 0.15 degrees per pixel we found through testing (1 / tan(0.15 degrees)). Replace with a calibrated value when we have one. */
+	private final double CAMERA_FOCAL_LENGTH = 381.97;
+	/** The principal point of the side camera (where the lens is centered). Assumed to be the center of the image until the camera is calibrated. */
+	private final double CAMERA_PRINCIPAL_POINT_X = 160;
+	/** The principal point of the side camera (where the lens is centered). Assumed to be the center of the image until the camera is calibrated. */
+	private final double CAMERA_PRINCIPAL_POINT_Y = 120;
+	/** The r^2 radial distortion coefficient of the side camera's lens. 0 until the camera is calibrated. */
+	private final double CAMERA_DISTORTION_K1 = 0;
+	/** The r^4 radial distortion coefficient of the side camera's lens. 0 until the camera is calibrated. */
+	private final double CAMERA_DISTORTION_K2 = 0;
+	/** Turns pixel coordinates into angles from the camera's optical axis, using lookup tables built when the robot starts. */
+	private final CameraModel cameraModel = new CameraModel(IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS, CAMERA_FOCAL_LENGTH, CAMERA_FOCAL_LENGTH, 
+			CAMERA_PRINCIPAL_POINT_X, CAMERA_PRINCIPAL_POINT_Y, CAMERA_DISTORTION_K1, CAMERA_DISTORTION_K2);
 	
-	public VisionMethods(String camFrontName, String camSideName)
+	/**
+	 * Constructor for a VisionMethods object with no cameras, used to replay recorded frames (see VisionReplay).
+	 * Nothing from NIVision or the CameraServer is set up, so only the java processing methods can be used:
+	 * performHSVFilter(ByteBuffer, int, double), removeSmallParticles(), the particle tests, and the getters.
+	 */
+	public VisionMethods()
 	{
 		// set particle filter criteria
 		filterCriteria[0] = new ParticleFilterCriteria2(MeasurementType.MT_AREA_BY_IMAGE_AREA, 0.1, 100.0, 0, 0);
+		runLengthLabeler.setFilterOptions(filterOptions.fillHoles != 0, filterCriteria[0].lower, filterCriteria[0].upper);
+		javaProcessingActive = true; // There's no NIVision to fall back on.
+	}
+	
+	public VisionMethods(String camFrontName, String camSideName)
+	{
+		this();
+		javaProcessingActive = false;
 		
 		// set up CameraServer
 		camServer = CameraServer.getInstance();
 		camServer.setQuality(50);
 		
-		// construct the Image objects
-		img = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_RGB, 0);
+		// construct the Image objects (the camera Images are made by camManager)
 		binaryImg = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_U8, 0);
 		
 		// construct cameras
@@ -173,15 +278,13 @@ public class VisionMethods
 		camSide = new USBCamera(camSideName);
 		
 		// Set the exposure, white balance, and brightness of the side camera to be optimal for vision processing.
-		camSide.setExposureManual(0);
-		camSide.setWhiteBalanceManual(USBCamera.WhiteBalance.kFixedIndoor);
-		camSide.setBrightness(100);
-		camSide.updateSettings();
+		CameraSettingsApplier.applySettings(camSide, true);
 		imageProcessingSettingsActive = true;
+		camSettingsApplier = new CameraSettingsApplier(camSide);
+		camSettingsApplier.start();
 		
-		// Start capturing video from the front cam.
-		camFront.startCapture();
-		frontCamActive = true;
+		// Start capturing video from both cams. The front cam's video is used first.
+		camManager = new CameraManager(camFront, camSide);
 	}
 	
 	/**
@@ -190,51 +293,95 @@ public class VisionMethods
 	 */
 	public Image getImageFromActiveCam()
 	{
-		if (frontCamActive)
-			camFront.getImage(img);
-		else if (!frontCamActive)
-			camSide.getImage(img);
+		timings.start(VisionTimings.CAPTURE);
+		img = camManager.grabImage();
+		lastCaptureTime = Timer.getFPGATimestamp(); // getImage waits for a new frame, so the frame was captured just before this.
+		timings.stop(VisionTimings.CAPTURE);
+		if (!camManager.isFrontCamActive() && camSettingsApplier.isWaitingForFrames()) // Help the applier tell when the side cam is done adjusting.
+			camSettingsApplier.reportFrameBrightness(measureAverageBrightness(img), lastCaptureTime);
 		return img;
 	}
 	
 	/**
-	 * Toggles which camera is active when called.
+	 * Measures the average brightness of an image, using every 8th pixel in each direction.
+	 * Only used while the side camera is adjusting to new settings, since it has to flatten the image.
+	 * @param frame The RGB image.
+	 * @return The average of the red, green, and blue values of the pixels, from 0 to 255.
 	 */
-	public void toggleActiveCamFeed()
+	private double measureAverageBrightness(Image frame)
 	{
-		if (frontCamActive)
-		{
-			camFront.stopCapture();
-			camSide.startCapture();
-		}
-		else if (!frontCamActive)
+		RawData flattenedFrame = NIVision.imaqFlatten(frame, FlattenType.FLATTEN_IMAGE, CompressionType.COMPRESSION_NONE, 0);
+		ByteBuffer flattenedBytes = flattenedFrame.getBuffer();
+		int pixelDataStart = flattenedBytes.capacity() - (IMAGE_NUM_OF_PIXELS * BYTES_PER_RGB_PIXEL);
+		
+		long total = 0;
+		int numOfSamples = 0;
+		for (int y = 0; y < IMAGE_HEIGHT_IN_PIXELS; y += 8)
 		{
-			camSide.stopCapture();
-			camFront.startCapture();
+			for (int x = 0; x < IMAGE_WIDTH_IN_PIXELS; x += 8)
+			{
+				int index = pixelDataStart + (y * IMAGE_WIDTH_IN_PIXELS + x) * BYTES_PER_RGB_PIXEL;
+				total += (flattenedBytes.get(index) & 0xFF) + (flattenedBytes.get(index + 1) & 0xFF) + (flattenedBytes.get(index + 2) & 0xFF);
+				numOfSamples++;
+			}
 		}
-		
-		frontCamActive = !frontCamActive;
+		flattenedFrame.free();
+		return total / (3.0 * numOfSamples);
+	}
+	
+	/**
+	 * Gets the time when the last image was grabbed from the active camera.
+	 * @return The FPGA time, in seconds, when the last image was captured.
+	 */
+	public double getLastCaptureTime()
+	{
+		return lastCaptureTime;
+	}
+	
+	/**
+	 * Gets the object that times each step of processing a frame. Whoever runs the frames should call its endFrame() after each one.
+	 * @return The timings.
+	 */
+	public VisionTimings getTimings()
+	{
+		return timings;
+	}
+	
+	/**
+	 * Toggles which camera is active when called. Both cameras are always streaming, so the next frame comes from the other camera right away.
+	 */
+	public void toggleActiveCamFeed()
+	{
+		camManager.switchCamera();
+		searchWholeImage(); // The goal won't be in the same place in the other camera's image.
+	}
+	
+	/**
+	 * Sets how often a frame is grabbed from the inactive camera to keep it streaming. See CameraManager.setKeepAliveInterval().
+	 * @param framesBetween The number of active camera frames between each keep-alive grab, or 0 to turn the keep-alive off.
+	 */
+	public void setCamKeepAliveInterval(int framesBetween)
+	{
+		camManager.setKeepAliveInterval(framesBetween);
 	}
 	
 	/**
 	 * Toggles the settings of the side camera between regular settings, and those optimal for vision processing.
+	 * Returns right away. The settings are sent to the camera on the settings thread, and getCamSettingsState() tells when they've taken effect.
 	 */
 	public void toggleCamSettings()
 	{
-		if (imageProcessingSettingsActive)
-		{
-			camSide.setExposureAuto();
-			camSide.setWhiteBalanceAuto();
-			camSide.setBrightness(50);
-		}
-		else if (!imageProcessingSettingsActive)
-		{
-			camSide.setExposureManual(0);
-			camSide.setWhiteBalanceManual(USBCamera.WhiteBalance.kFixedIndoor);
-			camSide.setBrightness(100);
-		}
-		camSide.updateSettings();
 		imageProcessingSettingsActive = !imageProcessingSettingsActive;
+		camSettingsApplier.requestSettings(imageProcessingSettingsActive);
+	}
+	
+	/**
+	 * Tells how the last change to the side camera's settings is going. Unlike the rest of this class, this is safe to call from any thread.
+	 * @return One of the CameraSettingsApplier.STATE_ constants.
+	 */
+	public int getCamSettingsState()
+	{
+		return camSettingsApplier.getState();
 	}
 	
 	/**
@@ -242,7 +389,10 @@ public class VisionMethods
 	 */
 	public void sendRegularImageToDashboard()
 	{
-		camServer.setImage(getImageFromActiveCam());
+		Image frame = getImageFromActiveCam();
+		timings.start(VisionTimings.SEND);
+		camServer.setImage(frame);
+		timings.stop(VisionTimings.SEND);
 	}
 	
 	/**
@@ -251,12 +401,18 @@ public class VisionMethods
 	 */
 	public void sendProcessedImageToDashboard()
 	{
+		timings.start(VisionTimings.DRAW);
+		if (javaProcessingActive && !binaryImgIsCurrent)
+			copyBinaryPixelsToBinaryImg();
 		if (particleIsValid(currentParticle))
 		{
 			updateAndDrawCurrentParticleBoundingBox(binaryImg);
 			updateAndDrawCrosshairsOnCurrentParticle(binaryImg);
 		}
+		timings.stop(VisionTimings.DRAW);
+		timings.start(VisionTimings.SEND);
 		camServer.setImage(binaryImg);
+		timings.stop(VisionTimings.SEND);
 	}
 	
 	/**
@@ -265,12 +421,16 @@ public class VisionMethods
 	 */
 	public void sendHybridImageToDashboard()
 	{
+		timings.start(VisionTimings.DRAW);
 		if (particleIsValid(currentParticle))
 		{
 			updateAndDrawCurrentParticleBoundingBox(img);
 			updateAndDrawCrosshairsOnCurrentParticle(img);
 		}
+		timings.stop(VisionTimings.DRAW);
+		timings.start(VisionTimings.SEND);
 		camServer.setImage(img);
+		timings.stop(VisionTimings.SEND);
 	}
 	
 	/**
@@ -279,7 +439,45 @@ public class VisionMethods
 	 */
 	public int getNumOfParticles()
 	{
-		return NIVision.imaqCountParticles(binaryImg, 1);
+		if (!particleDataIsCurrent)
+			measureParticles();
+		return particleData.getCount();
+	}
+	
+	/**
+	 * Counts the particles in the current binary image and measures every one of them in a single pass.
+	 * All of the particle getters read from these stored measurements, so NIVision only 
+	 * has to be asked about each particle once per frame no matter how many times the getters are called.
+	 */
+	public void measureParticles()
+	{
+		timings.start(VisionTimings.MEASURE);
+		if (javaProcessingActive)
+		{
+			runLengthLabeler.measureParticles(binaryBits, particleData, thresholdedWindow.left, thresholdedWindow.top, thresholdedWindow.width, thresholdedWindow.height);
+			particleDataIsCurrent = true;
+			timings.stop(VisionTimings.MEASURE);
+			return;
+		}
+		
+		int numOfParticles = NIVision.imaqCountParticles(binaryImg, 1);
+		particleData.reset(numOfParticles);
+		
+		for (int particleID = 0; particleID < numOfParticles; particleID++)
+		{
+			particleData.area[particleID] = NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_PARTICLE_AND_HOLES_AREA);
+			particleData.centerOfMassX[particleID] = NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_CENTER_OF_MASS_X);
+			particleData.centerOfMassY[particleID] = NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_CENTER_OF_MASS_Y);
+			particleData.boundingRectTop[particleID] = (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_TOP);
+			particleData.boundingRectLeft[particleID] = (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_LEFT);
+			particleData.boundingRectWidth[particleID] = (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_WIDTH);
+			particleData.boundingRectHeight[particleID] = (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_HEIGHT);
+			particleData.compactnessFactor[particleID] = NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_COMPACTNESS_FACTOR);
+			particleData.equivalentRectRatio[particleID] = NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_RATIO_OF_EQUIVALENT_RECT_SIDES);
+		}
+		
+		particleDataIsCurrent = true;
+		timings.stop(VisionTimings.MEASURE);
 	}
 	
 	/**
@@ -288,7 +486,312 @@ public class VisionMethods
 	 */
 	public void performHSVFilter()
 	{
-		NIVision.imaqColorThreshold(binaryImg, getImageFromActiveCam(), 255, NIVision.ColorMode.HSV, HUE, SATURATION, VALUE);
+		if (javaProcessingActive)
+			performJavaHSVFilter(getImageFromActiveCam());
+		else
+		{
+			Image frame = getImageFromActiveCam();
+			timings.start(VisionTimings.THRESHOLD);
+			NIVision.imaqColorThreshold(binaryImg, frame, 255, NIVision.ColorMode.HSV, HUE, SATURATION, VALUE);
+			timings.stop(VisionTimings.THRESHOLD);
+			if (frameRecorder != null)
+				recordFrame(img);
+		}
+		particleDataIsCurrent = false;
+	}
+	
+	/**
+	 * Performs the HSV threshold on the given image using the java lookup table instead of NIVision.
+	 * The result is put into binaryBits. Only the current search window is thresholded.
+	 * @param frame The RGB image to threshold.
+	 */
+	public void performJavaHSVFilter(Image frame)
+	{
+		timings.start(VisionTimings.CAPTURE); // Flattening is part of getting the frame's pixels, so it's counted with the capture.
+		RawData flattenedFrame = NIVision.imaqFlatten(frame, FlattenType.FLATTEN_IMAGE, CompressionType.COMPRESSION_NONE, 0);
+		ByteBuffer flattenedBytes = flattenedFrame.getBuffer();
+		int pixelDataStart = flattenedBytes.capacity() - (IMAGE_NUM_OF_PIXELS * BYTES_PER_RGB_PIXEL); // The pixel data is at the end of the flattened image
+		timings.stop(VisionTimings.CAPTURE);
+		
+		performHSVFilter(flattenedBytes, pixelDataStart, lastCaptureTime);
+		flattenedFrame.free();
+	}
+	
+	/**
+	 * Performs the HSV threshold in java on raw pixel data, either from a flattened camera image or from a recording.
+	 * The result is put into binaryBits. Only the current search window is thresholded.
+	 * If recording is on, the frame is saved first.
+	 * @param rgbPixels The buffer holding the pixels, 4 bytes per pixel in the order blue, green, red, alpha.
+	 * @param pixelDataStart The index in the buffer of the first pixel.
+	 * @param captureTime The time, in seconds, the frame was captured.
+	 */
+	public void performHSVFilter(ByteBuffer rgbPixels, int pixelDataStart, double captureTime)
+	{
+		lastCaptureTime = captureTime;
+		if (frameRecorder != null)
+			frameRecorder.recordFrame(rgbPixels, pixelDataStart, captureTime);
+		
+		timings.start(VisionTimings.THRESHOLD);
+		// When searching the whole image with pyramid search on, only threshold around the best candidate from the coarse image.
+		Rect window = searchWindow;
+		if (pyramidFactor > 1 && isWholeImage(searchWindow))
+		{
+			findCoarseCandidate(rgbPixels, pixelDataStart);
+			window = refineWindow;
+		}
+		
+		// Clearing the whole bit packed image is only 1200 longs, so nothing from last frame's window is left over.
+		binaryBits.clear();
+		thresholdTable.threshold(rgbPixels, pixelDataStart, window.left, window.top, window.width, window.height, binaryBits);
+		if (morphologicalOpeningActive)
+			binaryBits.open();
+		copyRect(window, thresholdedWindow);
+		binaryImgIsCurrent = false;
+		particleDataIsCurrent = false;
+		timings.stop(VisionTimings.THRESHOLD);
+	}
+	
+	/**
+	 * Thresholds and labels the coarse (shrunk) image, picks the particle that looks the most like a goal,
+	 * and sets refineWindow to where that particle is in the full size image.
+	 * The area and aspect ratio tests are both ratios, so the same scorer works on the coarse image. If no particle passes
+	 * (thin tape can look different when shrunk), the largest one is used, and the full size tests make the final decision.
+	 * If there are no particles at all, refineWindow is set to nothing.
+	 * @param rgbPixels The buffer holding the pixels, 4 bytes per pixel in the order blue, green, red, alpha.
+	 * @param pixelDataStart The index in the buffer of the first pixel.
+	 */
+	private void findCoarseCandidate(ByteBuffer rgbPixels, int pixelDataStart)
+	{
+		thresholdTable.thresholdDownsampled(rgbPixels, pixelDataStart, IMAGE_WIDTH_IN_PIXELS, pyramidFactor, coarseBits);
+		int numOfParticles = coarseLabeler.filterAndMeasureParticles(coarseBits, coarseParticleData, 0, 0, coarseBits.getWidth(), coarseBits.getHeight());
+		if (numOfParticles == 0)
+		{
+			setWindow(refineWindow, 0, 0, 0, 0);
+			return;
+		}
+		
+		int candidate = candidateScorer.findBestCandidate(coarseParticleData);
+		if (candidate < 0)
+		{
+			candidate = 0;
+			for (int particleID = 1; particleID < numOfParticles; particleID++)
+			{
+				if (coarseParticleData.area[particleID] > coarseParticleData.area[candidate])
+					candidate = particleID;
+			}
+		}
+		
+		setWindow(refineWindow, coarseParticleData.boundingRectLeft[candidate] * pyramidFactor, coarseParticleData.boundingRectTop[candidate] * pyramidFactor, 
+				coarseParticleData.boundingRectWidth[candidate] * pyramidFactor, coarseParticleData.boundingRectHeight[candidate] * pyramidFactor);
+		padWindow(refineWindow, PYRAMID_REFINE_PADDING, refineWindow);
+	}
+	
+	/**
+	 * Flattens the given image and saves it with the recorder. Only used when NIVision is doing the threshold,
+	 * since the java threshold already has the flattened pixels.
+	 * @param frame The RGB image to record.
+	 */
+	private void recordFrame(Image frame)
+	{
+		RawData flattenedFrame = NIVision.imaqFlatten(frame, FlattenType.FLATTEN_IMAGE, CompressionType.COMPRESSION_NONE, 0);
+		ByteBuffer flattenedBytes = flattenedFrame.getBuffer();
+		frameRecorder.recordFrame(flattenedBytes, flattenedBytes.capacity() - (IMAGE_NUM_OF_PIXELS * BYTES_PER_RGB_PIXEL), lastCaptureTime);
+		flattenedFrame.free();
+	}
+	
+	/**
+	 * Starts saving every thresholded frame to the given file. The file holds the given number of frames,
+	 * and once it's full, the oldest frames are overwritten.
+	 * @param path The file to record to. Replaced if it already exists.
+	 * @param numOfFrames The number of frames to keep. At 320x240, each frame is about 300 KB.
+	 * @return False if the file couldn't be made.
+	 */
+	public boolean startRecording(String path, int numOfFrames)
+	{
+		stopRecording();
+		try
+		{
+			frameRecorder = new FrameRecorder(path, IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS, BYTES_PER_RGB_PIXEL, numOfFrames);
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.out.println("Couldn't start recording vision frames: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Stops recording frames, and makes sure everything recorded so far is saved to the file.
+	 */
+	public void stopRecording()
+	{
+		if (frameRecorder != null)
+		{
+			frameRecorder.close();
+			frameRecorder = null;
+		}
+	}
+	
+	/**
+	 * Unpacks binaryBits into binaryPixels, and copies that into the binaryImg object so it can be drawn on and sent to the dashboard.
+	 */
+	private void copyBinaryPixelsToBinaryImg()
+	{
+		binaryBits.copyTo(binaryPixels, 0, 0, IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS);
+		binaryPixelBuffer.clear();
+		binaryPixelBuffer.put(binaryPixels);
+		NIVision.imaqArrayToImage(binaryImg, binaryRawData, IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS);
+		binaryImgIsCurrent = true;
+	}
+	
+	/**
+	 * Sets whether the threshold, particle filter, and measurements are done in java or by NIVision.
+	 * @param useJava True to use the java lookup table and particle labeler, false to use NIVision.
+	 */
+	public void setJavaProcessingActive(boolean useJava)
+	{
+		javaProcessingActive = useJava;
+		particleDataIsCurrent = false;
+		if (!useJava)
+			updateTrackingWindow(false); // Tracking mode only works with java processing.
+	}
+	
+	/**
+	 * Sets whether an opening (erode then dilate) is done on the thresholded image before looking for particles.
+	 * This removes specks of noise less than 3 pixels across, which means fewer particles to label and score.
+	 * It also removes any part of the goal's tape that is less than 3 pixels wide, so it shouldn't be used when the goal is far away.
+	 * Only works when java processing is active.
+	 * @param active True to do the opening.
+	 */
+	public void setMorphologicalOpeningActive(boolean active)
+	{
+		morphologicalOpeningActive = active;
+	}
+	
+	/**
+	 * Sets up pyramid search. When the whole image is being searched (not tracking), a copy of the image shrunk by 
+	 * the given factor is thresholded and labeled first, and then only the area around the best candidate is thresholded 
+	 * and measured at full size. This makes finding the goal from scratch much cheaper, while the goal tests 
+	 * still use full size measurements. Only works when java processing is active.
+	 * @param factor 2 or 4 to turn pyramid search on with that factor, or 1 to turn it off.
+	 */
+	public void setPyramidSearchFactor(int factor)
+	{
+		if (factor != 1 && factor != 2 && factor != 4)
+		{
+			System.out.println("Pyramid search factor must be 1, 2, or 4, not " + factor);
+			return;
+		}
+		pyramidFactor = factor;
+		if (factor == 1)
+		{
+			coarseBits = null;
+			coarseLabeler = null;
+			coarseParticleData = null;
+		}
+		else
+		{
+			coarseBits = new BitPackedImage(IMAGE_WIDTH_IN_PIXELS / factor, IMAGE_HEIGHT_IN_PIXELS / factor);
+			coarseLabeler = new RunLengthLabeler(coarseBits.getWidth(), coarseBits.getHeight());
+			coarseLabeler.setFilterOptions(filterOptions.fillHoles != 0, filterCriteria[0].lower, filterCriteria[0].upper);
+			coarseParticleData = new ParticleMeasurements(EXPECTED_MAX_NUM_OF_PARTICLES);
+		}
+	}
+	
+	/**
+	 * Turns tracking mode on or off. In tracking mode, once a goal has been found, only a window around it is 
+	 * thresholded and labeled, which is much less work than processing the whole image. Only works when java processing is active.
+	 * @param active True to turn tracking mode on.
+	 */
+	public void setTrackingModeActive(boolean active)
+	{
+		trackingModeActive = active;
+		if (!active)
+			updateTrackingWindow(false);
+	}
+	
+	/**
+	 * Decides which part of the image to process next frame. Should be called once per frame, after the goal tests.
+	 * If the goal was found, the window is set to the goal's bounding box plus some padding.
+	 * If it was missed, the window grows around the last place the goal was seen, 
+	 * and after too many misses in a row, the whole image is searched again.
+	 * @param goalFound If a goal was found in the current frame.
+	 */
+	public void updateTrackingWindow(boolean goalFound)
+	{
+		if (!trackingModeActive || !javaProcessingActive)
+		{
+			searchWholeImage();
+		}
+		else if (goalFound)
+		{
+			trackingMisses = 0;
+			setWindow(trackedGoalBox, getBoundingBoxLeft(currentParticle), getBoundingBoxTop(currentParticle), 
+					getBoundingBoxWidth(currentParticle), getBoundingBoxHeight(currentParticle));
+			padWindow(trackedGoalBox, TRACKING_WINDOW_PADDING, searchWindow);
+		}
+		else if (isWholeImage(searchWindow))
+		{
+			// Already searching the whole image. Nothing to do.
+		}
+		else if (++trackingMisses > MAX_TRACKING_MISSES)
+		{
+			searchWholeImage();
+		}
+		else
+			padWindow(trackedGoalBox, TRACKING_WINDOW_PADDING << trackingMisses, searchWindow); // Double the padding every miss.
+	}
+	
+	/**
+	 * Goes back to searching the whole image starting next frame.
+	 */
+	private void searchWholeImage()
+	{
+		trackingMisses = 0;
+		setWindow(searchWindow, 0, 0, IMAGE_WIDTH_IN_PIXELS, IMAGE_HEIGHT_IN_PIXELS);
+	}
+	
+	/**
+	 * Sets a window to the given box with the given padding on each side, clipped to the edges of the image.
+	 * @param box The box to put the window around.
+	 * @param padding The number of pixels to add to each side.
+	 * @param window The window to set. Can be the same as box.
+	 */
+	private void padWindow(Rect box, int padding, Rect window)
+	{
+		int left = Math.max(0, box.left - padding);
+		int top = Math.max(0, box.top - padding);
+		int right = Math.min(IMAGE_WIDTH_IN_PIXELS, box.left + box.width + padding);
+		int bottom = Math.min(IMAGE_HEIGHT_IN_PIXELS, box.top + box.height + padding);
+		setWindow(window, left, top, right - left, bottom - top);
+	}
+	
+	/**
+	 * Tells if a window covers the whole image.
+	 */
+	private boolean isWholeImage(Rect window)
+	{
+		return window.width == IMAGE_WIDTH_IN_PIXELS && window.height == IMAGE_HEIGHT_IN_PIXELS;
+	}
+	
+	/**
+	 * Sets the position and size of a rectangle.
+	 */
+	private static void setWindow(Rect window, int left, int top, int width, int height)
+	{
+		window.left = left;
+		window.top = top;
+		window.width = width;
+		window.height = height;
+	}
+	
+	/**
+	 * Copies the position and size of one rectangle into another.
+	 */
+	private static void copyRect(Rect source, Rect dest)
+	{
+		setWindow(dest, source.left, source.top, source.width, source.height);
 	}
 	
 	/**
@@ -296,7 +799,20 @@ public class VisionMethods
 	 */
 	public void removeSmallParticles()
 	{
-		NIVision.imaqParticleFilter4(binaryImg, binaryImg, filterCriteria, filterOptions, null);
+		timings.start(VisionTimings.FILTER);
+		if (javaProcessingActive)
+		{
+			// The labeler measures the particles that are left while filtering, so there's no need to measure them again.
+			runLengthLabeler.filterAndMeasureParticles(binaryBits, particleData, thresholdedWindow.left, thresholdedWindow.top, thresholdedWindow.width, thresholdedWindow.height);
+			particleDataIsCurrent = true;
+			binaryImgIsCurrent = false;
+		}
+		else
+		{
+			NIVision.imaqParticleFilter4(binaryImg, binaryImg, filterCriteria, filterOptions, null);
+			particleDataIsCurrent = false;
+		}
+		timings.stop(VisionTimings.FILTER);
 	}
 	
 	/**
@@ -352,11 +868,33 @@ public class VisionMethods
 	public void findLargestParticle()
 	{
 		largestParticle = 0;
-		for (int particleNumber = 0; particleNumber < getNumOfParticles(); particleNumber++)
+		int numOfParticles = getNumOfParticles();
+		timings.start(VisionTimings.SCORE);
+		for (int particleNumber = 1; particleNumber < numOfParticles; particleNumber++)
 		{
-			if (getArea(particleNumber) > getArea(largestParticle))
+			if (particleData.area[particleNumber] > particleData.area[largestParticle])
 				largestParticle = particleNumber;
 		}
+		timings.stop(VisionTimings.SCORE);
+	}
+	
+	/**
+	 * Scores every particle in the binary image with both the area test and the aspect ratio test, 
+	 * and sets the current particle to the one that passes the aspect ratio test and looks the most like a goal.
+	 * The area test only helps rank the particles. It doesn't throw any out, just like in the old teleop code.
+	 * Unlike findLargestParticle, a large reflection can't hide the real goal this way.
+	 * @return If any particle passed the aspect ratio test. If not, the current particle isn't changed.
+	 */
+	public boolean findBestCandidate()
+	{
+		getNumOfParticles(); // Make sure the measurements are current.
+		timings.start(VisionTimings.SCORE);
+		int bestCandidate = candidateScorer.findBestCandidate(particleData);
+		timings.stop(VisionTimings.SCORE);
+		if (bestCandidate < 0)
+			return false;
+		currentParticle = bestCandidate;
+		return true;
 	}
 	
 	/**
@@ -368,8 +906,7 @@ public class VisionMethods
 	 */
 	public boolean performAreaTest()
 	{
-		double areaToBoundingBoxAreaRatio = getRatioOfAreaToBoundingBoxArea(largestParticle);
-		double areaScore = (areaToBoundingBoxAreaRatio / DESIRED_AREA_TO_BOUNDING_BOX_AREA_RATIO);
+		double areaScore = getAreaScore(largestParticle);
 		//System.out.println("Area Score: "+areaScore);
 		
 		if (MIN_AREA_SCORE <= areaScore && areaScore <= MAX_AREA_SCORE)
@@ -395,8 +932,7 @@ public class VisionMethods
 	 */
 	public boolean performAspectRatioTest()
 	{
-		double equivalentRectangleAspectRatio = getEquivalentRectangleAspectRatio(largestParticle);
-		double aspectRatioScore = (equivalentRectangleAspectRatio / DESIRED_ASPECT_RATIO);
+		double aspectRatioScore = getAspectRatioScore(largestParticle);
 		//System.out.println("Score: "+aspectRatioScore);
 		
 		if (MIN_ASPECT_RATIO_SCORE <= aspectRatioScore && aspectRatioScore <= MAX_ASPECT_RATIO_SCORE)
@@ -421,7 +957,7 @@ public class VisionMethods
 	public int getArea(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_PARTICLE_AND_HOLES_AREA);
+			return (int) particleData.area[particleID];
 		else
 			return -1;
 	}
@@ -435,7 +971,7 @@ public class VisionMethods
 	public int getCenterOfMassX(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_CENTER_OF_MASS_X);
+			return (int) particleData.centerOfMassX[particleID];
 		else
 			return -1;
 	}
@@ -449,7 +985,7 @@ public class VisionMethods
 	public int getCenterOfMassY(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_CENTER_OF_MASS_Y);
+			return (int) particleData.centerOfMassY[particleID];
 		else
 			return -1;
 	}
@@ -463,7 +999,7 @@ public class VisionMethods
 	public int getBoundingBoxTop(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_TOP);
+			return particleData.boundingRectTop[particleID];
 		else
 			return -1;
 	}
@@ -477,7 +1013,7 @@ public class VisionMethods
 	public int getBoundingBoxLeft(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_LEFT);
+			return particleData.boundingRectLeft[particleID];
 		else
 			return -1;
 	}
@@ -491,7 +1027,7 @@ public class VisionMethods
 	public int getBoundingBoxHeight(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_HEIGHT);
+			return particleData.boundingRectHeight[particleID];
 		else
 			return -1;
 	}
@@ -505,7 +1041,7 @@ public class VisionMethods
 	public int getBoundingBoxWidth(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return (int) NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_BOUNDING_RECT_WIDTH);
+			return particleData.boundingRectWidth[particleID];
 		else
 			return -1;
 	}
@@ -519,7 +1055,7 @@ public class VisionMethods
 	public double getRatioOfAreaToBoundingBoxArea(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_COMPACTNESS_FACTOR);
+			return particleData.compactnessFactor[particleID];
 		else
 			return -1;
 	}
@@ -533,11 +1069,33 @@ public class VisionMethods
 	public double getEquivalentRectangleAspectRatio(int particleID)
 	{
 		if (particleIsValid(particleID))
-			return NIVision.imaqMeasureParticle(binaryImg, particleID, 0, MeasurementType.MT_RATIO_OF_EQUIVALENT_RECT_SIDES);
+			return particleData.equivalentRectRatio[particleID];
 		else
 			return -1;
 	}
 	
+	/**
+	 * Gets the given particle's score in the area test. A score of 1 means the particle's ratio of area to bounding box area
+	 * is exactly the desired ratio.
+	 * @param particleID The particle to score.
+	 * @return The given particle's area score.
+	 */
+	public double getAreaScore(int particleID)
+	{
+		return getRatioOfAreaToBoundingBoxArea(particleID) / DESIRED_AREA_TO_BOUNDING_BOX_AREA_RATIO;
+	}
+	
+	/**
+	 * Gets the given particle's score in the aspect ratio test. A score of 1 means the aspect ratio of the particle's 
+	 * equivalent rectangle is exactly the desired aspect ratio.
+	 * @param particleID The particle to score.
+	 * @return The given particle's aspect ratio score.
+	 */
+	public double getAspectRatioScore(int particleID)
+	{
+		return getEquivalentRectangleAspectRatio(particleID) / DESIRED_ASPECT_RATIO;
+	}
+	
 	/**
 	 * Gets the ID of the current particle being tracked.
 	 * @return The ID of the current particle being tracked.
@@ -569,51 +1127,31 @@ public class VisionMethods
 	}
 	
 	/**
-	 * Calculates and returns the error in degrees given an error in pixels.
+	 * Calculates and returns the error in degrees given an error in pixels, using the camera model's lookup table.
 	 * @param errorInPixels How many pixels off from center the particle is.
 	 * @return How many degrees the camera must turn (left or right) to center the particle.
 	 */
 	public double getErrorInDegreesX(int errorInPixels)
 	{
-		return DEGREES_PER_PIXEL_HORIZONTAL_GUESS * errorInPixels;
+		return cameraModel.getAngleX(centerOfImage.x + errorInPixels);
 	}
 	
 	/**
-	 * Calculates and returns the error in degrees given an error in pixels.
+	 * Calculates and returns the error in degrees given an error in pixels, using the camera model's lookup table.
 	 * @param errorInPixels How many pixels off from center the particle is.
 	 * @return How may degrees the camera must turn (up or down) to center the particle.
 	 */
 	public double getErrorInDegreesY(int errorInPixels)
 	{
-		return DEGREES_PER_PIXEL_VERTICAL_GUESS * errorInPixels;
+		return cameraModel.getAngleY(centerOfImage.y + errorInPixels);
 	}
 	
-	public double getDampenedErrorInDegreesX(int errorInPixels)
-	{
-		return getErrorInDegreesX(errorInPixels) * CONTROL_LOOP_DAMPENER;
-	}
-	
-	public double getDampenedErrorInDegreesY(int errorInPixels)
-	{
-		return getErrorInDegreesY(errorInPixels) * CONTROL_LOOP_DAMPENER;
-	}
-	
-	public void setDegreesPerPixelVerticalGuess(double d)
-	{
-		DEGREES_PER_PIXEL_VERTICAL_GUESS = d;
-		System.out.println("GuessY: "+DEGREES_PER_PIXEL_VERTICAL_GUESS);
-	}
-	
-	public void setDegreesPerPixelHorizontalGuess(double d)
-	{
-		DEGREES_PER_PIXEL_HORIZONTAL_GUESS = d;
-		System.out.println("GuessX: "+DEGREES_PER_PIXEL_HORIZONTAL_GUESS);
-	}
-	
-	public void setControlLoopDampener(double d)
+	/**
+	 * Builds the java threshold's lookup table now if it needs to be, instead of while processing the next frame.
+	 */
+	public void prepareThresholdTable()
 	{
-		CONTROL_LOOP_DAMPENER = d;
-		System.out.println("New Dampener: "+CONTROL_LOOP_DAMPENER);
+		thresholdTable.prepare();
 	}
 	
 	public void setHSVThreshold(int hMin, int hMax, int sMin, int sMax, int vMin, int vMax)
@@ -624,5 +1162,6 @@ public class VisionMethods
 		SATURATION.maxValue = sMax;
 		VALUE.minValue = vMin;
 		VALUE.maxValue = vMax;
+		thresholdTable.setRanges(hMin, hMax, sMin, sMax, vMin, vMax); // Only causes a rebuild if something changed.
 	}
 }
\ No newline at end of file
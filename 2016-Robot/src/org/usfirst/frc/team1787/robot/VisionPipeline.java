@@ -0,0 +1,221 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class runs a list of VisionStages on each frame, in order, and times each one.
+ *
+ * The stages can be added, removed, reordered, and turned on and off, so different filters can be tried
+ * (or stages skipped in some modes) without changing the code that runs the pipeline. For example:
+ * pipeline.addStage(VisionStages.cameraThreshold());
+ * pipeline.addStage(VisionStages.removeSmallParticles());
+ * pipeline.addStage(VisionStages.findBestCandidate());
+ * pipeline.addStage(VisionStages.updateTrackingWindow());
+ *
+ * The pipeline reuses the same VisionFrame every frame, and the stages are kept in a fixed size array,
+ * so running it doesn't create any objects. The pipeline isn't thread safe: it should only be changed
+ * before the vision thread starts, or from the vision thread itself.
+ */
+public class VisionPipeline
+{
+	/** The most stages a pipeline can have. */
+	public static final int MAX_NUM_OF_STAGES = 16;
+
+	/** The stages, in the order they run. */
+	private final VisionStage[] stages = new VisionStage[MAX_NUM_OF_STAGES];
+	/** A boolean for each stage indicating if it should run. */
+	private final boolean[] stageEnabled = new boolean[MAX_NUM_OF_STAGES];
+	/** The number of stages in the pipeline. */
+	private int numOfStages = 0;
+
+	/** How long each stage took the last time it ran, in nanoseconds. */
+	private final long[] lastStageTime = new long[MAX_NUM_OF_STAGES];
+	/** The total time each stage has taken since the times were last reset, in nanoseconds. */
+	private final long[] totalStageTime = new long[MAX_NUM_OF_STAGES];
+	/** The number of times each stage has run since the times were last reset. */
+	private final long[] stageRunCount = new long[MAX_NUM_OF_STAGES];
+
+	/** The frame passed to every stage. Reset at the start of each frame. */
+	private final VisionFrame frame;
+
+	/**
+	 * Constructor for the VisionPipeline class. The pipeline starts with no stages.
+	 * @param vision The VisionMethods object the stages work with.
+	 */
+	public VisionPipeline(VisionMethods vision)
+	{
+		frame = new VisionFrame(vision);
+	}
+
+	/**
+	 * Adds a stage to the end of the pipeline. The stage starts out enabled.
+	 * @param stage The stage to add.
+	 */
+	public void addStage(VisionStage stage)
+	{
+		insertStage(numOfStages, stage);
+	}
+
+	/**
+	 * Adds a stage at the given position in the pipeline. The stages at and after that position are moved back one.
+	 * The stage starts out enabled. Resets the stage times.
+	 * @param index The position to put the stage at (0 is first).
+	 * @param stage The stage to add.
+	 */
+	public void insertStage(int index, VisionStage stage)
+	{
+		if (numOfStages == MAX_NUM_OF_STAGES || index < 0 || index > numOfStages)
+		{
+			System.out.println("Can't add vision stage " + stage.getName() + " at position " + index);
+			return;
+		}
+		System.arraycopy(stages, index, stages, index + 1, numOfStages - index);
+		System.arraycopy(stageEnabled, index, stageEnabled, index + 1, numOfStages - index);
+		stages[index] = stage;
+		stageEnabled[index] = true;
+		numOfStages++;
+		resetStageTimes();
+	}
+
+	/**
+	 * Removes the first stage with the given name. Resets the stage times.
+	 * @param name The name of the stage.
+	 * @return False if there was no stage with that name.
+	 */
+	public boolean removeStage(String name)
+	{
+		int index = indexOfStage(name);
+		if (index < 0)
+			return false;
+		System.arraycopy(stages, index + 1, stages, index, numOfStages - index - 1);
+		System.arraycopy(stageEnabled, index + 1, stageEnabled, index, numOfStages - index - 1);
+		numOfStages--;
+		stages[numOfStages] = null;
+		resetStageTimes();
+		return true;
+	}
+
+	/**
+	 * Turns the first stage with the given name on or off. A stage that is off is skipped, but stays in its place.
+	 * @param name The name of the stage.
+	 * @param enabled True to run the stage.
+	 * @return False if there was no stage with that name.
+	 */
+	public boolean setStageEnabled(String name, boolean enabled)
+	{
+		int index = indexOfStage(name);
+		if (index < 0)
+			return false;
+		stageEnabled[index] = enabled;
+		return true;
+	}
+
+	/**
+	 * Finds the first stage with the given name.
+	 * @param name The name of the stage.
+	 * @return The position of the stage, or -1 if there's no stage with that name.
+	 */
+	public int indexOfStage(String name)
+	{
+		for (int i = 0; i < numOfStages; i++)
+		{
+			if (stages[i].getName().equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Processes a frame from the camera. The pipeline's first stage should grab it (like VisionStages.cameraThreshold()).
+	 * @return The processed frame. It is reused, so it's only valid until the next frame is processed.
+	 */
+	public VisionFrame processCameraFrame()
+	{
+		frame.resetForCamera();
+		runStages();
+		return frame;
+	}
+
+	/**
+	 * Processes a frame whose pixels are already in a buffer, like a recorded frame. Nothing is copied out of the buffer.
+	 * The pipeline's first stage should use the frame's pixels (like VisionStages.pixelThreshold()).
+	 * @param pixels The buffer holding the pixels, 4 bytes per pixel in the order blue, green, red, alpha.
+	 * @param offset The index in the buffer of the first pixel.
+	 * @param captureTime The FPGA time, in seconds, when the frame was captured.
+	 * @return The processed frame. It is reused, so it's only valid until the next frame is processed.
+	 */
+	public VisionFrame processFrame(ByteBuffer pixels, int offset, double captureTime)
+	{
+		frame.resetForPixels(pixels, offset, captureTime);
+		runStages();
+		return frame;
+	}
+
+	/**
+	 * Runs every enabled stage on the frame, in order, and times each one.
+	 */
+	private void runStages()
+	{
+		for (int i = 0; i < numOfStages; i++)
+		{
+			if (!stageEnabled[i])
+				continue;
+			long startTime = System.nanoTime();
+			stages[i].process(frame);
+			long time = System.nanoTime() - startTime;
+			lastStageTime[i] = time;
+			totalStageTime[i] += time;
+			stageRunCount[i]++;
+		}
+	}
+
+	public int getNumOfStages()
+	{
+		return numOfStages;
+	}
+
+	public String getStageName(int index)
+	{
+		return stages[index].getName();
+	}
+
+	public boolean isStageEnabled(int index)
+	{
+		return stageEnabled[index];
+	}
+
+	/**
+	 * Gets how long a stage took the last time it ran.
+	 * @param index The position of the stage.
+	 * @return The time, in nanoseconds.
+	 */
+	public long getLastStageTime(int index)
+	{
+		return lastStageTime[index];
+	}
+
+	/**
+	 * Gets the average time a stage has taken since the times were last reset.
+	 * @param index The position of the stage.
+	 * @return The average time, in nanoseconds, or 0 if the stage hasn't run.
+	 */
+	public double getAverageStageTime(int index)
+	{
+		if (stageRunCount[index] == 0)
+			return 0;
+		return (double) totalStageTime[index] / stageRunCount[index];
+	}
+
+	/**
+	 * Clears the timing of every stage.
+	 */
+	public void resetStageTimes()
+	{
+		for (int i = 0; i < MAX_NUM_OF_STAGES; i++)
+		{
+			lastStageTime[i] = 0;
+			totalStageTime[i] = 0;
+			stageRunCount[i] = 0;
+		}
+	}
+}
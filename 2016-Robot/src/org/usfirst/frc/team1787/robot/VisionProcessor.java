@@ -0,0 +1,232 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class runs all of the camera work (grabbing images, vision processing, and sending images to the dashboard)
+ * on its own thread, so a slow frame never holds up driving, the arm, or the wedge.
+ *
+ * Only the vision thread ever touches the VisionMethods object. The main robot loop talks to it through the methods in this class:
+ * it sets flags and requests (which the vision thread picks up before its next frame), and reads the most recent
+ * VisionResult, which is swapped in with an AtomicReference so neither thread ever waits on the other.
+ */
+public class VisionProcessor implements Runnable
+{
+	/** The object that does the actual camera and vision work. Only used by the vision thread. */
+	private final VisionMethods visionMaster;
+	/** The stages each frame goes through while processing. */
+	private final VisionPipeline pipeline;
+	/** The thread that the processing runs on. */
+	private Thread visionThread;
+
+	/** The result from the most recently processed frame. */
+	private final AtomicReference<VisionResult> latestResult = new AtomicReference<VisionResult>(VisionResult.noTarget(0));
+
+	/** A boolean indicating if frames should be processed, or just sent to the dashboard as they are. */
+	private volatile boolean imageProcessingActive = false;
+	/** A boolean indicating if a binary image or a regular image should be drawn on and sent to the dashboard. */
+	private volatile boolean sendBinaryImage = true;
+	/** Set by the main loop when the active camera feed should be switched. Cleared by the vision thread once it has been done. */
+	private final AtomicBoolean camFeedToggleRequested = new AtomicBoolean(false);
+	/** Set by the main loop when the side camera's settings should be switched. Cleared by the vision thread once it has been done. */
+	private final AtomicBoolean camSettingsToggleRequested = new AtomicBoolean(false);
+
+	// Failure handling
+	/** How long, in milliseconds, the vision thread sleeps after a frame fails. Doubles with each failure in a row, up to MAX_FAILURE_BACKOFF. */
+	private static final long MIN_FAILURE_BACKOFF = 50;
+	/** The longest time, in milliseconds, the vision thread sleeps after a frame fails. */
+	private static final long MAX_FAILURE_BACKOFF = 1000;
+	/** The shortest time, in nanoseconds, between writing frame failures to the log. */
+	private static final long MIN_FAILURE_LOG_INTERVAL = 1000000000L;
+	/** Logged when a frame fails, like when a camera is unplugged. */
+	private static final int LOG_FRAME_FAILED = EventLog.registerEvent("Vision frame failed (%.0f in a row, %.0f failures not shown)");
+	/** The number of frames in a row that have failed. */
+	private int consecutiveFailures = 0;
+	/** The number of failures that weren't written to the log because one was written too recently. */
+	private int failuresSinceLog = 0;
+	/** The System.nanoTime() when a failure was last written to the log. */
+	private long lastFailureLogTime = 0;
+
+	/**
+	 * Constructor for the VisionProcessor class. The vision thread isn't started until start() is called.
+	 * @param vision The VisionMethods object to use. Nothing else should use this object after the thread is started.
+	 */
+	public VisionProcessor(VisionMethods vision)
+	{
+		visionMaster = vision;
+		pipeline = new VisionPipeline(vision);
+		pipeline.addStage(VisionStages.cameraThreshold());
+		pipeline.addStage(VisionStages.removeSmallParticles());
+		pipeline.addStage(VisionStages.findBestCandidate());
+		pipeline.addStage(VisionStages.updateTrackingWindow());
+	}
+
+	/**
+	 * Gets the pipeline that processes each frame, so stages can be added, removed, or turned off.
+	 * Only change the pipeline before start() is called, since after that it belongs to the vision thread.
+	 * @return The pipeline.
+	 */
+	public VisionPipeline getPipeline()
+	{
+		return pipeline;
+	}
+
+	/**
+	 * Starts the vision thread.
+	 */
+	public void start()
+	{
+		visionThread = new Thread(this, "Vision");
+		visionThread.setDaemon(true); // Don't keep the program alive just for vision.
+		visionThread.start();
+	}
+
+	/**
+	 * The vision thread's main loop. Each iteration handles one camera frame.
+	 * Grabbing an image waits for the camera to have a new frame, so this loop runs at the camera's frame rate.
+	 * If a camera drops out, grabbing fails right away instead of waiting, so after a failure the thread sleeps for a while
+	 * (longer each time it fails in a row) to keep it from using a whole core and starving the control loop and the main thread.
+	 */
+	public void run()
+	{
+		while (!Thread.currentThread().isInterrupted())
+		{
+			try
+			{
+				handleRequests();
+				if (imageProcessingActive)
+					processFrame();
+				else
+					visionMaster.sendRegularImageToDashboard();
+				consecutiveFailures = 0;
+			}
+			catch (RuntimeException e)
+			{
+				// A bad frame shouldn't kill vision for the rest of the match.
+				latestResult.set(VisionResult.noTarget(visionMaster.getLastCaptureTime()));
+				if (!backOffAfterFailure())
+					return;
+			}
+			visionMaster.getTimings().endFrame();
+			visionMaster.getTimings().putDataOnSmartDashboardIfDue();
+		}
+	}
+
+	/**
+	 * Logs a failed frame (at most once every MIN_FAILURE_LOG_INTERVAL), then sleeps for the backoff time.
+	 * @return False if the thread was interrupted while sleeping, so it should stop.
+	 */
+	private boolean backOffAfterFailure()
+	{
+		consecutiveFailures++;
+		long now = System.nanoTime();
+		if (now - lastFailureLogTime >= MIN_FAILURE_LOG_INTERVAL)
+		{
+			EventLog.log(LOG_FRAME_FAILED, consecutiveFailures, failuresSinceLog);
+			lastFailureLogTime = now;
+			failuresSinceLog = 0;
+		}
+		else
+			failuresSinceLog++;
+
+		long backoff = MIN_FAILURE_BACKOFF << Math.min(consecutiveFailures - 1, 5);
+		try
+		{
+			Thread.sleep(Math.min(backoff, MAX_FAILURE_BACKOFF));
+		}
+		catch (InterruptedException e)
+		{
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Performs any camera changes that the main loop has asked for since the last frame.
+	 */
+	private void handleRequests()
+	{
+		if (camFeedToggleRequested.getAndSet(false))
+			visionMaster.toggleActiveCamFeed();
+		if (camSettingsToggleRequested.getAndSet(false))
+			visionMaster.toggleCamSettings();
+	}
+
+	/**
+	 * Grabs a frame, looks for a goal in it, publishes the result, and sends the processed image to the dashboard.
+	 */
+	private void processFrame()
+	{
+		VisionFrame frame = pipeline.processCameraFrame();
+
+		VisionResult result = VisionResult.noTarget(frame.getCaptureTime());
+		if (frame.isGoalFound())
+		{
+			int goal = frame.getGoalParticle();
+			result = new VisionResult(visionMaster.getCenterOfMassX(goal), visionMaster.getCenterOfMassY(goal),
+					visionMaster.getBoundingBoxLeft(goal), visionMaster.getBoundingBoxTop(goal),
+					visionMaster.getBoundingBoxWidth(goal), visionMaster.getBoundingBoxHeight(goal),
+					visionMaster.getAreaScore(goal), visionMaster.getAspectRatioScore(goal), frame.getCaptureTime());
+		}
+		latestResult.set(result); // Publish before sending to the dashboard so the main loop gets it as soon as possible.
+
+		if (sendBinaryImage)
+			visionMaster.sendProcessedImageToDashboard();
+		else
+			visionMaster.sendHybridImageToDashboard();
+	}
+
+	/**
+	 * Gets the result from the most recently processed frame. Never waits on the vision thread.
+	 * @return The most recent result. Check its capture time to tell if it's a new one.
+	 */
+	public VisionResult getLatestResult()
+	{
+		return latestResult.get();
+	}
+
+	/**
+	 * Sets whether frames should be processed, or just sent to the dashboard as they are.
+	 * @param active True to process frames.
+	 */
+	public void setImageProcessingActive(boolean active)
+	{
+		imageProcessingActive = active;
+	}
+
+	/**
+	 * Sets whether a binary image or a regular image is drawn on and sent to the dashboard while processing.
+	 * @param binary True to send the binary image.
+	 */
+	public void setSendBinaryImage(boolean binary)
+	{
+		sendBinaryImage = binary;
+	}
+
+	/**
+	 * Asks the vision thread to switch which camera feed is active before its next frame.
+	 */
+	public void requestCamFeedToggle()
+	{
+		camFeedToggleRequested.set(true);
+	}
+
+	/**
+	 * Asks the vision thread to switch the side camera's settings before its next frame.
+	 */
+	public void requestCamSettingsToggle()
+	{
+		camSettingsToggleRequested.set(true);
+	}
+
+	/**
+	 * Tells how the last change to the side camera's settings is going. Never waits on the vision thread or the camera.
+	 * A toggle that has been requested but not picked up by the vision thread yet isn't counted.
+	 * @return One of the CameraSettingsApplier.STATE_ constants.
+	 */
+	public int getCamSettingsState()
+	{
+		return visionMaster.getCamSettingsState();
+	}
+}
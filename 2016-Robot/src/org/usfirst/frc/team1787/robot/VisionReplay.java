@@ -0,0 +1,159 @@
+package org.usfirst.frc.team1787.robot;
+
+import java.io.IOException;
+
+/**
+ * This class runs frames recorded on the robot (see VisionMethods.startRecording()) back through the vision processing,
+ * as fast as it can, on a regular computer. It doesn't need a camera, a roborio, or NIVision.
+ *
+ * The recording is processed three times: once searching the whole image every frame, once in tracking mode,
+ * and once with pyramid search (searching a shrunk copy of the image first).
+ * For each run it prints how long each step took (50th, 95th, and 99th percentile), how many frames per second were processed, and how many frames a goal was found in.
+ * It then prints how far the tracking and pyramid runs' goal positions were from the full search's, which shows if either is losing accuracy.
+ *
+ * To run it (from the 2016-Robot folder, after building):
+ * java -cp build/classes:build/jars/WPILib.jar org.usfirst.frc.team1787.robot.VisionReplay vision-frames.bin
+ */
+public class VisionReplay
+{
+	/** The number of times the recording is processed before timing starts, so the JIT has compiled everything. */
+	private static final int WARMUP_RUNS = 2;
+	/** The pyramid search factor used for the pyramid run. */
+	private static final int PYRAMID_FACTOR = 2;
+
+	/**
+	 * Replays a recording and prints the results.
+	 * @param args The path of the recording file.
+	 * @throws IOException If the recording can't be read.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: VisionReplay <recording file>");
+			return;
+		}
+
+		FrameReplaySource frames = new FrameReplaySource(args[0]);
+		int numOfFrames = frames.getNumOfFrames();
+		System.out.println("Frames: " + numOfFrames + " (" + frames.getWidth() + "x" + frames.getHeight() + ")");
+		if (numOfFrames == 0)
+			return;
+
+		int[] fullSearchX = new int[numOfFrames];
+		int[] fullSearchY = new int[numOfFrames];
+		int[] trackingX = new int[numOfFrames];
+		int[] trackingY = new int[numOfFrames];
+		int[] pyramidX = new int[numOfFrames];
+		int[] pyramidY = new int[numOfFrames];
+
+		for (int i = 0; i < WARMUP_RUNS; i++)
+		{
+			replay(frames, null, false, 1, fullSearchX, fullSearchY);
+			replay(frames, null, true, 1, trackingX, trackingY);
+			replay(frames, null, false, PYRAMID_FACTOR, pyramidX, pyramidY);
+		}
+
+		replay(frames, "Full search", false, 1, fullSearchX, fullSearchY);
+		replay(frames, "Tracking", true, 1, trackingX, trackingY);
+		replay(frames, "Pyramid search (" + PYRAMID_FACTOR + "x)", false, PYRAMID_FACTOR, pyramidX, pyramidY);
+
+		compareRuns("Tracking", fullSearchX, fullSearchY, trackingX, trackingY);
+		compareRuns("Pyramid search", fullSearchX, fullSearchY, pyramidX, pyramidY);
+	}
+
+	/**
+	 * Compares the goal positions found by a run to the ones found by the full search, in frames where both found a goal,
+	 * and prints the results.
+	 * @param name The name of the run being compared.
+	 * @param fullSearchX The X coordinates of the goal found by the full search in each frame, or -1 if none was found.
+	 * @param fullSearchY The Y coordinates of the goal found by the full search in each frame.
+	 * @param otherX The X coordinates of the goal found by the other run in each frame, or -1 if none was found.
+	 * @param otherY The Y coordinates of the goal found by the other run in each frame.
+	 */
+	private static void compareRuns(String name, int[] fullSearchX, int[] fullSearchY, int[] otherX, int[] otherY)
+	{
+		int framesCompared = 0;
+		int framesOnlyFoundByOne = 0;
+		double totalDistance = 0;
+		double maxDistance = 0;
+		for (int i = 0; i < fullSearchX.length; i++)
+		{
+			boolean fullSearchFound = fullSearchX[i] >= 0;
+			boolean otherFound = otherX[i] >= 0;
+			if (fullSearchFound && otherFound)
+			{
+				double distance = Math.hypot(fullSearchX[i] - otherX[i], fullSearchY[i] - otherY[i]);
+				totalDistance += distance;
+				maxDistance = Math.max(maxDistance, distance);
+				framesCompared++;
+			}
+			else if (fullSearchFound != otherFound)
+				framesOnlyFoundByOne++;
+		}
+		System.out.println(name + " vs. full search, frames where only one found a goal: " + framesOnlyFoundByOne);
+		if (framesCompared > 0)
+			System.out.printf("%s vs. full search, goal position difference (pixels): mean %.2f, max %.2f%n", name, totalDistance / framesCompared, maxDistance);
+	}
+
+	/**
+	 * Processes every frame in the recording with a new VisionMethods object, the same way VisionProcessor does on the robot.
+	 * The threshold lookup table is built before the clock starts, so the times are for processing frames, not setting up.
+	 * @param frames The recording.
+	 * @param name The name of the run to print the results under, or null to not print anything (for warmup runs).
+	 * @param trackingMode If tracking mode should be used.
+	 * @param pyramidFactor The pyramid search factor to use, or 1 for no pyramid search.
+	 * @param goalX Filled in with the X coordinate of the goal's center of mass in each frame, or -1 if no goal was found.
+	 * @param goalY Filled in with the Y coordinate of the goal's center of mass in each frame, or -1 if no goal was found.
+	 */
+	private static void replay(FrameReplaySource frames, String name, boolean trackingMode, int pyramidFactor, int[] goalX, int[] goalY)
+	{
+		VisionMethods visionMaster = new VisionMethods();
+		visionMaster.setTrackingModeActive(trackingMode);
+		visionMaster.setPyramidSearchFactor(pyramidFactor);
+		VisionPipeline pipeline = new VisionPipeline(visionMaster);
+		pipeline.addStage(VisionStages.pixelThreshold());
+		pipeline.addStage(VisionStages.removeSmallParticles());
+		pipeline.addStage(VisionStages.findBestCandidate());
+		pipeline.addStage(VisionStages.updateTrackingWindow());
+		frames.rewind();
+		visionMaster.prepareThresholdTable(); // Building the table is a one time cost, so it's kept out of the timed frames.
+		visionMaster.getTimings().resetHistograms();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; frames.nextFrame(); i++)
+		{
+			VisionFrame frame = pipeline.processFrame(frames.getPixels(), frames.getPixelOffset(), frames.getCaptureTime());
+			int goal = frame.getGoalParticle();
+			goalX[i] = frame.isGoalFound() ? visionMaster.getCenterOfMassX(goal) : -1;
+			goalY[i] = frame.isGoalFound() ? visionMaster.getCenterOfMassY(goal) : -1;
+			visionMaster.getTimings().endFrame();
+		}
+		long time = System.nanoTime() - startTime;
+
+		if (name != null)
+		{
+			printRun(name, time, goalX);
+			visionMaster.getTimings().printSummary();
+		}
+	}
+
+	/**
+	 * Prints the frame rate and hit rate of one run.
+	 * @param name The name of the run.
+	 * @param nanoseconds The time the run took.
+	 * @param goalX The X coordinates of the goal found in each frame, or -1 if none was found.
+	 */
+	private static void printRun(String name, long nanoseconds, int[] goalX)
+	{
+		int framesWithGoal = 0;
+		for (int x : goalX)
+		{
+			if (x >= 0)
+				framesWithGoal++;
+		}
+		double seconds = nanoseconds / 1e9;
+		System.out.printf("%s: %.1f fps (%.3f ms per frame), goal found in %d of %d frames (%.1f%%)%n", name,
+				goalX.length / seconds, seconds * 1000 / goalX.length, framesWithGoal, goalX.length, 100.0 * framesWithGoal / goalX.length);
+	}
+}
@@ -0,0 +1,138 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * This class holds the result of processing one camera frame.
+ * Objects of this class are never changed after they are created, so the vision thread can hand them
+ * to the main robot loop without any locking.
+ */
+public final class VisionResult
+{
+	/** A boolean indicating if a goal was found in the frame. If false, none of the target values mean anything. */
+	private final boolean targetFound;
+	/** The X coordinate of the goal's center of mass. */
+	private final int centerOfMassX;
+	/** The Y coordinate of the goal's center of mass. */
+	private final int centerOfMassY;
+	/** The leftmost X coordinate of the goal's bounding box. */
+	private final int boundingBoxLeft;
+	/** The topmost Y coordinate of the goal's bounding box. */
+	private final int boundingBoxTop;
+	/** The width of the goal's bounding box. */
+	private final int boundingBoxWidth;
+	/** The height of the goal's bounding box. */
+	private final int boundingBoxHeight;
+	/** The goal's score in the area test (1.0 is a perfect match). */
+	private final double areaScore;
+	/** The goal's score in the aspect ratio test (1.0 is a perfect match). */
+	private final double aspectRatioScore;
+	/** The FPGA time, in seconds, when the frame was captured. */
+	private final double captureTime;
+
+	/**
+	 * Constructor for a result where a goal was found.
+	 * @param comX The X coordinate of the goal's center of mass.
+	 * @param comY The Y coordinate of the goal's center of mass.
+	 * @param left The leftmost X coordinate of the goal's bounding box.
+	 * @param top The topmost Y coordinate of the goal's bounding box.
+	 * @param width The width of the goal's bounding box.
+	 * @param height The height of the goal's bounding box.
+	 * @param area The goal's score in the area test.
+	 * @param aspectRatio The goal's score in the aspect ratio test.
+	 * @param time The FPGA time, in seconds, when the frame was captured.
+	 */
+	public VisionResult(int comX, int comY, int left, int top, int width, int height, double area, double aspectRatio, double time)
+	{
+		targetFound = true;
+		centerOfMassX = comX;
+		centerOfMassY = comY;
+		boundingBoxLeft = left;
+		boundingBoxTop = top;
+		boundingBoxWidth = width;
+		boundingBoxHeight = height;
+		areaScore = area;
+		aspectRatioScore = aspectRatio;
+		captureTime = time;
+	}
+
+	/**
+	 * Constructor for a result where no goal was found.
+	 * @param time The FPGA time, in seconds, when the frame was captured.
+	 */
+	private VisionResult(double time)
+	{
+		targetFound = false;
+		centerOfMassX = -1;
+		centerOfMassY = -1;
+		boundingBoxLeft = -1;
+		boundingBoxTop = -1;
+		boundingBoxWidth = -1;
+		boundingBoxHeight = -1;
+		areaScore = 0;
+		aspectRatioScore = 0;
+		captureTime = time;
+	}
+
+	/**
+	 * Creates a result for a frame where no goal was found.
+	 * @param time The FPGA time, in seconds, when the frame was captured.
+	 * @return A result with targetFound set to false.
+	 */
+	public static VisionResult noTarget(double time)
+	{
+		return new VisionResult(time);
+	}
+
+	public boolean isTargetFound()
+	{
+		return targetFound;
+	}
+
+	public int getCenterOfMassX()
+	{
+		return centerOfMassX;
+	}
+
+	public int getCenterOfMassY()
+	{
+		return centerOfMassY;
+	}
+
+	public int getBoundingBoxLeft()
+	{
+		return boundingBoxLeft;
+	}
+
+	public int getBoundingBoxTop()
+	{
+		return boundingBoxTop;
+	}
+
+	public int getBoundingBoxWidth()
+	{
+		return boundingBoxWidth;
+	}
+
+	public int getBoundingBoxHeight()
+	{
+		return boundingBoxHeight;
+	}
+
+	public double getAreaScore()
+	{
+		return areaScore;
+	}
+
+	public double getAspectRatioScore()
+	{
+		return aspectRatioScore;
+	}
+
+	/**
+	 * Gets the FPGA time when the frame this result came from was captured.
+	 * @return The FPGA time, in seconds, when the frame was captured.
+	 */
+	public double getCaptureTime()
+	{
+		return captureTime;
+	}
+}
@@ -0,0 +1,23 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * One step of processing a camera frame, like the HSV threshold or the particle filter. Stages are put together in a VisionPipeline.
+ *
+ * A stage works on the images and measurements the frame's VisionMethods object already has, and passes anything else along
+ * in the VisionFrame (like whether a goal was found). Stages run every frame, so they shouldn't copy image data or create objects.
+ * The standard stages are in VisionStages.
+ */
+public interface VisionStage
+{
+	/**
+	 * Gets the name of the stage. Used to find the stage in a pipeline, and to label its timing.
+	 * @return The name of the stage.
+	 */
+	String getName();
+
+	/**
+	 * Does this stage's work on a frame.
+	 * @param frame The frame being processed.
+	 */
+	void process(VisionFrame frame);
+}
@@ -0,0 +1,206 @@
+package org.usfirst.frc.team1787.robot;
+
+/**
+ * The standard stages for a VisionPipeline. Each method makes a new stage object, so stages should be made once
+ * when the pipeline is set up, not every frame.
+ *
+ * The usual order is a threshold stage, removeSmallParticles(), findBestCandidate(), then updateTrackingWindow().
+ * The old way of finding the goal (findLargestParticle(), then areaTest() and aspectRatioTest()) is here too, so it can be compared.
+ */
+public final class VisionStages
+{
+	private VisionStages()
+	{
+	}
+
+	/**
+	 * Grabs a frame from the active camera and performs the HSV threshold on it.
+	 * @return The stage.
+	 */
+	public static VisionStage cameraThreshold()
+	{
+		return new CameraThreshold();
+	}
+
+	/**
+	 * Performs the HSV threshold (in java) on the pixels the frame was given, like a recorded frame.
+	 * @return The stage.
+	 */
+	public static VisionStage pixelThreshold()
+	{
+		return new PixelThreshold();
+	}
+
+	/**
+	 * Removes very small particles from the binary image, and measures the ones that are left.
+	 * @return The stage.
+	 */
+	public static VisionStage removeSmallParticles()
+	{
+		return new RemoveSmallParticles();
+	}
+
+	/**
+	 * Scores every particle with both goal tests, and sets the frame's goal to the best one (or no goal if none pass the aspect ratio test).
+	 * @return The stage.
+	 */
+	public static VisionStage findBestCandidate()
+	{
+		return new FindBestCandidate();
+	}
+
+	/**
+	 * Sets the frame's goal to the largest particle. It should be followed by areaTest() and aspectRatioTest(), which check it.
+	 * @return The stage.
+	 */
+	public static VisionStage findLargestParticle()
+	{
+		return new FindLargestParticle();
+	}
+
+	/**
+	 * Performs the area test on the largest particle, and clears the frame's goal if it fails. Only works after findLargestParticle().
+	 * @return The stage.
+	 */
+	public static VisionStage areaTest()
+	{
+		return new AreaTest();
+	}
+
+	/**
+	 * Performs the aspect ratio test on the largest particle, and clears the frame's goal if it fails. Only works after findLargestParticle().
+	 * @return The stage.
+	 */
+	public static VisionStage aspectRatioTest()
+	{
+		return new AspectRatioTest();
+	}
+
+	/**
+	 * Decides which part of the image to process next frame, based on whether a goal was found.
+	 * @return The stage.
+	 */
+	public static VisionStage updateTrackingWindow()
+	{
+		return new UpdateTrackingWindow();
+	}
+
+	private static final class CameraThreshold implements VisionStage
+	{
+		public String getName()
+		{
+			return "Threshold";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			VisionMethods vision = frame.getVision();
+			vision.performHSVFilter();
+			frame.setCaptureTime(vision.getLastCaptureTime());
+		}
+	}
+
+	private static final class PixelThreshold implements VisionStage
+	{
+		public String getName()
+		{
+			return "Threshold";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			frame.getVision().performHSVFilter(frame.getPixels(), frame.getPixelOffset(), frame.getCaptureTime());
+		}
+	}
+
+	private static final class RemoveSmallParticles implements VisionStage
+	{
+		public String getName()
+		{
+			return "Remove Small Particles";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			frame.getVision().removeSmallParticles();
+		}
+	}
+
+	private static final class FindBestCandidate implements VisionStage
+	{
+		public String getName()
+		{
+			return "Find Best Candidate";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			VisionMethods vision = frame.getVision();
+			if (vision.getNumOfParticles() > 0 && vision.findBestCandidate())
+				frame.setGoal(vision.getCurrentParticle());
+			else
+				frame.clearGoal();
+		}
+	}
+
+	private static final class FindLargestParticle implements VisionStage
+	{
+		public String getName()
+		{
+			return "Find Largest Particle";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			VisionMethods vision = frame.getVision();
+			if (vision.getNumOfParticles() > 0)
+			{
+				vision.findLargestParticle();
+				frame.setGoal(vision.getLargestParticle());
+			}
+			else
+				frame.clearGoal();
+		}
+	}
+
+	private static final class AreaTest implements VisionStage
+	{
+		public String getName()
+		{
+			return "Area Test";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			if (frame.isGoalFound() && !frame.getVision().performAreaTest())
+				frame.clearGoal();
+		}
+	}
+
+	private static final class AspectRatioTest implements VisionStage
+	{
+		public String getName()
+		{
+			return "Aspect Ratio Test";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			if (frame.isGoalFound() && !frame.getVision().performAspectRatioTest())
+				frame.clearGoal();
+		}
+	}
+
+	private static final class UpdateTrackingWindow implements VisionStage
+	{
+		public String getName()
+		{
+			return "Update Tracking Window";
+		}
+
+		public void process(VisionFrame frame)
+		{
+			frame.getVision().updateTrackingWindow(frame.isGoalFound());
+		}
+	}
+}
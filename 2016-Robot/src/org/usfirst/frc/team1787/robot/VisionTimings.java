@@ -0,0 +1,216 @@
+package org.usfirst.frc.team1787.robot;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * This class times each step of processing a frame, and keeps a TimingHistogram of each step's time,
+ * so we can see which step is slow and how often (not just on average).
+ *
+ * A step can be timed in more than one piece per frame (every start() is matched with a stop(), and the pieces are added up).
+ * endFrame() records each step's total for the frame into its histogram. Steps that didn't run that frame aren't recorded,
+ * so skipping a step doesn't drag its percentiles down. The time between endFrame() calls is recorded too, as the total frame time.
+ *
+ * Everything is made in the constructor, so timing a frame doesn't create anything. Only the vision thread should use this object.
+ */
+public class VisionTimings
+{
+	/** Grabbing the frame from the camera, including waiting for it, and flattening it for the java threshold. */
+	public static final int CAPTURE = 0;
+	/** The HSV threshold, including the coarse search of pyramid search. */
+	public static final int THRESHOLD = 1;
+	/** Removing small particles. With java processing on, this also measures the particles that are left. */
+	public static final int FILTER = 2;
+	/** Measuring the particles, when it isn't done by the filter. */
+	public static final int MEASURE = 3;
+	/** Scoring the particles to pick the goal. */
+	public static final int SCORE = 4;
+	/** Making the dashboard image and drawing the bounding box and crosshairs on it. */
+	public static final int DRAW = 5;
+	/** Sending the image to the dashboard. */
+	public static final int SEND = 6;
+	/** The number of steps. */
+	public static final int NUM_OF_STEPS = 7;
+
+	/** The name of each step, used on the SmartDashboard. */
+	private static final String[] STEP_NAMES = {"Capture", "Threshold", "Filter", "Measure", "Score", "Draw", "Send"};
+
+	/** The width of each histogram bucket, in nanoseconds (0.05 ms). */
+	private static final long BUCKET_WIDTH = 50000;
+	/** The number of histogram buckets. With 0.05 ms buckets, times up to 100 ms are counted precisely. */
+	private static final int NUM_OF_BUCKETS = 2000;
+
+	/** The time, in nanoseconds, between putting data on the SmartDashboard. */
+	private static final long PUBLISH_PERIOD = 1000000000L;
+	/** The number of publishes between histogram resets. The percentiles cover up to this many seconds of frames. */
+	private static final int PUBLISHES_PER_WINDOW = 10;
+
+	/** A histogram of each step's time per frame. */
+	private final TimingHistogram[] stepHistograms = new TimingHistogram[NUM_OF_STEPS];
+	/** A histogram of the time between the end of each frame and the end of the next one. */
+	private final TimingHistogram frameHistogram = new TimingHistogram(BUCKET_WIDTH, NUM_OF_BUCKETS);
+
+	/** The System.nanoTime() when each step was last started. */
+	private final long[] stepStartTime = new long[NUM_OF_STEPS];
+	/** The total time each step has taken so far this frame, in nanoseconds. */
+	private final long[] stepTimeThisFrame = new long[NUM_OF_STEPS];
+	/** A boolean for each step indicating if it has run this frame. */
+	private final boolean[] stepRanThisFrame = new boolean[NUM_OF_STEPS];
+
+	/** The System.nanoTime() when the last frame ended. 0 before the first frame. */
+	private long lastFrameEndTime = 0;
+	/** The System.nanoTime() when data was last put on the SmartDashboard. 0 before the first frame. */
+	private long lastPublishTime = 0;
+	/** The number of frames ended since data was last put on the SmartDashboard. */
+	private int framesSincePublish = 0;
+	/** The number of publishes since the histograms were last reset. */
+	private int publishesSinceReset = 0;
+	/** The number of frames per second processed between the last two publishes. */
+	private double framesPerSecond = 0;
+
+	/**
+	 * Constructor for the VisionTimings class.
+	 */
+	public VisionTimings()
+	{
+		for (int i = 0; i < NUM_OF_STEPS; i++)
+			stepHistograms[i] = new TimingHistogram(BUCKET_WIDTH, NUM_OF_BUCKETS);
+	}
+
+	/**
+	 * Starts timing a step.
+	 * @param step One of the step constants (like THRESHOLD).
+	 */
+	public void start(int step)
+	{
+		stepStartTime[step] = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing a step, and adds the time since start() to the step's time for this frame.
+	 * @param step One of the step constants (like THRESHOLD).
+	 */
+	public void stop(int step)
+	{
+		stepTimeThisFrame[step] += System.nanoTime() - stepStartTime[step];
+		stepRanThisFrame[step] = true;
+	}
+
+	/**
+	 * Records the time of every step that ran this frame, and the total frame time, then gets ready for the next frame.
+	 */
+	public void endFrame()
+	{
+		for (int i = 0; i < NUM_OF_STEPS; i++)
+		{
+			if (stepRanThisFrame[i])
+				stepHistograms[i].record(stepTimeThisFrame[i]);
+			stepTimeThisFrame[i] = 0;
+			stepRanThisFrame[i] = false;
+		}
+
+		long now = System.nanoTime();
+		if (lastFrameEndTime != 0)
+			frameHistogram.record(now - lastFrameEndTime);
+		lastFrameEndTime = now;
+		framesSincePublish++;
+	}
+
+	/**
+	 * Puts the 50th, 95th, and 99th percentile of each step's time, the frame time, and the frames per second on the SmartDashboard,
+	 * if it's been long enough since the last time. Meant to be called every frame.
+	 * The histograms are reset every PUBLISHES_PER_WINDOW publishes, so old frames don't hide a new problem.
+	 */
+	public void putDataOnSmartDashboardIfDue()
+	{
+		long now = System.nanoTime();
+		if (lastPublishTime == 0)
+		{
+			lastPublishTime = now;
+			framesSincePublish = 0;
+			return;
+		}
+		if (now - lastPublishTime < PUBLISH_PERIOD)
+			return;
+
+		framesPerSecond = framesSincePublish * 1e9 / (now - lastPublishTime);
+		putDataOnSmartDashboard();
+		lastPublishTime = now;
+		framesSincePublish = 0;
+
+		if (++publishesSinceReset >= PUBLISHES_PER_WINDOW)
+		{
+			resetHistograms();
+			publishesSinceReset = 0;
+		}
+	}
+
+	/**
+	 * Puts the vision timing data on the SmartDashboard. All of the times are in milliseconds.
+	 */
+	public void putDataOnSmartDashboard()
+	{
+		SmartDashboard.putNumber("Vision FPS", framesPerSecond);
+		putPercentiles("Vision Frame", frameHistogram);
+		for (int i = 0; i < NUM_OF_STEPS; i++)
+			putPercentiles("Vision " + STEP_NAMES[i], stepHistograms[i]);
+	}
+
+	private static void putPercentiles(String name, TimingHistogram histogram)
+	{
+		SmartDashboard.putNumber(name + " p50 (ms)", histogram.getPercentile(50) / 1e6);
+		SmartDashboard.putNumber(name + " p95 (ms)", histogram.getPercentile(95) / 1e6);
+		SmartDashboard.putNumber(name + " p99 (ms)", histogram.getPercentile(99) / 1e6);
+	}
+
+	/**
+	 * Prints the percentiles of each step that has run, for use off the robot (like in VisionReplay).
+	 */
+	public void printSummary()
+	{
+		for (int i = 0; i < NUM_OF_STEPS; i++)
+		{
+			TimingHistogram histogram = stepHistograms[i];
+			if (histogram.getCount() > 0)
+			{
+				System.out.printf("  %-10s p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms%n", STEP_NAMES[i],
+						histogram.getPercentile(50) / 1e6, histogram.getPercentile(95) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * Forgets every time recorded.
+	 */
+	public void resetHistograms()
+	{
+		for (int i = 0; i < NUM_OF_STEPS; i++)
+			stepHistograms[i].reset();
+		frameHistogram.reset();
+	}
+
+	public double getFramesPerSecond()
+	{
+		return framesPerSecond;
+	}
+
+	/**
+	 * Gets a percentile of a step's time.
+	 * @param step One of the step constants (like THRESHOLD).
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The time, in nanoseconds.
+	 */
+	public long getStepPercentile(int step, double percentile)
+	{
+		return stepHistograms[step].getPercentile(percentile);
+	}
+
+	/**
+	 * Gets a percentile of the time between frames.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The time, in nanoseconds.
+	 */
+	public long getFramePercentile(double percentile)
+	{
+		return frameHistogram.getPercentile(percentile);
+	}
+}
@@ -0,0 +1,95 @@
+package org.usfirst.frc.team1787.robot;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * This class is a wait that can be checked from periodic code, instead of Timer.delay().
+ *
+ * Timer.delay() stops the thread that calls it. When that's the main robot thread, nothing else runs for the whole wait:
+ * the wedge and arm can't be stopped, the dashboard isn't updated, and the motor safety watchdog stops the drive motors.
+ * A WaitStep just remembers the time the wait should end at, and each loop checks if that time has passed,
+ * so waiting costs nothing and everything else keeps running.
+ *
+ * For a step in a step counter, waitFor() does everything: the first call starts the wait,
+ * and it returns true (once) when the wait is over.
+ * <pre>
+ * else if (step == 3)
+ * {
+ *     if (settleWait.waitFor(0.5))
+ *         step++;
+ * }
+ * </pre>
+ */
+public class WaitStep
+{
+	/** The FPGA time, in seconds, when the wait is over. */
+	private double endTime = 0;
+	/** A boolean indicating if the wait has been started and hasn't been finished or cancelled yet. */
+	private boolean running = false;
+	
+	/**
+	 * Starts the wait. If the wait is already running, it starts over.
+	 * @param seconds How long to wait, in seconds.
+	 */
+	public void start(double seconds)
+	{
+		endTime = Timer.getFPGATimestamp() + seconds;
+		running = true;
+	}
+	
+	/**
+	 * Stops the wait without it finishing. The next call to waitFor() will start a new wait.
+	 */
+	public void cancel()
+	{
+		running = false;
+	}
+	
+	/**
+	 * Tells if the wait has been started and hasn't been finished or cancelled yet.
+	 * A wait that is over but hasn't been finished by waitFor() is still running.
+	 * @return True if the wait is running.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+	
+	/**
+	 * Tells if the wait is over. Doesn't change anything, so it can be checked as many times as needed.
+	 * @return True if the wait was started and its time has passed. False if it's still waiting, or was never started.
+	 */
+	public boolean isDone()
+	{
+		return running && Timer.getFPGATimestamp() >= endTime;
+	}
+	
+	/**
+	 * Gets how much longer the wait will take.
+	 * @return The time left, in seconds. 0 if the wait is over or isn't running.
+	 */
+	public double getTimeLeft()
+	{
+		if (!running)
+			return 0;
+		return Math.max(0, endTime - Timer.getFPGATimestamp());
+	}
+	
+	/**
+	 * Call this periodically to wait. Starts the wait if it isn't running, and finishes it once it's over.
+	 * @param seconds How long to wait, in seconds. Only used when the wait is started.
+	 * @return True (just once) when the wait is over. The next call after that starts a new wait.
+	 */
+	public boolean waitFor(double seconds)
+	{
+		if (!running)
+		{
+			start(seconds);
+			return false;
+		}
+		if (Timer.getFPGATimestamp() < endTime)
+			return false;
+		running = false;
+		return true;
+	}
+}